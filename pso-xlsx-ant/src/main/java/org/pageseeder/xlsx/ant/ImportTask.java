@@ -102,6 +102,24 @@ public final class ImportTask extends Task {
     this.builder.destination(destination);
   }
 
+  /**
+   * Set the zip archive where all the PageSeeder documents should be written (optional).
+   *
+   * @param archive The zip file to create.
+   */
+  public void setArchive(File archive) {
+    this.builder.archive(archive);
+  }
+
+  /**
+   * Set the compression level of the archive, 0 to store documents without compression (optional).
+   *
+   * @param level The compression level (0-9).
+   */
+  public void setCompression(int level) {
+    this.builder.archiveCompression(level);
+  }
+
   /**
    * Set the working folder (optional).
    *
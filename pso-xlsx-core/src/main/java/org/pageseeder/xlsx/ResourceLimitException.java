@@ -0,0 +1,48 @@
+package org.pageseeder.xlsx;
+
+/**
+ * Thrown when processing a spreadsheet would exceed one of the configured resource limits.
+ *
+ * <p>The limit is checked while the data is inflated, so the exception is thrown before the
+ * resources are used.
+ */
+public class ResourceLimitException extends XLSXException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The name of the limit that was exceeded.
+   */
+  private final String _limit;
+
+  /**
+   * The configured value of the limit.
+   */
+  private final long _maximum;
+
+  /**
+   * @param limit   The name of the limit that was exceeded.
+   * @param maximum The configured value of the limit.
+   * @param message The detail message.
+   */
+  public ResourceLimitException(String limit, long maximum, String message) {
+    super(message);
+    this._limit = limit;
+    this._maximum = maximum;
+  }
+
+  /**
+   * @return the name of the limit that was exceeded.
+   */
+  public String getLimit() {
+    return this._limit;
+  }
+
+  /**
+   * @return the configured value of the limit.
+   */
+  public long getMaximum() {
+    return this._maximum;
+  }
+
+}
@@ -22,15 +22,27 @@ import org.pageseeder.xlsx.core.Style;
 import org.pageseeder.xlsx.core.WorkBook;
 import org.pageseeder.xlsx.core.WorkSheet;
 import org.pageseeder.xlsx.interim.Interim;
+import org.pageseeder.xlsx.sink.FileSink;
+import org.pageseeder.xlsx.sink.OutputSink;
+import org.pageseeder.xlsx.sink.WorkingArea;
+import org.pageseeder.xlsx.sink.ZipSink;
 import org.pageseeder.xlsx.util.*;
 import org.pageseeder.xlsx.xml.StyleHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -40,6 +52,11 @@ public class TransformProcessor {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TransformProcessor.class);
 
+  /**
+   * The name used for the output when the input has no file name.
+   */
+  private static final String DEFAULT_NAME = "workbook";
+
   private final TransformConfig _config;
 
   private final Writer _log;
@@ -57,6 +74,7 @@ public class TransformProcessor {
   /**
    * to generate the docx.
    * @throws IOException
+   * @throws ResourceLimitException if reading the spreadsheet exceeds one of the configured limits
    */
   public void process() throws IOException {
     validateConfig();
@@ -70,60 +88,96 @@ public class TransformProcessor {
         log("Setting the column filename has no effect when split level != row");
       }
     }
+    if (this.getConfig().getRichtext() && !this.getConfig().isRichtextBySax()) {
+      if (this.getConfig().getStartRow() > 1 || this.getConfig().getMaxRows() >= 0
+          || !this.getConfig().getSheets().isEmpty() || !this.getConfig().getColumns().isEmpty()) {
+        log("Setting the row range, the worksheets or the columns has no effect when richtext is supported");
+      }
+    }
 
     // The folder and name of the presentation
     File folder = null;
     String name = null;
-    if (this.getConfig().getDestination().getName().indexOf('.') > 0) {
-      folder = this.getConfig().getDestination().getParentFile();
-      name = this.getConfig().getDestination().getName();
+    File destination = this.getConfig().getDestination();
+    if (destination == null && this.getConfig().getArchive() != null) destination = this.getConfig().getArchive().getAbsoluteFile().getParentFile();
+    if (destination == null) destination = this.getConfig().getWorking();
+    if (destination.getName().indexOf('.') > 0) {
+      folder = destination.getParentFile();
+      name = destination.getName();
       if (name.endsWith(XML.XML_EXTENSION)) name = name.substring(0, name.length()-XML.XML_EXTENSION.length());
     } else {
-      folder = this.getConfig().getDestination();
-      name = this.getConfig().getInput().getName();
+      folder = destination;
+      name = this.getConfig().getInputName();
+      if (name == null) name = DEFAULT_NAME;
       if (name.endsWith(".xlsx")) name = name.substring(0, name.length()-5);
     }
 
-    // 1. Unzip file
-    log("Extracting Excel Spreadsheet: " + this.getConfig().getInput().getName());
-    File unpacked = new File(this.getConfig().getWorking(), "unpacked");
-    unpacked.mkdir();
-    ZipUtils.unzip(this.getConfig().getInput(), unpacked);
-
-    // 2. Extract core properties
-    log("Extracting Core document properties");
-    CoreProperties core = CoreProperties.parse(new File(unpacked, "docProps/core.xml"));
-    String title = core.title();
-
-    // 3. Generating interim data
-    log("Generating interim data");
+    // 1. Open the package, parts are read directly from the zip
+    log("Reading Excel Spreadsheet: " + name);
     File interim = new File(this.getConfig().getWorking(), "interim");
-    interim.mkdir();
+    ResourceGuard guard = new ResourceGuard(this.getConfig().getLimits());
+    WorkingArea area;
+    try (OfficePackage pkg = openPackage(guard)) {
+      Relationships relationships = Relationships.parse(pkg, "");
+      String workbook = PackageParts.workbook(relationships);
+      Relationships workbookRelationships = Relationships.parse(pkg, workbook);
+
+      // When streaming, parts that are not needed are skipped instead of buffered
+      if (pkg instanceof StreamingPackage) {
+        ((StreamingPackage)pkg).retain(PackageParts.referenced(relationships, workbook, workbookRelationships));
+      }
 
-    // TODO need to do a automatic detect in order switch between XSLT and SAX
-    if (!this.getConfig().getRichtext()) {
-      log("Interim will be generated by SAX, richtext will be IGNORED.");
-      generateInterimBySax(unpacked, interim, this.getConfig(), title != null? title : name);
-    } else {
-      log("Interim will be generated by XSLT, richtext will be SUPPORTED.");
-      generateInterimByXSLT(unpacked, interim, this.getConfig(), title != null? title : name);
+      // 2. Extract core properties
+      log("Extracting Core document properties");
+      String coreProperties = PackageParts.coreProperties(relationships);
+      CoreProperties core = pkg.contains(coreProperties) ? CoreProperties.parse(pkg, coreProperties) : CoreProperties.empty();
+      String title = core.title();
+
+      // 3. Generating interim data
+      log("Generating interim data");
+
+      // TODO need to do a automatic detect in order switch between XSLT and SAX
+      if (!this.getConfig().getRichtext() || this.getConfig().isRichtextBySax()) {
+        log(this.getConfig().getRichtext() ? "Interim will be generated by SAX, richtext of shared strings will be SUPPORTED."
+            : "Interim will be generated by SAX, richtext will be IGNORED.");
+        area = new WorkingArea(interim, this.getConfig().getWorkingMemory());
+        generateInterimBySax(pkg, workbook, workbookRelationships, guard, area, this.getConfig(), title != null? title : name);
+      } else {
+        // The templates need to load the parts from the file system
+        log("Interim will be generated by XSLT, richtext will be SUPPORTED.");
+        log("Extracting Excel Spreadsheet: " + name);
+        File unpacked = new File(this.getConfig().getWorking(), "unpacked");
+        unpacked.mkdir();
+        long skipped = PackageParts.extract(pkg, unpacked, PackageParts.required(pkg));
+        log("Skipped "+skipped+" bytes of unreferenced parts");
+        generateInterimByXSLT(unpacked, interim, this.getConfig(), title != null? title : name);
+        area = WorkingArea.scan(interim, XML.getFileFilter());
+      }
     }
 
     // 4. Convert rows to PSXML
     log("Converting interim data to PSXML");
-    interimToFinalXML(interim, folder, this._config, this.getConfig().getParameters() );
+    interimToFinalXML(area, folder, this._config, this.getConfig().getParameters() );
   }
 
   private void validateConfig() {
-    if (this.getConfig().getInput() == null || !this.getConfig().getInput().exists()) {
+    if (!this.getConfig().hasInput()) {
+      throw new IllegalArgumentException("Input XLSX is null or does not exist.");
+    }
+
+    if (this.getConfig().getInput() != null && !this.getConfig().getInput().exists()) {
       throw new IllegalArgumentException("Input XLSX is null or does not exist.");
     }
 
+    if (this.getConfig().getInputPath() != null && !Files.exists(this.getConfig().getInputPath())) {
+      throw new IllegalArgumentException("Input XLSX path does not exist.");
+    }
+
     if (this.getConfig().getWorking() == null || (this.getConfig().getWorking().exists() && !this.getConfig().getWorking().isDirectory())) {
       throw new IllegalArgumentException("if working folder exists, it must be a directory");
     }
 
-    if (this.getConfig().getDestination() == null && !this.getConfig().getDestination().exists()) {
+    if (this.getConfig().getDestination() == null && this.getConfig().getArchive() == null && this.getConfig().getOutput() == null) {
       throw new IllegalArgumentException("Destination is null or does not exits.");
     }
 
@@ -133,6 +187,50 @@ public class TransformProcessor {
 
   }
 
+  /**
+   * Opens the input spreadsheet as a package.
+   *
+   * <p>Files and paths on the default file system are read as zip files and data is read from
+   * memory. Streams are processed as they are read when streaming, otherwise they are read
+   * fully into memory.
+   *
+   * <p>The returned package enforces the resource limits of the guard.
+   *
+   * @param guard the guard enforcing the resource limits.
+   * @return the package to read the parts from.
+   * @throws IOException if the input cannot be read as a zip.
+   */
+  private OfficePackage openPackage(ResourceGuard guard) throws IOException {
+    TransformConfig config = this.getConfig();
+    if (config.getInputStream() != null && config.isStreaming() && (!config.getRichtext() || config.isRichtextBySax()))
+      return new StreamingPackage(config.getInputStream(), config.getWorking(), config.getStreamingMemoryLimit(), guard);
+    OfficePackage pkg = openZip();
+    if (!config.getLimits().isLimited()) return pkg;
+    try {
+      return new GuardedPackage(pkg, guard);
+    } catch (ResourceLimitException ex) {
+      pkg.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Opens the input spreadsheet as a zip which can be read in any order.
+   */
+  private OfficePackage openZip() throws IOException {
+    TransformConfig config = this.getConfig();
+    if (config.getInput() != null) return new ZipPackage(config.getInput());
+    if (config.getInputPath() != null) {
+      Path path = config.getInputPath();
+      if (path.getFileSystem() == FileSystems.getDefault()) return new ZipPackage(path.toFile());
+      try (InputStream in = Files.newInputStream(path)) {
+        return MemoryPackage.read(in);
+      }
+    }
+    if (config.getInputData() != null) return new MemoryPackage(config.getInputData());
+    return MemoryPackage.read(config.getInputStream());
+  }
+
   public TransformConfig getConfig() {
     return this._config;
   }
@@ -168,53 +266,60 @@ public class TransformProcessor {
   /**
    * Generate the interim files.
    *
-   * @param unpacked The folder containing the unzipped workbook.
-   * @param interim  The folder that should contain the interim simpler format.
-   * @param config   The configuration.
-   * @param title    The title of the workbook
+   * @param pkg           The package containing the workbook.
+   * @param workbook      The name of the workbook part in the package.
+   * @param relationships The relationships of the workbook.
+   * @param guard         The guard enforcing the resource limits.
+   * @param interim       The working area that should contain the interim simpler format.
+   * @param config        The configuration.
+   * @param title         The title of the workbook
    */
-  private static void generateInterimBySax(File unpacked, File interim, TransformConfig config, String title) throws XLSXException {
-
-    // Creates files and folders
-    File xlWorkbookFolder = new File(unpacked, "/xl");
-    File xlWorkbook = new File(xlWorkbookFolder, "workbook.xml");
-    if (!interim.exists() && !interim.mkdirs())
-      throw new XLSXException("Unable to create interim directory structure.");
-
-    // Parse relationships
-    Relationships relationships = Relationships.parse(new File(xlWorkbookFolder, "_rels/workbook.xml.rels"));
-
-    // TODO Parse Style
-    File xlStyle = new File(xlWorkbookFolder, "styles.xml");
-
+  private static void generateInterimBySax(OfficePackage pkg, String workbook, Relationships relationships, ResourceGuard guard,
+      WorkingArea interim, TransformConfig config, String title) throws XLSXException {
 
+    SharedStrings shared = null;
     try {
       // Parse shared strings
-      SharedStrings shared = null;
+      SharedStrings.Loading loading = config.isLazySharedStrings() ? SharedStrings.Loading.LAZY
+          : config.isParallelSharedStrings() ? SharedStrings.Loading.PARALLEL : SharedStrings.Loading.EAGER;
       for (Relationship r : relationships.forType(Relationship.Type.sharedStrings)) {
-        shared = SharedStrings.parse(new File(xlWorkbookFolder, r.target()));
+        String part = Relationships.resolve(workbook, r.target());
+        // Rich text is rendered as the strings are parsed
+        shared = config.getRichtext() ? SharedStrings.parse(pkg, part, guard, config.getWorking(), config.getSharedStringsThreshold(), true)
+            : SharedStrings.parse(pkg, part, guard, config.getWorking(), config.getSharedStringsThreshold(), loading);
+        LOGGER.debug("Loaded {} shared strings in {} bytes{}", shared.length(), shared.memory(), shared.isMapped() ? " on disk" : "");
       }
 
       //Parse styles.xml
       StyleHandler styleHandler = new StyleHandler();
-      XML.parse(xlStyle, styleHandler, true);
+      for (Relationship r : relationships.forType(Relationship.Type.styles)) {
+        XML.parse(pkg, Relationships.resolve(workbook, r.target()), styleHandler, true);
+      }
       Style style = styleHandler.getStyle();
 
       // Parse workbook
-      WorkBook workbook = WorkBook.parse(xlWorkbook, relationships);
-      workbook.setTitle(title);
-
-      // Inspect
-      for (WorkSheet sheet : workbook.sheets()) {
-        sheet.inspect();
+      WorkBook book = WorkBook.parse(pkg, workbook, relationships);
+      book.setTitle(title);
+
+      // Worksheets which are not selected are never opened
+      if (pkg instanceof StreamingPackage && !config.getSheets().isEmpty()) {
+        List<String> unselected = new ArrayList<>();
+        for (WorkSheet sheet : book.sheets()) {
+          if (!config.isSelected(sheet.name())) unselected.add(sheet.part());
+        }
+        ((StreamingPackage)pkg).discard(unselected);
       }
 
       // Generate the interim data
       Interim processor = new Interim(interim, config);
-      processor.process(workbook, shared, style);
+      processor.process(book, shared, style);
 
+    } catch (ResourceLimitException ex) {
+      throw ex;
     } catch (Exception ex) {
       ex.printStackTrace();
+    } finally {
+      if (shared != null) shared.close();
     }
   }
 
@@ -258,15 +363,11 @@ public class TransformProcessor {
   /**
    * Generate the interim files.
    *
-   * @param interim The folder that should contain the interim simpler format.
+   * @param interim The working area containing the interim simpler format.
    * @param output  The output folder where the PSXML should be stored
    * @param config  The configuration.
    */
-  private static void interimToFinalXML(File interim, File output, TransformConfig config, List<Param> params) throws XLSXException {
-
-    // Creates files and folders
-    if (!output.exists() && !output.mkdirs())
-      throw new XLSXException("Unable to create output folder "+output.getName());
+  private static void interimToFinalXML(WorkingArea interim, File output, TransformConfig config, List<Param> params) throws XLSXException {
 
     // Get the templates
     Templates templates = config.getTemplates();
@@ -291,23 +392,60 @@ public class TransformProcessor {
       parameters.put("_workbookdoctype", config.getWorkbookDoctype());
     }
 
-    parameters.put("_output",       output.toURI().toString());
-
-    // Transform Workbook / WorkSheet
-    for (File itf : interim.listFiles(XML.getFileFilter())) {
-      File target = new File(output, itf.getName());
-      XSLT.transform(itf, target, templates, parameters);
+    if (config.getArchive() != null) {
+      parameters.put("_output",       config.getArchive().toURI().toString());
+    } else if (config.getOutput() == null) {
+      parameters.put("_output",       output.toURI().toString());
     }
 
-    // Transform Rows
-    for (File sheet : interim.listFiles(FileUtils.DIR_FILTER)) {
-      File targetFolder = new File(output, sheet.getName());
-      if (!targetFolder.exists()) targetFolder.mkdir();
-      for (File itf : sheet.listFiles(XML.getFileFilter())) {
-        File target = new File(targetFolder, itf.getName());
-        XSLT.transform(itf, target, templates, parameters);
+    try (OutputSink sink = openOutput(output, config)) {
+
+      // Transform Workbook / WorkSheet, then Rows
+      for (String path : interim.paths()) {
+        try (InputStream in = interim.open(path); OutputStream out = sink.stream(path)) {
+          XSLT.transform(new StreamSource(in, interim.systemId(path)), new StreamResult(out), templates, parameters);
+        }
+        interim.release(path);
       }
+
+    } catch (IOException ex) {
+      throw new XLSXException("Unable to write output documents", ex);
     }
 
   }
+
+  /**
+   * Returns the sink for the output documents.
+   *
+   * <p>This is the output sink of the configuration if specified, otherwise the archive or the
+   * output folder. The output sink of the configuration belongs to the caller, closing the
+   * returned sink does not close it.
+   *
+   * @param output The output folder.
+   * @param config The configuration.
+   */
+  private static OutputSink openOutput(File output, TransformConfig config) throws IOException {
+    OutputSink sink = config.getOutput();
+    if (sink != null) return new OutputSink() {
+      @Override
+      public OutputStream newDocument(String path) throws IOException {
+        return sink.newDocument(path);
+      }
+
+      @Override
+      public OutputStream stream(String path) throws IOException {
+        return sink.stream(path);
+      }
+    };
+    File archive = config.getArchive();
+    if (archive != null) {
+      File parent = archive.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs())
+        throw new XLSXException("Unable to create folder for archive "+archive.getName());
+      return new ZipSink(new FileOutputStream(archive), config.getArchiveCompression());
+    }
+    if (!output.exists() && !output.mkdirs())
+      throw new XLSXException("Unable to create output folder "+output.getName());
+    return new FileSink(output);
+  }
 }
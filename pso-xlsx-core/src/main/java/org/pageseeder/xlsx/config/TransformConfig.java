@@ -4,12 +4,22 @@
 package org.pageseeder.xlsx.config;
 
 import org.pageseeder.xlsx.XLSXException;
+import org.pageseeder.xlsx.sink.OutputSink;
+import org.pageseeder.xlsx.sink.WorkingArea;
+import org.pageseeder.xlsx.util.ResourceLimits;
+import org.pageseeder.xlsx.util.SharedStrings;
+import org.pageseeder.xlsx.util.StreamingPackage;
 import org.pageseeder.xlsx.util.XSLT;
 
 import javax.xml.transform.Templates;
 import java.io.File;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.Deflater;
 
 
 /**
@@ -26,6 +36,21 @@ public final class TransformConfig {
    */
   private final File _input;
 
+  /**
+   * The path to the spreadsheet to transform.
+   */
+  private final Path _inputPath;
+
+  /**
+   * The content of the spreadsheet to transform.
+   */
+  private final ByteBuffer _inputData;
+
+  /**
+   * The stream to read the spreadsheet to transform from.
+   */
+  private final InputStream _inputStream;
+
   /**
    * The working directory.
    */
@@ -81,6 +106,101 @@ public final class TransformConfig {
    */
    private final List<Param> _parameters;
 
+  /**
+   * Whether worksheet parts are inflated on a background thread while the previous one is parsed.
+   */
+  private final boolean _pipelined;
+
+  /**
+   * Whether a stream input is processed as it is read instead of being read into memory first.
+   */
+  private final boolean _streaming;
+
+  /**
+   * The maximum number of bytes of stream input buffered in memory when streaming.
+   */
+  private final long _streamingMemoryLimit;
+
+  /**
+   * The limits on the resources used to read the spreadsheet.
+   */
+  private final ResourceLimits _limits;
+
+  /**
+   * The zip archive to write the output documents to instead of the destination folder.
+   */
+  private final File _archive;
+
+  /**
+   * The compression level for the archive (0 to store entries, -1 for the default level).
+   */
+  private final int _archiveCompression;
+
+  /**
+   * Where the output documents are written instead of the destination folder.
+   */
+  private final OutputSink _output;
+
+  /**
+   * The maximum number of bytes of interim documents held in memory.
+   */
+  private final long _workingMemory;
+
+  /**
+   * Whether worksheets are read with the byte scanner instead of a SAX parser when possible.
+   */
+  private final boolean _scanning;
+
+  /**
+   * The position of the first row to include (1-based).
+   */
+  private final int _startRow;
+
+  /**
+   * The maximum number of rows to include in each worksheet, -1 for no limit.
+   */
+  private final int _maxRows;
+
+  /**
+   * The names of the worksheets to include, empty to include all worksheets.
+   */
+  private final List<String> _sheets;
+
+  /**
+   * The letters, indexes or titles of the columns to include, empty to include all columns.
+   */
+  private final List<String> _columns;
+
+  /**
+   * The number of shared strings above which they are stored on disk, -1 to keep them in memory.
+   */
+  private final int _sharedStringsThreshold;
+
+  /**
+   * Whether shared strings are only decoded when they are first used.
+   */
+  private final boolean _lazySharedStrings;
+
+  /**
+   * Whether shared strings are decoded in parallel.
+   */
+  private final boolean _parallelSharedStrings;
+
+  /**
+   * Whether rich text is generated by the SAX processor instead of the templates.
+   */
+  private final boolean _richtextBySax;
+
+  /**
+   * Whether numbers are written as displayed by their number format.
+   */
+  private final boolean _formatNumbers;
+
+  /**
+   * Whether numbers without a format are written with the fewest digits.
+   */
+  private final boolean _shortestNumbers;
+
 
   /**
    * Creates a new configuration.
@@ -88,6 +208,9 @@ public final class TransformConfig {
   public TransformConfig(File input, File working, File destination, boolean richtext, SplitLevel level, int filenameColumn,
                          boolean headers, String rowDoctype, String sheetDoctype, String workbookDoctype, File xslt, List parameters) {
     this._input = input;
+    this._inputPath = null;
+    this._inputData = null;
+    this._inputStream = null;
     this._working = working;
     this._destination = destination;
     this._richtext = richtext;
@@ -99,12 +222,108 @@ public final class TransformConfig {
     this._workbookDoctype = workbookDoctype;
     this._xslt = xslt;
     this._parameters = parameters;
+    this._pipelined = TransformConfigBuilder.DEFAULT_PIPELINED;
+    this._streaming = false;
+    this._streamingMemoryLimit = StreamingPackage.DEFAULT_MEMORY_LIMIT;
+    this._limits = ResourceLimits.NONE;
+    this._archive = null;
+    this._archiveCompression = Deflater.DEFAULT_COMPRESSION;
+    this._output = null;
+    this._workingMemory = WorkingArea.DEFAULT_MEMORY_CEILING;
+    this._scanning = TransformConfigBuilder.DEFAULT_SCANNING;
+    this._startRow = 1;
+    this._maxRows = -1;
+    this._sheets = Collections.emptyList();
+    this._columns = Collections.emptyList();
+    this._sharedStringsThreshold = SharedStrings.DEFAULT_SPILL_THRESHOLD;
+    this._lazySharedStrings = false;
+    this._parallelSharedStrings = false;
+    this._richtextBySax = false;
+    this._formatNumbers = false;
+    this._shortestNumbers = false;
+  }
+
+  /**
+   * Creates a new configuration from the builder.
+   */
+  TransformConfig(TransformConfigBuilder builder) {
+    this._input = builder.input;
+    this._inputPath = builder.inputPath;
+    this._inputData = builder.inputData;
+    this._inputStream = builder.inputStream;
+    this._working = builder.working;
+    this._destination = builder.destination;
+    this._richtext = builder.richtext;
+    this._level = builder.level;
+    this._filenameColumn = builder.filenameColumn;
+    this._headers = builder.headers;
+    this._rowDoctype = builder.rowDoctype;
+    this._sheetDoctype = builder.sheetDoctype;
+    this._workbookDoctype = builder.workbookDoctype;
+    this._xslt = builder.xslt;
+    this._parameters = builder.parameters;
+    this._pipelined = builder.pipelined;
+    this._streaming = builder.streaming;
+    this._streamingMemoryLimit = builder.streamingMemoryLimit;
+    this._limits = builder.limits;
+    this._archive = builder.archive;
+    this._archiveCompression = builder.archiveCompression;
+    this._output = builder.output;
+    this._workingMemory = builder.workingMemory;
+    this._scanning = builder.scanning;
+    this._startRow = builder.startRow;
+    this._maxRows = builder.maxRows;
+    this._sheets = Collections.unmodifiableList(builder.sheets);
+    this._columns = Collections.unmodifiableList(builder.columns);
+    this._sharedStringsThreshold = builder.sharedStringsThreshold;
+    this._lazySharedStrings = builder.lazySharedStrings;
+    this._parallelSharedStrings = builder.parallelSharedStrings;
+    this._richtextBySax = builder.richtextBySax;
+    this._formatNumbers = builder.formatNumbers;
+    this._shortestNumbers = builder.shortestNumbers;
   }
 
   public File getInput() {
     return this._input;
   }
 
+  /**
+   * @return the path to the spreadsheet to transform or <code>null</code>.
+   */
+  public Path getInputPath() {
+    return this._inputPath;
+  }
+
+  /**
+   * @return the content of the spreadsheet to transform or <code>null</code>.
+   */
+  public ByteBuffer getInputData() {
+    return this._inputData != null ? this._inputData.duplicate() : null;
+  }
+
+  /**
+   * @return the stream to read the spreadsheet from or <code>null</code>.
+   */
+  public InputStream getInputStream() {
+    return this._inputStream;
+  }
+
+  /**
+   * @return <code>true</code> if an input was specified as a file, path, data or stream.
+   */
+  public boolean hasInput() {
+    return this._input != null || this._inputPath != null || this._inputData != null || this._inputStream != null;
+  }
+
+  /**
+   * @return the file name of the spreadsheet if the input is a file or path; <code>null</code> otherwise.
+   */
+  public String getInputName() {
+    if (this._input != null) return this._input.getName();
+    if (this._inputPath != null && this._inputPath.getFileName() != null) return this._inputPath.getFileName().toString();
+    return null;
+  }
+
   public File getWorking() {
     return this._working;
   }
@@ -167,6 +386,151 @@ public final class TransformConfig {
     return this._xslt;
   }
 
+  /**
+   * @return <code>true</code> if worksheet parts are inflated on a background thread while
+   *         the previous one is parsed; <code>false</code> otherwise.
+   */
+  public boolean isPipelined() {
+    return this._pipelined;
+  }
+
+  /**
+   * @return <code>true</code> if a stream input is processed as it is read;
+   *         <code>false</code> if it is read into memory first.
+   */
+  public boolean isStreaming() {
+    return this._streaming;
+  }
+
+  /**
+   * @return the maximum number of bytes of stream input buffered in memory when streaming.
+   */
+  public long getStreamingMemoryLimit() {
+    return this._streamingMemoryLimit;
+  }
+
+  /**
+   * @return the limits on the resources used to read the spreadsheet.
+   */
+  public ResourceLimits getLimits() {
+    return this._limits;
+  }
+
+  /**
+   * @return the zip archive to write the output documents to or <code>null</code> to write
+   *         them to the destination folder.
+   */
+  public File getArchive() {
+    return this._archive;
+  }
+
+  /**
+   * @return the compression level for the archive (0 to store entries, -1 for the default level).
+   */
+  public int getArchiveCompression() {
+    return this._archiveCompression;
+  }
+
+  /**
+   * @return where the output documents are written or <code>null</code> to write them to the
+   *         archive or destination folder.
+   */
+  public OutputSink getOutput() {
+    return this._output;
+  }
+
+  /**
+   * @return the maximum number of bytes of interim documents held in memory.
+   */
+  public long getWorkingMemory() {
+    return this._workingMemory;
+  }
+
+  /**
+   * @return whether worksheets are read with the byte scanner instead of a SAX parser when possible.
+   */
+  public boolean isScanning() {
+    return this._scanning;
+  }
+
+  /**
+   * @return the position of the first row to include (1-based).
+   */
+  public int getStartRow() {
+    return this._startRow;
+  }
+
+  /**
+   * @return the maximum number of rows to include in each worksheet, -1 for no limit.
+   */
+  public int getMaxRows() {
+    return this._maxRows;
+  }
+
+  /**
+   * @return the names of the worksheets to include, empty to include all worksheets.
+   */
+  public List<String> getSheets() {
+    return this._sheets;
+  }
+
+  /**
+   * @param name the name of a worksheet
+   * @return <code>true</code> if the worksheet should be included.
+   */
+  public boolean isSelected(String name) {
+    return this._sheets.isEmpty() || this._sheets.contains(name);
+  }
+
+  /**
+   * @return the letters, indexes or titles of the columns to include, empty to include all columns.
+   */
+  public List<String> getColumns() {
+    return this._columns;
+  }
+
+  /**
+   * @return the number of shared strings above which they are stored on disk, -1 to keep them in memory.
+   */
+  public int getSharedStringsThreshold() {
+    return this._sharedStringsThreshold;
+  }
+
+  /**
+   * @return whether shared strings are only decoded when they are first used.
+   */
+  public boolean isLazySharedStrings() {
+    return this._lazySharedStrings;
+  }
+
+  /**
+   * @return whether shared strings are decoded in parallel.
+   */
+  public boolean isParallelSharedStrings() {
+    return this._parallelSharedStrings;
+  }
+
+  /**
+   * @return whether rich text is generated by the SAX processor instead of the templates.
+   */
+  public boolean isRichtextBySax() {
+    return this._richtextBySax;
+  }
+
+  /**
+   * @return whether numbers are written as displayed by their number format.
+   */
+  public boolean isFormatNumbers() {
+    return this._formatNumbers;
+  }
+
+  /**
+   * @return whether numbers without a format are written with the fewest digits.
+   */
+  public boolean isShortestNumbers() {
+    return this._shortestNumbers;
+  }
+
   /**
    * @return List of parameters specified for the transformation into PSXML
    */
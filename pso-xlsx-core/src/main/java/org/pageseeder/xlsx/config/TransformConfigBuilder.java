@@ -3,80 +3,257 @@
  */
 package org.pageseeder.xlsx.config;
 
+import org.pageseeder.xlsx.sink.OutputSink;
+import org.pageseeder.xlsx.sink.WorkingArea;
+import org.pageseeder.xlsx.util.ResourceLimits;
+import org.pageseeder.xlsx.util.SharedStrings;
+import org.pageseeder.xlsx.util.StreamingPackage;
 import org.pageseeder.xlsx.util.ToolUtils;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.Deflater;
 
 public class TransformConfigBuilder {
+
+  /**
+   * Pipelining is enabled by default when more than one processor is available.
+   */
+  static final boolean DEFAULT_PIPELINED = Runtime.getRuntime().availableProcessors() > 1;
+
+  /**
+   * Worksheets are read with the byte scanner by default.
+   */
+  static final boolean DEFAULT_SCANNING = true;
+
   /**
    * The spreadsheet to transform.
    */
-  private File input;
+  File input;
+
+  /**
+   * The path to the spreadsheet to transform.
+   */
+  Path inputPath;
+
+  /**
+   * The content of the spreadsheet to transform.
+   */
+  ByteBuffer inputData;
+
+  /**
+   * The stream to read the spreadsheet to transform from.
+   */
+  InputStream inputStream;
 
   /**
    * The working directory.
    */
-  private File working;
+  File working;
 
   /**
    * The destination directory or file.
    */
-  private File destination;
+  File destination;
 
   /**
    * whether support rich text.
    */
-  private boolean richtext;
+  boolean richtext;
 
   /**
    * The level at which the workbook should be split (default is <code>row</code>).
    */
-  private SplitLevel level;
+  SplitLevel level;
 
   /**
    * The column to use as the filename for each row (split by row only).
    * The column to use to generate the filenames.
    */
-  private int filenameColumn;
+  int filenameColumn;
 
   /**
    * Indicates whether the first row should be used for headers.
    */
-  private boolean headers;
+  boolean headers;
 
   /**
    * The document type for the row documents.
    */
-  private String rowDoctype;
+  String rowDoctype;
 
   /**
    * The document type for the row documents.
    */
-  private String sheetDoctype;
+  String sheetDoctype;
 
   /**
    * The document type for the row documents.
    */
-  private String workbookDoctype;
+  String workbookDoctype;
 
   /**
    * The path to the file to use to transform into PSXML.
    */
-  private File xslt;
+  File xslt;
 
   /**
    * List of parameters specified for the transformation into PSXML
    */
-  private List<Param> parameters;
+  List<Param> parameters;
+
+  /**
+   * Whether worksheet parts are inflated on a background thread while the previous one is parsed.
+   */
+  boolean pipelined = DEFAULT_PIPELINED;
+
+  /**
+   * Whether a stream input is processed as it is read instead of being read into memory first.
+   */
+  boolean streaming;
+
+  /**
+   * The maximum number of bytes of stream input buffered in memory when streaming.
+   */
+  long streamingMemoryLimit = StreamingPackage.DEFAULT_MEMORY_LIMIT;
+
+  /**
+   * The limits on the resources used to read the spreadsheet.
+   */
+  ResourceLimits limits = ResourceLimits.NONE;
+
+  /**
+   * The zip archive to write the output documents to instead of the destination folder.
+   */
+  File archive;
+
+  /**
+   * The compression level for the archive (0 to store entries, -1 for the default level).
+   */
+  int archiveCompression = Deflater.DEFAULT_COMPRESSION;
+
+  /**
+   * Where the output documents are written instead of the destination folder.
+   */
+  OutputSink output;
+
+  /**
+   * The maximum number of bytes of interim documents held in memory.
+   */
+  long workingMemory = WorkingArea.DEFAULT_MEMORY_CEILING;
+
+  /**
+   * Whether worksheets are read with the byte scanner instead of a SAX parser when possible.
+   */
+  boolean scanning = DEFAULT_SCANNING;
+
+  /**
+   * The position of the first row to include (1-based).
+   */
+  int startRow = 1;
+
+  /**
+   * The maximum number of rows to include in each worksheet, -1 for no limit.
+   */
+  int maxRows = -1;
+
+  /**
+   * The names of the worksheets to include, empty to include all worksheets.
+   */
+  List<String> sheets;
+
+  /**
+   * The columns to include, empty to include all columns.
+   */
+  List<String> columns;
+
+  /**
+   * The number of shared strings above which they are stored on disk, -1 to keep them in memory.
+   */
+  int sharedStringsThreshold = SharedStrings.DEFAULT_SPILL_THRESHOLD;
+
+  /**
+   * Whether shared strings are only decoded when they are first used.
+   */
+  boolean lazySharedStrings = false;
+
+  /**
+   * Whether shared strings are decoded in parallel.
+   */
+  boolean parallelSharedStrings = false;
+
+  /**
+   * Whether rich text is generated by the SAX processor instead of the templates.
+   */
+  boolean richtextBySax = false;
+
+  /**
+   * Whether numbers are written as displayed by their number format.
+   */
+  boolean formatNumbers = false;
+
+  /**
+   * Whether numbers without a format are written with the fewest digits.
+   */
+  boolean shortestNumbers = false;
 
   public TransformConfigBuilder input (File input) {
     this.input = input;
     return this;
   }
 
+  /**
+   * Read the spreadsheet from the specified path.
+   *
+   * @param input The path to the spreadsheet
+   * @return this builder
+   */
+  public TransformConfigBuilder input (Path input) {
+    this.inputPath = input;
+    return this;
+  }
+
+  /**
+   * Read the spreadsheet from memory.
+   *
+   * @param input The content of the spreadsheet
+   * @return this builder
+   */
+  public TransformConfigBuilder input (byte[] input) {
+    this.inputData = ByteBuffer.wrap(input);
+    return this;
+  }
+
+  /**
+   * Read the spreadsheet from memory.
+   *
+   * @param input The content of the spreadsheet (the remaining bytes in the buffer)
+   * @return this builder
+   */
+  public TransformConfigBuilder input (ByteBuffer input) {
+    this.inputData = input;
+    return this;
+  }
+
+  /**
+   * Read the spreadsheet from a stream.
+   *
+   * <p>The stream is not closed by the processor.
+   *
+   * @param input The stream to read the spreadsheet from
+   * @return this builder
+   */
+  public TransformConfigBuilder input (InputStream input) {
+    this.inputStream = input;
+    return this;
+  }
+
   public TransformConfigBuilder working (File working) {
     this.working = working;
     return this;
@@ -145,11 +322,285 @@ public class TransformConfigBuilder {
     return this;
   }
 
+  public TransformConfigBuilder pipelined (boolean pipelined) {
+    this.pipelined = pipelined;
+    return this;
+  }
+
+  /**
+   * Process a stream input as it is read.
+   *
+   * <p>Parts are only buffered when they appear in the stream before they are needed, for
+   * example work sheets stored before the shared strings. Has no effect on other inputs or
+   * when rich text is supported.
+   *
+   * @param streaming whether to process stream input as it is read
+   * @return this builder
+   */
+  public TransformConfigBuilder streaming (boolean streaming) {
+    this.streaming = streaming;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of bytes buffered in memory when streaming, parts beyond this
+   * limit are buffered in temporary files in the working directory.
+   *
+   * @param limit the maximum number of bytes to buffer in memory
+   * @return this builder
+   */
+  public TransformConfigBuilder streamingMemoryLimit (long limit) {
+    this.streamingMemoryLimit = limit;
+    return this;
+  }
+
+  /**
+   * Sets the limits on the resources used to read the spreadsheet.
+   *
+   * <p>When a limit is exceeded, the transformation fails with a
+   * {@link org.pageseeder.xlsx.ResourceLimitException}.
+   *
+   * @param limits the resource limits
+   * @return this builder
+   */
+  public TransformConfigBuilder limits (ResourceLimits limits) {
+    this.limits = limits;
+    return this;
+  }
+
+  /**
+   * Writes all the output documents into a single zip archive instead of the destination folder.
+   *
+   * @param archive the zip file to create
+   * @return this builder
+   */
+  public TransformConfigBuilder archive (File archive) {
+    this.archive = archive;
+    return this;
+  }
+
+  /**
+   * Sets the compression level for the archive.
+   *
+   * @param level the compression level from 1 to 9, 0 to store entries without compression
+   *              or -1 for the default level
+   * @return this builder
+   */
+  public TransformConfigBuilder archiveCompression (int level) {
+    if (level < -1 || level > 9)
+      throw new IllegalArgumentException("Invalid compression level "+level);
+    this.archiveCompression = level;
+    return this;
+  }
+
+  /**
+   * Writes the output documents to the specified sink instead of the destination folder.
+   *
+   * <p>The sink is not closed by the processor, the caller remains responsible for closing it
+   * once the processing is complete.
+   *
+   * @param output where the output documents should be written
+   * @return this builder
+   */
+  public TransformConfigBuilder output (OutputSink output) {
+    this.output = output;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of bytes of interim documents held in memory, interim documents
+   * beyond this limit are written to the working directory.
+   *
+   * @param ceiling the maximum number of bytes to hold in memory, 0 to write all interim documents
+   *                to the working directory
+   * @return this builder
+   */
+  public TransformConfigBuilder workingMemory (long ceiling) {
+    this.workingMemory = ceiling;
+    return this;
+  }
+
+  /**
+   * Sets whether worksheets are read with the byte scanner when possible.
+   *
+   * <p>The scanner only looks at the rows and cells of the UTF-8 content of the worksheet;
+   * worksheets it does not support are always parsed with SAX.
+   *
+   * @param scanning <code>false</code> to always parse worksheets with SAX
+   * @return this builder
+   */
+  public TransformConfigBuilder scanning (boolean scanning) {
+    this.scanning = scanning;
+    return this;
+  }
+
+  /**
+   * Sets the position of the first row to include, rows before it are skipped.
+   *
+   * <p>When the worksheets have headers, the titles are still taken from the first row.
+   * This option is ignored when richtext is enabled.
+   *
+   * @param position the position of the first row (1-based)
+   * @return this builder
+   */
+  public TransformConfigBuilder startRow (int position) {
+    if (position < 1)
+      throw new IllegalArgumentException("Invalid start row "+position);
+    this.startRow = position;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of rows to include in each worksheet.
+   *
+   * <p>Worksheets are no longer read once the rows have been found. This option is ignored
+   * when richtext is enabled.
+   *
+   * @param max the maximum number of rows, -1 for no limit
+   * @return this builder
+   */
+  public TransformConfigBuilder maxRows (int max) {
+    if (max < -1)
+      throw new IllegalArgumentException("Invalid maximum number of rows "+max);
+    this.maxRows = max;
+    return this;
+  }
+
+  /**
+   * Selects the worksheets to include by name, other worksheets are not read.
+   *
+   * <p>This option is ignored when richtext is enabled.
+   *
+   * @param names the names of the worksheets
+   * @return this builder
+   */
+  public TransformConfigBuilder sheets (String... names) {
+    for (String name : names) {
+      if (name == null)
+        throw new IllegalArgumentException("Invalid worksheet name "+name);
+    }
+    this.sheets = new ArrayList<>(Arrays.asList(names));
+    return this;
+  }
+
+  /**
+   * Selects the columns to include, the cells of other columns are skipped when the worksheet
+   * is read.
+   *
+   * <p>A column can be specified by its letter (A, B, ..., AA, ...), by its 1-based index or,
+   * when the worksheets have headers, by its title in the first row. When a title is also a
+   * column letter or index, such as "ID" or "2020", the column with that title is selected.
+   * The columns are kept in the order of the worksheet. This option is ignored when richtext
+   * is enabled.
+   *
+   * @param columns the letters, indexes or titles of the columns
+   * @return this builder
+   */
+  public TransformConfigBuilder columns (String... columns) {
+    this.columns = new ArrayList<>(Arrays.asList(columns));
+    return this;
+  }
+
+  /**
+   * Sets the number of shared strings above which they are written to temporary files in the
+   * working directory and read back through memory mappings instead of being kept in memory.
+   *
+   * @param threshold the maximum number of shared strings kept in memory, -1 for no limit
+   * @return this builder
+   */
+  public TransformConfigBuilder sharedStringsThreshold (int threshold) {
+    this.sharedStringsThreshold = threshold;
+    return this;
+  }
+
+  /**
+   * Sets whether shared strings are only decoded when a worksheet first uses them.
+   *
+   * <p>The shared strings part is kept in memory as is and only the position of each string is
+   * recorded up front, which is faster and uses less memory when worksheets only use a small
+   * part of the shared strings. Shared strings above the threshold are always loaded up front.
+   *
+   * @param lazy <code>true</code> to decode the shared strings when they are used
+   * @return this builder
+   */
+  public TransformConfigBuilder lazySharedStrings (boolean lazy) {
+    this.lazySharedStrings = lazy;
+    return this;
+  }
+
+  /**
+   * Sets whether shared strings are decoded in parallel.
+   *
+   * <p>The shared strings part is read in memory and split into chunks of strings which are
+   * decoded on the common fork/join pool. This is faster for large shared strings parts but
+   * needs memory for the whole part. It has no effect when shared strings are lazily decoded or
+   * stored on disk.
+   *
+   * @param parallel <code>true</code> to decode the shared strings in parallel
+   * @return this builder
+   */
+  public TransformConfigBuilder parallelSharedStrings (boolean parallel) {
+    this.parallelSharedStrings = parallel;
+    return this;
+  }
+
+  /**
+   * Sets whether rich text is generated by the SAX processor instead of the templates.
+   *
+   * <p>The shared strings with formatted runs are rendered once as interim markup and the
+   * worksheets are processed like plain text, so the row range, worksheets and columns apply.
+   * Only the bold, italic and underline runs and line breaks of shared strings are kept: the
+   * cell style attributes and merged cells produced by the templates are not. Shared strings are
+   * always loaded eagerly. This option has no effect unless richtext is enabled.
+   *
+   * @param sax <code>true</code> to generate rich text by SAX
+   * @return this builder
+   */
+  public TransformConfigBuilder richtextBySax (boolean sax) {
+    this.richtextBySax = sax;
+    return this;
+  }
+
+  /**
+   * Sets whether numbers are written as displayed by their number format.
+   *
+   * <p>The number format of each cell format is compiled once when the styles are loaded, and the
+   * values of the numeric cells are written with it, for example <code>1,234.50</code> or
+   * <code>12%</code> instead of <code>1234.5</code> or <code>0.12</code>. Formats with
+   * conditions, fractions or text sections are not supported and the value is written as it is.
+   * Dates and times are always formatted. This option has no effect when rich text is
+   * generated by the templates.
+   *
+   * @param format <code>true</code> to write numbers as displayed
+   * @return this builder
+   */
+  public TransformConfigBuilder formatNumbers (boolean format) {
+    this.formatNumbers = format;
+    return this;
+  }
+
+  /**
+   * Sets whether numbers without a format are written with the fewest digits that read back
+   * as the same value.
+   *
+   * <p>Excel stores some values with 17 significant digits, for example
+   * <code>1.1000000000000001</code>, which is then written as <code>1.1</code>. Only the
+   * numeric cells which are not formatted as dates, times or with a number format applied by
+   * {@link #formatNumbers(boolean)} are rewritten. This option has no effect when rich text is
+   * generated by the templates.
+   *
+   * @param shortest <code>true</code> to write numbers with the fewest digits
+   * @return this builder
+   */
+  public TransformConfigBuilder shortestNumbers (boolean shortest) {
+    this.shortestNumbers = shortest;
+    return this;
+  }
+
   public TransformConfig build(){
     this.setupMissingValuesToDefault();
 
-    return new TransformConfig(this.input, this.working, this.destination, this.richtext,
-        this.level, this.filenameColumn, this.headers, this.rowDoctype, this.sheetDoctype, this.workbookDoctype, this.xslt, this.parameters);
+    return new TransformConfig(this);
   }
 
   private void setupMissingValuesToDefault () {
@@ -162,10 +613,19 @@ public class TransformConfigBuilder {
 
     if (this.destination == null && this.input != null) this.destination = this.input.getParentFile();
 
+    if (this.destination == null && this.inputPath != null && this.inputPath.toAbsolutePath().getParent() != null) {
+      this.destination = this.inputPath.toAbsolutePath().getParent().toFile();
+    }
+
     if (this.level == null) this.level = SplitLevel.row;
 
     if (this.parameters == null) this.parameters = Collections.emptyList();
 
+    if (this.limits == null) this.limits = ResourceLimits.NONE;
+
+    if (this.sheets == null) this.sheets = Collections.emptyList();
+    if (this.columns == null) this.columns = Collections.emptyList();
+
   }
 
 }
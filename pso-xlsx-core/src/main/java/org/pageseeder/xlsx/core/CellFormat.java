@@ -15,6 +15,8 @@
  */
 package org.pageseeder.xlsx.core;
 
+import java.time.format.DateTimeFormatter;
+
 /**
  *
  *
@@ -22,6 +24,54 @@ package org.pageseeder.xlsx.core;
  */
 public class CellFormat {
 
+  /**
+   * How the numeric values of cells using a cell format are written.
+   */
+  public enum Kind {
+
+    /** Values are written as they are */
+    PLAIN(null),
+
+    /** Values are written as dates */
+    DATE(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+
+    /** Values are written as times */
+    TIME(DateTimeFormatter.ofPattern("HH:mm:ss")),
+
+    /** Values are written as date-times */
+    DATETIME(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
+
+    /** Values are written with a {@link NumberFormatter} when numbers are formatted */
+    NUMBER(null);
+
+    /** The formatter for the values, <code>null</code> for plain values and numbers */
+    private final DateTimeFormatter _formatter;
+
+    Kind(DateTimeFormatter formatter) {
+      this._formatter = formatter;
+    }
+
+    /**
+     * @return the formatter for the values, <code>null</code> for plain values and numbers.
+     */
+    public DateTimeFormatter formatter() {
+      return this._formatter;
+    }
+
+    /**
+     * Returns the kind of values for the specified number format code.
+     *
+     * @param numberFormatCode the number format code.
+     * @return the corresponding kind.
+     */
+    public static Kind forFormatCode(String numberFormatCode) {
+      boolean isDate = Style.isDateFormat(numberFormatCode);
+      boolean isTime = Style.isTimeFormat(numberFormatCode);
+      if (isDate) return isTime ? DATETIME : DATE;
+      return isTime ? TIME : PLAIN;
+    }
+  }
+
   /**
    * The position (zero-based) of xf within cellXfs.
    */
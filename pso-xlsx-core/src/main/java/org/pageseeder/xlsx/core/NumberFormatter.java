@@ -0,0 +1,461 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.core;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders numbers as they are displayed by Excel for a number format code.
+ *
+ * <p>The format code is parsed once into sections for positive numbers, negative numbers and
+ * zero, each made of literal text and placeholders, so that formatting a value does not need
+ * to look at the format code again.
+ *
+ * <p>The following are supported:
+ * <ul>
+ *   <li>digit placeholders <code>0</code>, <code>#</code> and <code>?</code> and the decimal point</li>
+ *   <li>thousands separators and scaling by a thousand with trailing commas</li>
+ *   <li>percentages and scientific notation (<code>E+</code> and <code>E-</code>)</li>
+ *   <li>quoted text, escaped characters, spacing (<code>_</code>) and repeated characters (<code>*</code>)</li>
+ *   <li>colours, currency symbols (<code>[$&#8364;-407]</code>) and <code>General</code></li>
+ * </ul>
+ *
+ * <p>Conditions, fractions and date or time codes are not supported.
+ */
+public final class NumberFormatter {
+
+  /** A literal text */
+  private static final int LITERAL = 0;
+
+  /** An integer digit placeholder */
+  private static final int INTEGER = 1;
+
+  /** The decimal point */
+  private static final int POINT = 2;
+
+  /** A decimal digit placeholder */
+  private static final int DECIMAL = 3;
+
+  /** The exponent marker */
+  private static final int EXPONENT = 4;
+
+  /** An exponent digit placeholder */
+  private static final int EXPONENT_DIGIT = 5;
+
+  /** The number in the general format */
+  private static final int GENERAL = 6;
+
+  /**
+   * The sections for positive numbers, negative numbers and zero.
+   */
+  private final Section[] _sections;
+
+  /**
+   * @param sections the sections of the format.
+   */
+  private NumberFormatter(Section[] sections) {
+    this._sections = sections;
+  }
+
+  /**
+   * Compiles the specified number format code.
+   *
+   * @param code The number format code.
+   * @return the corresponding formatter or <code>null</code> if the format code is not supported.
+   */
+  public static NumberFormatter compile(String code) {
+    if (code == null || code.isEmpty()) return null;
+    List<String> parts = split(code);
+    // The fourth section is only used for text
+    int count = Math.min(parts.size(), 3);
+    Section[] sections = new Section[count];
+    for (int i = 0; i < count; i++) {
+      sections[i] = Section.parse(parts.get(i));
+      if (sections[i] == null) return null;
+    }
+    return new NumberFormatter(sections);
+  }
+
+  /**
+   * Formats the specified value.
+   *
+   * @param value The value of the cell.
+   * @return the formatted value or <code>null</code> if the value is not a number.
+   */
+  public String format(String value) {
+    if (!isNumber(value)) return null;
+    BigDecimal number = new BigDecimal(value);
+    int signum = number.signum();
+    Section section = this._sections[0];
+    boolean minus = false;
+    if (signum < 0) {
+      if (this._sections.length > 1) {
+        section = this._sections[1];
+      } else {
+        minus = true;
+      }
+      number = number.negate();
+    } else if (signum == 0 && this._sections.length > 2) {
+      section = this._sections[2];
+    }
+    StringBuilder out = new StringBuilder();
+    if (minus) out.append('-');
+    section.format(number, value, out);
+    return out.toString();
+  }
+
+  /**
+   * Indicates whether the value is a decimal number with an optional sign and exponent.
+   *
+   * @param value The value to check.
+   * @return <code>true</code> if the value can be formatted.
+   */
+  static boolean isNumber(String value) {
+    int length = value.length();
+    int i = 0;
+    if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+    int digits = 0;
+    for (; i < length && isDigit(value.charAt(i)); i++) digits++;
+    if (i < length && value.charAt(i) == '.') {
+      for (i++; i < length && isDigit(value.charAt(i)); i++) digits++;
+    }
+    if (digits == 0) return false;
+    if (i < length && (value.charAt(i) == 'E' || value.charAt(i) == 'e')) {
+      i++;
+      if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+      int exponent = 0;
+      for (; i < length && isDigit(value.charAt(i)); i++) exponent++;
+      if (exponent == 0 || exponent > 9) return false;
+    }
+    return i == length;
+  }
+
+  /**
+   * Splits the format code into its sections.
+   */
+  private static List<String> split(String code) {
+    List<String> parts = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < code.length(); i++) {
+      char c = code.charAt(i);
+      if (c == '"') {
+        int end = code.indexOf('"', i + 1);
+        i = end < 0 ? code.length() : end;
+      } else if (c == '\\' || c == '_' || c == '*') {
+        i++;
+      } else if (c == ';') {
+        parts.add(code.substring(start, i));
+        start = i + 1;
+      }
+    }
+    parts.add(code.substring(start));
+    return parts;
+  }
+
+  /**
+   * @return <code>true</code> if the character is an ASCII digit.
+   */
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * @return <code>true</code> if the character is a digit placeholder.
+   */
+  private static boolean isPlaceholder(char c) {
+    return c == '0' || c == '#' || c == '?';
+  }
+
+  /**
+   * A section of the format code.
+   */
+  private static final class Section {
+
+    /** The type of each token */
+    private final int[] _types;
+
+    /** The placeholder character or the literal text of each token */
+    private final String[] _values;
+
+    /** The number of integer digit placeholders */
+    private final int _integers;
+
+    /** The number of decimal digit placeholders */
+    private final int _decimals;
+
+    /** Whether the integer digits are grouped by thousands */
+    private final boolean _grouping;
+
+    /** The power of ten to multiply the value by for percentages and thousands scaling */
+    private final int _shift;
+
+    /** Whether the number is written in scientific notation */
+    private final boolean _scientific;
+
+    private Section(int[] types, String[] values, int integers, int decimals, boolean grouping, int shift, boolean scientific) {
+      this._types = types;
+      this._values = values;
+      this._integers = integers;
+      this._decimals = decimals;
+      this._grouping = grouping;
+      this._shift = shift;
+      this._scientific = scientific;
+    }
+
+    /**
+     * Parses a section of a format code.
+     *
+     * @return the section or <code>null</code> if the section is not supported.
+     */
+    static Section parse(String code) {
+      List<Integer> types = new ArrayList<>();
+      List<String> values = new ArrayList<>();
+      int integers = 0;
+      int decimals = 0;
+      boolean grouping = false;
+      int shift = 0;
+      boolean point = false;
+      boolean scientific = false;
+      int length = code.length();
+      for (int i = 0; i < length; i++) {
+        char c = code.charAt(i);
+        if (isPlaceholder(c)) {
+          int type = scientific ? EXPONENT_DIGIT : point ? DECIMAL : INTEGER;
+          if (type == INTEGER) integers++;
+          else if (type == DECIMAL) decimals++;
+          types.add(type);
+          values.add(String.valueOf(c));
+        } else if (c == '.' && !point && !scientific) {
+          point = true;
+          types.add(POINT);
+          values.add(".");
+        } else if (c == ',' && i > 0 && isPlaceholder(code.charAt(i - 1)) && !scientific) {
+          if (i + 1 < length && isPlaceholder(code.charAt(i + 1))) {
+            grouping = true;
+          } else {
+            // Trailing commas scale the number by a thousand each
+            int j = i;
+            while (j < length && code.charAt(j) == ',') j++;
+            shift -= 3 * (j - i);
+            i = j - 1;
+          }
+        } else if (c == '%') {
+          shift += 2;
+          types.add(LITERAL);
+          values.add("%");
+        } else if ((c == 'E' || c == 'e') && i + 1 < length && (code.charAt(i + 1) == '+' || code.charAt(i + 1) == '-')) {
+          if (scientific) return null;
+          scientific = true;
+          types.add(EXPONENT);
+          values.add(code.charAt(i + 1) == '+' ? "+" : "-");
+          i++;
+        } else if (code.regionMatches(true, i, "General", 0, 7)) {
+          types.add(GENERAL);
+          values.add("");
+          i += 6;
+        } else if (c == '"') {
+          int end = code.indexOf('"', i + 1);
+          if (end < 0) end = length;
+          types.add(LITERAL);
+          values.add(code.substring(i + 1, end));
+          i = end;
+        } else if (c == '\\') {
+          if (i + 1 < length) {
+            types.add(LITERAL);
+            values.add(String.valueOf(code.charAt(++i)));
+          }
+        } else if (c == '_') {
+          // Leaves the space of the next character
+          i++;
+          types.add(LITERAL);
+          values.add(" ");
+        } else if (c == '*') {
+          // The next character is repeated to fill the cell
+          i++;
+        } else if (c == '[') {
+          int end = code.indexOf(']', i);
+          if (end < 0) return null;
+          String bracket = code.substring(i + 1, end);
+          if (bracket.startsWith("$")) {
+            int dash = bracket.indexOf('-');
+            String symbol = dash < 0 ? bracket.substring(1) : bracket.substring(1, dash);
+            if (!symbol.isEmpty()) {
+              types.add(LITERAL);
+              values.add(symbol);
+            }
+          } else if (!isColor(bracket)) {
+            // Conditions and elapsed times
+            return null;
+          }
+          i = end;
+        } else if (c == '@' || (c < 128 && Character.isLetter(c))) {
+          // Text, dates, times and fractions
+          return null;
+        } else if (c == '/') {
+          return null;
+        } else {
+          types.add(LITERAL);
+          values.add(String.valueOf(c));
+        }
+      }
+      if (scientific && decimals == 0 && integers == 0) return null;
+      int[] t = new int[types.size()];
+      for (int i = 0; i < t.length; i++) t[i] = types.get(i);
+      return new Section(t, values.toArray(new String[0]), integers, decimals, grouping, shift, scientific);
+    }
+
+    /**
+     * Formats the absolute value of a number with this section.
+     *
+     * @param number The absolute value of the number.
+     * @param raw    The value as stored.
+     * @param out    Where the formatted value is written.
+     */
+    void format(BigDecimal number, String raw, StringBuilder out) {
+      if (this._shift != 0) number = number.movePointRight(this._shift);
+      int exponent = 0;
+      if (this._scientific && number.signum() != 0) {
+        // Engineering notation uses multiples of the number of integer digits when optional
+        int step = this._integers > 1 && this._values[indexOf(INTEGER)].equals("#") ? this._integers : 1;
+        exponent = Math.floorDiv(number.precision() - number.scale() - 1, step) * step;
+        BigDecimal mantissa = number.movePointLeft(exponent).setScale(this._decimals, RoundingMode.HALF_UP);
+        if (mantissa.compareTo(BigDecimal.TEN.pow(step)) >= 0) {
+          exponent += step;
+          mantissa = number.movePointLeft(exponent).setScale(this._decimals, RoundingMode.HALF_UP);
+        }
+        number = mantissa;
+      } else {
+        number = number.setScale(this._decimals, RoundingMode.HALF_UP);
+      }
+      String plain = number.toPlainString();
+      int dot = plain.indexOf('.');
+      String integer = dot < 0 ? plain : plain.substring(0, dot);
+      String decimal = dot < 0 ? "" : plain.substring(dot + 1);
+      if ("0".equals(integer)) integer = "";
+
+      // Decimal placeholders for trailing zeros are left out or replaced by spaces
+      int significant = this._decimals;
+      for (int i = this._types.length - 1, d = this._decimals - 1; i >= 0 && d >= 0; i--) {
+        if (this._types[i] != DECIMAL) continue;
+        if (this._values[i].equals("0") || decimal.charAt(d) != '0') break;
+        significant = d--;
+      }
+
+      String exponentDigits = Integer.toString(Math.abs(exponent));
+      int exponentPlaceholders = 0;
+      for (int type : this._types) if (type == EXPONENT_DIGIT) exponentPlaceholders++;
+
+      int j = 0;
+      int d = 0;
+      int e = 0;
+      for (int i = 0; i < this._types.length; i++) {
+        String value = this._values[i];
+        switch (this._types[i]) {
+          case INTEGER:
+            fill(out, integer, this._integers, j++, value, this._grouping);
+            break;
+          case POINT:
+            // Without integer placeholders, the integer digits still precede the decimal point
+            if (this._integers == 0) out.append(integer);
+            out.append('.');
+            break;
+          case DECIMAL:
+            if (d < significant) out.append(decimal.charAt(d));
+            else if (value.equals("?")) out.append(' ');
+            d++;
+            break;
+          case EXPONENT:
+            out.append('E');
+            if (exponent < 0) out.append('-');
+            else if (value.equals("+")) out.append('+');
+            break;
+          case EXPONENT_DIGIT:
+            fill(out, exponentDigits, exponentPlaceholders, e++, value, false);
+            break;
+          case GENERAL:
+            out.append(raw.startsWith("-") ? raw.substring(1) : raw);
+            break;
+          default:
+            out.append(value);
+        }
+      }
+    }
+
+    /**
+     * Writes the digits for a placeholder, the digits are aligned to the right of the placeholders
+     * and the first placeholder takes any extra digit.
+     *
+     * @param digits      The digits to write, without leading zeros.
+     * @param count       The number of placeholders.
+     * @param j           The index of the placeholder.
+     * @param placeholder The placeholder character.
+     * @param grouping    Whether to separate thousands.
+     */
+    private static void fill(StringBuilder out, String digits, int count, int j, String placeholder, boolean grouping) {
+      int index = digits.length() - count + j;
+      for (int k = Math.max(j == 0 ? 0 : index, 0); k <= index; k++) {
+        appendDigit(out, digits.charAt(k), digits.length() - 1 - k, grouping);
+      }
+      if (index < 0) {
+        if (placeholder.equals("0")) appendDigit(out, '0', count - 1 - j, grouping);
+        else if (placeholder.equals("?")) out.append(' ');
+      }
+    }
+
+    /**
+     * Appends a digit of the integer part followed by a thousands separator if needed.
+     *
+     * @param position The position of the digit from the right.
+     */
+    private static void appendDigit(StringBuilder out, char digit, int position, boolean grouping) {
+      out.append(digit);
+      if (grouping && position > 0 && position % 3 == 0) out.append(',');
+    }
+
+    /**
+     * @return the index of the first token of the specified type.
+     */
+    private int indexOf(int type) {
+      for (int i = 0; i < this._types.length; i++) {
+        if (this._types[i] == type) return i;
+      }
+      return -1;
+    }
+
+    /**
+     * @return <code>true</code> if the text in brackets is a colour.
+     */
+    private static boolean isColor(String bracket) {
+      switch (bracket.toLowerCase()) {
+        case "black":
+        case "blue":
+        case "cyan":
+        case "green":
+        case "magenta":
+        case "red":
+        case "white":
+        case "yellow":
+          return true;
+        default:
+          return bracket.regionMatches(true, 0, "color", 0, 5);
+      }
+    }
+  }
+
+}
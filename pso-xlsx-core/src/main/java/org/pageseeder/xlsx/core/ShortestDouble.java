@@ -0,0 +1,295 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.core;
+
+import java.math.BigInteger;
+
+/**
+ * Rewrites the numbers stored by Excel with the fewest digits that still read as the same double.
+ *
+ * <p>Excel writes 17 significant digits when 15 are not enough to read the value back, for
+ * example <code>1.1000000000000001</code> or <code>600.70000000000005</code>, which become
+ * <code>1.1</code> and <code>600.7</code>. Values such as <code>0.30000000000000004</code> are
+ * already the shortest and are not changed.
+ *
+ * <p>The digits are computed with the Schubfach algorithm by Raffaello Giulietti, which only uses
+ * long arithmetic and a table of 128-bit powers of ten, since <code>Double.toString</code> does
+ * not always return the shortest digits before Java 19.
+ */
+public final class ShortestDouble {
+
+  /** The number of significant digits which are always read back as they were written */
+  private static final int EXACT_DIGITS = 15;
+
+  /** The precision of a double */
+  private static final int P = 53;
+
+  /** The minimum exponent of a double */
+  private static final int Q_MIN = -1074;
+
+  /** The minimum normal significand */
+  private static final long C_MIN = 1L << (P - 1);
+
+  /** The subnormal significands which have less than two digits */
+  private static final long C_TINY = 3;
+
+  /** The mask for the biased exponent */
+  private static final int BQ_MASK = 0x7FF;
+
+  /** The mask for the significand */
+  private static final long T_MASK = C_MIN - 1;
+
+  /** The mask for the lower 63 bits */
+  private static final long MASK_63 = Long.MAX_VALUE;
+
+  /** The smallest power of ten in the table */
+  private static final int G_MIN = -292;
+
+  /** The largest power of ten in the table */
+  private static final int G_MAX = 324;
+
+  /**
+   * The 126-bit approximations of the powers of ten from 10<sup>-292</sup> to 10<sup>324</sup>
+   * as pairs of the upper and lower 63 bits.
+   */
+  private static final long[] G = new long[(G_MAX - G_MIN + 1) * 2];
+  static {
+    for (int e = G_MIN; e <= G_MAX; e++) {
+      int r = flog2pow10(e) - 125;
+      BigInteger numerator = e >= 0 ? BigInteger.TEN.pow(e) : BigInteger.ONE;
+      BigInteger denominator = e >= 0 ? BigInteger.ONE : BigInteger.TEN.pow(-e);
+      if (r >= 0) denominator = denominator.shiftLeft(r);
+      else numerator = numerator.shiftLeft(-r);
+      BigInteger g = numerator.divide(denominator).add(BigInteger.ONE);
+      G[(e - G_MIN) * 2] = g.shiftRight(63).longValue();
+      G[(e - G_MIN) * 2 + 1] = g.longValue() & MASK_63;
+    }
+  }
+
+  /**
+   * Utility class.
+   */
+  private ShortestDouble() {
+  }
+
+  /**
+   * Returns the shortest text for the specified number.
+   *
+   * <p>Numbers with up to 15 significant digits are already the shortest and are returned as
+   * they are, as well as values which are not numbers. Otherwise, the number keeps the notation
+   * it was written in, plain or scientific.
+   *
+   * @param value the number as written in the <code>v</code> element.
+   * @return the shortest text for the number.
+   */
+  public static String shorten(String value) {
+    int length = value.length();
+    int i = 0;
+    if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+    int digits = 0;
+    int significant = 0;
+    for (; i < length && isDigit(value.charAt(i)); i++, digits++) {
+      if (significant > 0 || value.charAt(i) != '0') significant++;
+    }
+    if (i < length && value.charAt(i) == '.') {
+      for (i++; i < length && isDigit(value.charAt(i)); i++, digits++) {
+        if (significant > 0 || value.charAt(i) != '0') significant++;
+      }
+    }
+    if (digits == 0) return value;
+    int e = i;
+    if (i < length && (value.charAt(i) == 'E' || value.charAt(i) == 'e')) {
+      i++;
+      if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+      int exponent = 0;
+      for (; i < length && isDigit(value.charAt(i)); i++) exponent++;
+      if (exponent == 0) return value;
+    }
+    if (i != length || significant <= EXACT_DIGITS) return value;
+    double v = Double.parseDouble(value);
+    if (Double.isInfinite(v)) return value;
+    StringBuilder out = new StringBuilder(26);
+    if (v < 0) out.append('-');
+    boolean scientific = e < length;
+    boolean plus = scientific && e + 1 < length && value.charAt(e + 1) == '+';
+    toDecimal(Math.abs(v), out, scientific, plus);
+    return out.toString();
+  }
+
+  /**
+   * Computes the shortest decimal of a positive finite double and writes it.
+   */
+  private static void toDecimal(double v, StringBuilder out, boolean scientific, boolean plus) {
+    long bits = Double.doubleToRawLongBits(v);
+    long t = bits & T_MASK;
+    int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+    if (bq != 0) {
+      int mq = -Q_MIN + 1 - bq;
+      long c = C_MIN | t;
+      // Integers are their own shortest decimal
+      if (0 < mq && mq < P) {
+        long f = c >> mq;
+        if (f << mq == c) {
+          write(f, 0, out, scientific, plus);
+          return;
+        }
+      }
+      toDecimal(-mq, c, 0, out, scientific, plus);
+    } else if (t != 0) {
+      if (t < C_TINY) toDecimal(Q_MIN, 10 * t, -1, out, scientific, plus);
+      else toDecimal(Q_MIN, t, 0, out, scientific, plus);
+    } else {
+      write(0, 0, out, scientific, plus);
+    }
+  }
+
+  /**
+   * Computes the shortest decimal of <code>c 2<sup>q</sup></code> and writes it.
+   */
+  private static void toDecimal(int q, long c, int dk, StringBuilder out, boolean scientific, boolean plus) {
+    // The bounds of the rounding interval are only included for even significands
+    int odd = (int) (c & 1);
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != C_MIN || q == Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    int index = (-k - G_MIN) * 2;
+    long g1 = G[index];
+    long g0 = G[index + 1];
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      // Try one digit less first
+      long sp10 = s / 10 * 10;
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + odd <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + odd <= vbr;
+      if (upin != wpin) {
+        write(upin ? sp10 : tp10, k, out, scientific, plus);
+        return;
+      }
+    }
+    long t = s + 1;
+    boolean uin = vbl + odd <= s << 2;
+    boolean win = (t << 2) + odd <= vbr;
+    if (uin != win) {
+      write(uin ? s : t, k + dk, out, scientific, plus);
+      return;
+    }
+    // Both are in the rounding interval, pick the closest or the even one
+    long cmp = vb - (s + t << 1);
+    write(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, out, scientific, plus);
+  }
+
+  /**
+   * Writes <code>f 10<sup>e</sup></code> without trailing zeros.
+   */
+  private static void write(long f, int e, StringBuilder out, boolean scientific, boolean plus) {
+    while (f != 0 && f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+    char[] digits = new char[20];
+    int n = 0;
+    do {
+      digits[digits.length - ++n] = (char) ('0' + f % 10);
+      f /= 10;
+    } while (f != 0);
+    int start = digits.length - n;
+    if (scientific) {
+      out.append(digits[start]);
+      if (n > 1) out.append('.').append(digits, start + 1, n - 1);
+      int exponent = e + n - 1;
+      out.append('E');
+      if (exponent >= 0 && plus) out.append('+');
+      out.append(exponent);
+    } else if (e >= 0) {
+      out.append(digits, start, n);
+      for (int i = 0; i < e; i++) out.append('0');
+    } else if (n + e > 0) {
+      out.append(digits, start, n + e).append('.').append(digits, start + n + e, -e);
+    } else {
+      out.append("0.");
+      for (int i = n + e; i < 0; i++) out.append('0');
+      out.append(digits, start, n);
+    }
+  }
+
+  /**
+   * Rounds to odd the upper 64 bits of <code>g cp</code> shifted right by 63 bits.
+   */
+  private static long rop(long g1, long g0, long cp) {
+    long x1 = multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | (z & MASK_63) + MASK_63 >>> 63;
+  }
+
+  /**
+   * @return the upper 64 bits of the 128-bit product of two signed longs.
+   */
+  private static long multiplyHigh(long x, long y) {
+    long x1 = x >> 32;
+    long x2 = x & 0xFFFFFFFFL;
+    long y1 = y >> 32;
+    long y2 = y & 0xFFFFFFFFL;
+    long z2 = x2 * y2;
+    long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
+  }
+
+  /**
+   * @return floor(log<sub>10</sub>(2<sup>e</sup>)).
+   */
+  private static int flog10pow2(int e) {
+    return (int) (e * 661_971_961_083L >> 41);
+  }
+
+  /**
+   * @return floor(log<sub>10</sub>(3/4 2<sup>e</sup>)).
+   */
+  private static int flog10threeQuartersPow2(int e) {
+    return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+  }
+
+  /**
+   * @return floor(log<sub>2</sub>(10<sup>e</sup>)).
+   */
+  private static int flog2pow10(int e) {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+}
@@ -37,6 +37,16 @@ public class Style {
    */
   private final List<CellFormat> cellFormats = new ArrayList<>();
 
+  /**
+   * The kind of each cell format by index, <code>null</code> until classified.
+   */
+  private CellFormat.Kind[] kinds = null;
+
+  /**
+   * The number formatter of each cell format by index, <code>null</code> until classified.
+   */
+  private NumberFormatter[] formatters = null;
+
   /**
    * The number formats ids from 0 to 163 are already defined in ECMA 376.
    */
@@ -69,16 +79,98 @@ public class Style {
 
   public void addNumberFormat(Integer numberFormatId, String formatCode) {
     this.numberFormats.put(numberFormatId, formatCode);
+    this.kinds = null;
+    this.formatters = null;
   }
 
   public void addCellFormat(CellFormat cellFormat){
     this.cellFormats.add(cellFormat);
+    this.kinds = null;
+    this.formatters = null;
   }
 
   public CellFormat getCellFormat (int index) {
     return this.cellFormats.get(index);
   }
 
+  /**
+   * Returns how numeric values are written for the specified cell format.
+   *
+   * <p>Only cell formats which apply their number format have a kind other than plain: the
+   * date and time formats and the number formats supported by {@link NumberFormatter}.
+   *
+   * @param index The index of the cell format.
+   * @return the kind of values for the cell format.
+   *
+   * @throws IndexOutOfBoundsException if there is no cell format at that index.
+   */
+  public CellFormat.Kind getKind(int index) {
+    CellFormat.Kind[] kinds = this.kinds;
+    if (kinds != null && index >= 0 && index < kinds.length) return kinds[index];
+    CellFormat cellFormat = this.cellFormats.get(index);
+    return classify(cellFormat, compile(cellFormat, new HashMap<>()));
+  }
+
+  /**
+   * Returns the number formatter for the specified cell format.
+   *
+   * @param index The index of the cell format.
+   * @return the number formatter or <code>null</code> if the kind of the cell format is not a number.
+   *
+   * @throws IndexOutOfBoundsException if there is no cell format at that index.
+   */
+  public NumberFormatter getNumberFormatter(int index) {
+    NumberFormatter[] formatters = this.formatters;
+    if (formatters != null && index >= 0 && index < formatters.length) return formatters[index];
+    return compile(this.cellFormats.get(index), new HashMap<>());
+  }
+
+  /**
+   * Computes the kind and number formatter of every cell format once so that they can be
+   * looked up by index.
+   *
+   * <p>Each number format code is only compiled once even when used by several cell formats.
+   *
+   * <p>This method should be invoked once all the cell and number formats have been added.
+   */
+  public void classify() {
+    Map<Integer, NumberFormatter> compiled = new HashMap<>();
+    CellFormat.Kind[] kinds = new CellFormat.Kind[this.cellFormats.size()];
+    NumberFormatter[] formatters = new NumberFormatter[kinds.length];
+    for (int i = 0; i < kinds.length; i++) {
+      CellFormat cellFormat = this.cellFormats.get(i);
+      formatters[i] = compile(cellFormat, compiled);
+      kinds[i] = classify(cellFormat, formatters[i]);
+    }
+    this.formatters = formatters;
+    this.kinds = kinds;
+  }
+
+  /**
+   * @return the kind of values for the specified cell format.
+   */
+  private CellFormat.Kind classify(CellFormat cellFormat, NumberFormatter formatter) {
+    if (!cellFormat.isApplyNumberFormat()) return CellFormat.Kind.PLAIN;
+    if (formatter != null) return CellFormat.Kind.NUMBER;
+    return CellFormat.Kind.forFormatCode(getNumberFormatCode(cellFormat.getNumberFormatId()));
+  }
+
+  /**
+   * @param cellFormat The cell format
+   * @param compiled   The formatters already compiled by number format ID
+   *
+   * @return the number formatter of the cell format or <code>null</code> if it does not apply a supported number format.
+   */
+  private NumberFormatter compile(CellFormat cellFormat, Map<Integer, NumberFormatter> compiled) {
+    if (!cellFormat.isApplyNumberFormat()) return null;
+    int numberFormatID = cellFormat.getNumberFormatId();
+    if (compiled.containsKey(numberFormatID)) return compiled.get(numberFormatID);
+    String code = getNumberFormatCode(numberFormatID);
+    NumberFormatter formatter = "General".equalsIgnoreCase(code) ? null : NumberFormatter.compile(code);
+    compiled.put(numberFormatID, formatter);
+    return formatter;
+  }
+
   public String getNumberFormatCode(int numberFormatID) {
     String formatCode = "";
     if (numberFormatID < 164) {
@@ -7,8 +7,11 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pageseeder.xlsx.ResourceLimitException;
 import org.pageseeder.xlsx.XLSXException;
+import org.pageseeder.xlsx.util.FolderPackage;
 import org.pageseeder.xlsx.util.Namespaces;
+import org.pageseeder.xlsx.util.OfficePackage;
 import org.pageseeder.xlsx.util.Relationship;
 import org.pageseeder.xlsx.util.Relationships;
 import org.pageseeder.xlsx.util.XML;
@@ -34,13 +37,20 @@ public final class WorkBook {
    */
   private final List<WorkSheet> _sheets;
 
+  /**
+   * Whether the workbook uses the 1904 date system.
+   */
+  private final boolean _date1904;
+
   /**
    * Creates a workbook.
    *
-   * @param sheets the work sheets in this workbook.
+   * @param sheets   the work sheets in this workbook.
+   * @param date1904 whether the workbook uses the 1904 date system.
    */
-  private WorkBook(List<WorkSheet> sheets) {
+  private WorkBook(List<WorkSheet> sheets, boolean date1904) {
     this._sheets = sheets;
+    this._date1904 = date1904;
   }
 
   /**
@@ -50,6 +60,13 @@ public final class WorkBook {
     return this._sheets;
   }
 
+  /**
+   * @return <code>true</code> if serial dates count days from 1 January 1904 instead of 1900.
+   */
+  public boolean isDate1904() {
+    return this._date1904;
+  }
+
   /**
    * @return the title of the workbook.
    */
@@ -73,13 +90,28 @@ public final class WorkBook {
    * @return the corresponding workbook.
    */
   public static WorkBook parse(File workbook, Relationships relationships) {
-    Loader handler = new Loader(relationships, workbook.getParentFile());
+    return parse(new FolderPackage(workbook.getParentFile()), workbook.getName(), relationships);
+  }
+
+  /**
+   * Returns the workbook.
+   *
+   * @param pkg           the package containing the workbook.
+   * @param part          the name of the workbook part to parse.
+   * @param relationships the relationships for this workbook.
+   *
+   * @return the corresponding workbook.
+   */
+  public static WorkBook parse(OfficePackage pkg, String part, Relationships relationships) {
+    Loader handler = new Loader(relationships, pkg, part);
     try {
-      XML.parse(workbook, handler, true);
+      XML.parse(pkg, part, handler, true);
+    } catch (ResourceLimitException ex) {
+      throw ex;
     } catch (XLSXException ex) {
-      throw new XLSXException("Unable to parse shared strings", ex.getCause());
+      throw new XLSXException("Unable to parse workbook", ex.getCause());
     }
-    return new WorkBook(handler.getWorkSheets());
+    return new WorkBook(handler.getWorkSheets(), handler.isDate1904());
   }
 
   /**
@@ -93,21 +125,29 @@ public final class WorkBook {
     /** The relationships */
     private final Relationships _relationships;
 
-    /** The directory where the workbook */
-    private final File _base;
+    /** The package containing the workbook */
+    private final OfficePackage _package;
+
+    /** The name of the workbook part */
+    private final String _part;
 
     /** The shared strings. */
     private final List<WorkSheet> _sheets = new ArrayList<WorkSheet>();
 
+    /** Whether the workbook uses the 1904 date system. */
+    private boolean date1904 = false;
+
     /**
      * Sole constructor.
      *
      * @param relationships the relationships of this workbook.
-     * @param base          the base directory for the workbook.
+     * @param pkg           the package containing the workbook.
+     * @param part          the name of the workbook part.
      */
-    public Loader(Relationships relationships, File base) {
+    public Loader(Relationships relationships, OfficePackage pkg, String part) {
       this._relationships = relationships;
-      this._base = base;
+      this._package = pkg;
+      this._part = part;
     }
 
     @Override
@@ -118,9 +158,13 @@ public final class WorkBook {
         String sname = atts.getValue("name");
         String rid = atts.getValue(Namespaces.RELATIONSHIPS, "id");
         Relationship r = this._relationships.get(rid);
-        File file = new File(this._base, r.target());
-        WorkSheet sheet = new WorkSheet(sname, file);
+        String target = Relationships.resolve(this._part, r.target());
+        WorkSheet sheet = new WorkSheet(sname, this._package, target);
         this._sheets.add(sheet);
+      } else if (Namespaces.SPREADSHEETML.equals(uri) && "workbookPr".equals(localName)) {
+        // <workbookPr date1904="1" />
+        String date1904 = atts.getValue("date1904");
+        this.date1904 = "1".equals(date1904) || "true".equals(date1904);
       }
     }
 
@@ -130,6 +174,13 @@ public final class WorkBook {
     public List<WorkSheet> getWorkSheets() {
       return this._sheets;
     }
+
+    /**
+     * @return whether the workbook uses the 1904 date system.
+     */
+    public boolean isDate1904() {
+      return this.date1904;
+    }
   }
 
 }
@@ -5,8 +5,11 @@ package org.pageseeder.xlsx.core;
 
 import java.io.File;
 
+import org.pageseeder.xlsx.ResourceLimitException;
 import org.pageseeder.xlsx.XLSXException;
+import org.pageseeder.xlsx.util.FolderPackage;
 import org.pageseeder.xlsx.util.Namespaces;
+import org.pageseeder.xlsx.util.OfficePackage;
 import org.pageseeder.xlsx.util.XML;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -23,14 +26,19 @@ public final class WorkSheet {
   private String _name;
 
   /**
-   * The Excel source of the work sheet in the Office package.
+   * The Office package containing the work sheet.
    */
-  private File _source;
+  private final OfficePackage _package;
 
   /**
-   * The size of the work sheet (number or rows)
+   * The name of the work sheet part in the Office package.
    */
-  private int _size;
+  private final String _part;
+
+  /**
+   * The size of the work sheet (number or rows), -1 until the sheet is inspected
+   */
+  private int _size = -1;
 
   /**
    * Creates a new worksheet.
@@ -39,8 +47,20 @@ public final class WorkSheet {
    * @param source The Excel source of the work sheet in the Office package.
    */
   public WorkSheet(String name, File source) {
+    this(name, new FolderPackage(source.getParentFile()), source.getName());
+  }
+
+  /**
+   * Creates a new worksheet.
+   *
+   * @param name The name of the work sheet in the workbook.
+   * @param pkg  The Office package containing the work sheet.
+   * @param part The name of the work sheet part in the Office package.
+   */
+  public WorkSheet(String name, OfficePackage pkg, String part) {
     this._name = name;
-    this._source = source;
+    this._package = pkg;
+    this._part = part;
   }
 
   /**
@@ -51,26 +71,38 @@ public final class WorkSheet {
   }
 
   /**
-   * @return The Excel source of the work sheet in the Office package.
+   * @return The Office package containing the work sheet.
    */
-  public File source() {
-    return this._source;
+  public OfficePackage getPackage() {
+    return this._package;
   }
 
   /**
-   * @return the size of the sheet.
+   * @return The name of the work sheet part in the Office package.
+   */
+  public String part() {
+    return this._part;
+  }
+
+  /**
+   * @return the size of the sheet or -1 if the sheet has not been inspected.
    */
   public int size() {
     return this._size;
   }
 
   /**
-   * Inspect this worksheet.
+   * Inspect this worksheet to count its rows.
+   *
+   * <p>This requires a full parse of the worksheet and is not needed to process it: empty
+   * worksheets are skipped when they are processed.
    */
   public void inspect() {
     Inspector inspector = new Inspector();
     try {
-      XML.parse(this.source(), inspector, true);
+      XML.parse(this._package, this._part, inspector, true);
+    } catch (ResourceLimitException ex) {
+      throw ex;
     } catch (XLSXException ex) {
       throw new XLSXException("Unable to inspect worksheet:"+this._name, ex.getCause());
     }
@@ -91,7 +123,7 @@ public final class WorkSheet {
     @Override
     public void startElement(String uri, String localName, String name, Attributes atts)
         throws SAXException {
-      if (Namespaces.SPREADSHEETML.equals(uri) && "row".equals(name)) {
+      if (Namespaces.SPREADSHEETML.equals(uri) && "row".equals(localName)) {
         this.count++;
       }
     }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.interim;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+
+import org.pageseeder.xlsx.core.CellFormat;
+import org.pageseeder.xlsx.core.ShortestDouble;
+import org.pageseeder.xlsx.core.Style;
+import org.pageseeder.xlsx.util.SharedStrings;
+
+/**
+ * Resolves the raw value of a cell to the value written in the interim data.
+ *
+ * <p>Shared strings are looked up and numbers using a date or time format are converted
+ * to a date, time or date-time, in the 1900 or 1904 date system of the workbook.
+ */
+final class CellResolver {
+
+  //To calculate the second the precision is required to be 14. bigger number like 18 ou 20 will result in one second
+  // less
+  private static final MathContext SECOND_MATH_CONTEXT = new MathContext(14, RoundingMode.HALF_UP);
+  private static final BigDecimal EXCEL_SECOND_VALUE = new BigDecimal(1).divide(new BigDecimal(24*60*60), SECOND_MATH_CONTEXT);
+
+  /**
+   * The length of a second in days rounded to 14 significant digits as above, in units of 10^-18 days.
+   */
+  private static final long SECOND_VALUE = 11574074074074L;
+
+  /**
+   * The number of seconds in a day.
+   */
+  private static final int SECONDS_PER_DAY = 24*60*60;
+
+  /**
+   * The epoch day of day 0 in the 1900 date system, 31 December 1899.
+   */
+  private static final long EPOCH_1900 = LocalDate.of(1899, Month.DECEMBER, 31).toEpochDay();
+
+  /**
+   * The epoch day of day 0 in the 1904 date system, 1 January 1904.
+   */
+  private static final long EPOCH_1904 = LocalDate.of(1904, Month.JANUARY, 1).toEpochDay();
+
+  /**
+   * The powers of ten which fit in a long.
+   */
+  private static final long[] POWERS_OF_TEN = new long[19];
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+  }
+
+  /** The shared strings. */
+  private final SharedStrings _shared;
+
+  /** the style.xml **/
+  private final Style _style;
+
+  /** Whether the workbook uses the 1904 date system */
+  private final boolean _date1904;
+
+  /** Whether numbers are written as displayed by their number format */
+  private final boolean _formatNumbers;
+
+  /** Whether numbers without a format are written with the fewest digits */
+  private final boolean _shortestNumbers;
+
+  /**
+   * @param shared   the shared strings to resolve the values.
+   * @param style    the styles to format the values.
+   * @param date1904 whether the workbook uses the 1904 date system.
+   */
+  CellResolver(SharedStrings shared, Style style, boolean date1904) {
+    this(shared, style, date1904, false, false);
+  }
+
+  /**
+   * @param shared        the shared strings to resolve the values.
+   * @param style         the styles to format the values.
+   * @param date1904      whether the workbook uses the 1904 date system.
+   * @param formatNumbers   whether numbers are written as displayed by their number format.
+   * @param shortestNumbers whether numbers without a format are written with the fewest digits.
+   */
+  CellResolver(SharedStrings shared, Style style, boolean date1904, boolean formatNumbers, boolean shortestNumbers) {
+    this._shared = shared;
+    this._style = style;
+    this._date1904 = date1904;
+    this._formatNumbers = formatNumbers;
+    this._shortestNumbers = shortestNumbers;
+  }
+
+  /**
+   * Resolves the value of a cell.
+   *
+   * @param value        The content of the <code>v</code> element.
+   * @param isShared     Whether the value is the index of a shared string.
+   * @param isNumber     Whether the value is a number.
+   * @param cellFormatID The index of the cell format or -1.
+   *
+   * @return the resolved value.
+   */
+  String resolve(String value, boolean isShared, boolean isNumber, int cellFormatID) {
+    if (isShared) {
+      value = this._shared.get(Integer.parseInt(value));
+    }
+
+    CellFormat.Kind kind = cellFormatID >= 0 ? this._style.getKind(cellFormatID) : CellFormat.Kind.PLAIN;
+    if (kind == CellFormat.Kind.PLAIN) {
+      if (this._shortestNumbers && isNumber) value = ShortestDouble.shorten(value);
+    } else if (kind == CellFormat.Kind.NUMBER) {
+      if (this._formatNumbers && isNumber) {
+        String formatted = this._style.getNumberFormatter(cellFormatID).format(value);
+        if (formatted != null) value = formatted;
+      }
+    } else if (isValidNumber(value)) {
+      value = calculateDateTime(value, this._date1904).format(kind.formatter());
+    }
+    return value;
+  }
+
+  /**
+   * Returns the resolved value of a cell as interim markup when it is known in advance.
+   *
+   * <p>This is the rich text of a shared string or its escaped form when it was not formatted,
+   * so that shared strings are not escaped again for each cell.
+   *
+   * @param value    The content of the <code>v</code> element.
+   * @param isShared Whether the value is the index of a shared string.
+   * @param resolved The value returned by {@link #resolve(String, boolean, boolean, int)}.
+   *
+   * @return the markup or <code>null</code> if the resolved value must be escaped.
+   */
+  String markup(String value, boolean isShared, String resolved) {
+    if (!isShared) return null;
+    int i = Integer.parseInt(value);
+    String markup = this._shared.getMarkup(i);
+    if (markup != null) return markup;
+    // The same instance is returned unless the string was formatted as a date
+    return resolved == this._shared.get(i) ? this._shared.getEscaped(i) : null;
+  }
+
+  /**
+   * Indicates whether the value is a number which can be converted to a date or time.
+   *
+   * <p>The value must only contain digits and at most one dot between digits, and have at least
+   * two digits.
+   *
+   * @param value The value of the cell.
+   * @return <code>true</code> if the value can be converted.
+   */
+  static boolean isValidNumber(String value) {
+    int dot = -1;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '.') {
+        if (dot >= 0) return false;
+        dot = i;
+      } else if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return dot < 0 ? value.length() >= 2 : dot > 0 && dot < value.length() - 1;
+  }
+
+  /**
+   * Converts an Excel serial date in the 1900 date system to a date-time.
+   *
+   * @param value The serial date.
+   * @return the corresponding date-time.
+   */
+  static LocalDateTime calculateDateTime(String value) {
+    return calculateDateTime(value, false);
+  }
+
+  /**
+   * Converts an Excel serial date to a date-time.
+   *
+   * <p>The whole days are counted from the epoch of the date system; in the 1900 date system,
+   * days after 28 February 1900 are shifted by one since Excel considers 1900 a leap year.
+   * The fraction of the day is divided by the length of a second rounded to 14 significant
+   * digits, the quotient is rounded to 14 significant digits and truncated to whole seconds.
+   *
+   * <p>Values made of digits with at most 18 decimals are converted with long arithmetic,
+   * other values with {@link BigDecimal}.
+   *
+   * @param value    The serial date.
+   * @param date1904 Whether the serial date is in the 1904 date system.
+   * @return the corresponding date-time.
+   */
+  static LocalDateTime calculateDateTime(String value, boolean date1904) {
+    int length = value.length();
+    int i = 0;
+    long days = 0;
+    for (; i < length && i < 12 && isDigit(value.charAt(i)); i++) {
+      days = days * 10 + (value.charAt(i) - '0');
+    }
+    long fraction = 0;
+    int scale = 0;
+    if (i > 0 && i < length && value.charAt(i) == '.') {
+      for (i++; i < length && scale < 18 && isDigit(value.charAt(i)); i++, scale++) {
+        fraction = fraction * 10 + (value.charAt(i) - '0');
+      }
+    }
+    if (i == 0 || i < length) return calculateDateTimeExactly(value, date1904);
+    if (!date1904 && days > 59) days--;
+
+    // The fraction in units of 10^-18 days divided by the length of a second
+    long scaled = fraction * POWERS_OF_TEN[18 - scale];
+    long seconds = scaled / SECOND_VALUE;
+    long rest = scaled - seconds * SECOND_VALUE;
+    // Rounding the quotient to 14 significant digits only matters when it reaches the next second,
+    // that is when the rest is within half a unit of the last digit from the divisor
+    int exponent = -1;
+    while (seconds >= POWERS_OF_TEN[exponent + 1]) exponent++;
+    if (SECOND_VALUE - rest <= SECOND_VALUE / (2 * POWERS_OF_TEN[13 - exponent])) seconds++;
+    return toDateTime(days, seconds, date1904);
+  }
+
+  /**
+   * Converts an Excel serial date to a date-time using decimal arithmetic.
+   */
+  private static LocalDateTime calculateDateTimeExactly(String value, boolean date1904) {
+    BigDecimal countFromEpoch = new BigDecimal(value);
+    if (!date1904 && countFromEpoch.longValue() > 59) {
+      countFromEpoch = countFromEpoch.subtract(new BigDecimal(1));
+    }
+
+    //Get days
+    long days = countFromEpoch.longValue();  // Extract the number of whole days, dropping the fraction.
+
+    //Get seconds
+    BigDecimal decimal = countFromEpoch.remainder(BigDecimal.ONE);
+    long seconds = decimal.divide(EXCEL_SECOND_VALUE, SECOND_MATH_CONTEXT).longValue();
+    return toDateTime(days, seconds, date1904);
+  }
+
+  /**
+   * @return the date-time for the specified days and seconds from the epoch of the date system.
+   */
+  private static LocalDateTime toDateTime(long days, long seconds, boolean date1904) {
+    long epochDay = (date1904 ? EPOCH_1904 : EPOCH_1900) + days + Math.floorDiv(seconds, SECONDS_PER_DAY);
+    return LocalDateTime.of(LocalDate.ofEpochDay(epochDay), LocalTime.ofSecondOfDay(Math.floorMod(seconds, SECONDS_PER_DAY)));
+  }
+
+  /**
+   * @return <code>true</code> if the character is an ASCII digit.
+   */
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+}
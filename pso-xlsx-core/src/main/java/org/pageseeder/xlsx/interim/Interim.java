@@ -4,29 +4,27 @@
 package org.pageseeder.xlsx.interim;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
 import java.io.Writer;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.time.LocalDateTime;
-import java.time.Month;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.pageseeder.xlsx.config.TransformConfig;
+import org.pageseeder.xlsx.ResourceLimitException;
 import org.pageseeder.xlsx.XLSXException;
 import org.pageseeder.xlsx.config.SplitLevel;
-import org.pageseeder.xlsx.core.CellFormat;
 import org.pageseeder.xlsx.core.Style;
 import org.pageseeder.xlsx.core.WorkBook;
 import org.pageseeder.xlsx.core.WorkSheet;
+import org.pageseeder.xlsx.sink.FileSink;
+import org.pageseeder.xlsx.sink.OutputSink;
 import org.pageseeder.xlsx.util.Namespaces;
+import org.pageseeder.xlsx.util.PartPrefetcher;
 import org.pageseeder.xlsx.util.SharedStrings;
 import org.pageseeder.xlsx.util.XML;
 import org.xml.sax.Attributes;
@@ -42,9 +40,9 @@ import org.xml.sax.helpers.DefaultHandler;
 public final class Interim {
 
   /**
-   * The output directory.
+   * Where the interim documents are written.
    */
-  private File _output;
+  private final OutputSink _sink;
 
   /**
    * The configuration.
@@ -57,7 +55,16 @@ public final class Interim {
    * @param config The configuration.
    */
   public Interim(File output, TransformConfig config) {
-    this._output = output;
+    this(new FileSink(output), config);
+  }
+
+  /**
+   *
+   * @param sink   Where the interim documents are written.
+   * @param config The configuration.
+   */
+  public Interim(OutputSink sink, TransformConfig config) {
+    this._sink = sink;
     this._config = config;
   }
 
@@ -68,6 +75,19 @@ public final class Interim {
    * @param shared The shared strings to resolve cell values.
    */
   public void process(WorkBook book, SharedStrings shared, Style style) {
+    // Worksheets not selected or known to be empty are skipped, others are only written if they have rows
+    List<WorkSheet> sheets = new ArrayList<>();
+    List<String> parts = new ArrayList<>();
+    for (WorkSheet sheet : book.sheets()) {
+      if (sheet.size() != 0 && this._config.isSelected(sheet.name())) {
+        sheets.add(sheet);
+        parts.add(sheet.part());
+      }
+    }
+    PartPrefetcher prefetcher = null;
+    if (this._config.isPipelined() && !sheets.isEmpty()) {
+      prefetcher = new PartPrefetcher(sheets.get(0).getPackage(), parts);
+    }
     try (Writer xml = getWriterForXML("workbook.xml")) {
       // Generate the XML for the workbook
       ;
@@ -75,15 +95,19 @@ public final class Interim {
       xml.append("<workbook title=\"").append(XML.attribute(book.getTitle())).append("\">\n");
 
       // Process worksheets
-      for (WorkSheet sheet : book.sheets()) {
-        if (sheet.size() > 0) {
-          process(book, sheet, shared, xml, style);
+      for (WorkSheet sheet : sheets) {
+        try (InputStream in = prefetcher != null ? prefetcher.next(sheet.part()) : sheet.getPackage().open(sheet.part())) {
+          process(book, sheet, in, shared, xml, style);
+        } catch (IOException ex) {
+          throw new XLSXException("Unable to read worksheet "+sheet.name(), ex);
         }
       }
 
       xml.append("</workbook>\n");
     } catch (IOException ex) {
       ex.printStackTrace();
+    } finally {
+      if (prefetcher != null) prefetcher.close();
     }
   }
 
@@ -92,54 +116,43 @@ public final class Interim {
    *
    * @param book   The workbook being processed.
    * @param sheet  The worksheet being processed.
+   * @param in     The content of the worksheet part.
    * @param shared The shared strings to resolve cell values.
    */
-  private void process(WorkBook book, WorkSheet sheet, SharedStrings shared, Appendable xmlbook, Style style) {
-    Writer writer = null;
-    String path = sheet.name().trim()+".xml";
+  private void process(WorkBook book, WorkSheet sheet, InputStream in, SharedStrings shared, Appendable xmlbook, Style style) {
+    // The worksheet is only written once its first row is found so that empty sheets are skipped
+    SheetOutput output = new SheetOutput(book, sheet, xmlbook);
     try {
-      Appendable xml;
-      if (this._config.getSplitLevel() == SplitLevel.workbook) {
-        xml = xmlbook;
-        xml.append("<worksheet title=\"").append(XML.attribute(sheet.name())).append("\">\n");
-      } else {
-        // Copy reference in workbook
-        xmlbook.append("  <worksheet");
-        xmlbook.append(" href=\"").append(path).append('"');
-        xmlbook.append(" title=\"").append(XML.attribute(sheet.name())).append('"');;
-        xmlbook.append("/>\n");
-        // Start new file for work sheet
-        writer = getWriterForXML(path);
-        xml = writer;
-        start(xml);
-        xml.append("<worksheet");
-        xml.append(" title=\"").append(XML.attribute(sheet.name())).append('"');
-        xml.append(" book-title=\"").append(XML.attribute(book.getTitle())).append('"');
-        xml.append(">\n");
-      }
-      Processor handler = new Processor(book, sheet, shared, style, this._config, xml);
+      Processor handler = new Processor(book, sheet, shared, style, this._config, output);
       try {
-        XML.parse(sheet.source(), handler, true);
+        if (this._config.isScanning()) {
+          // Use the byte scanner unless the part uses features it does not support
+          SheetScanner scanner = new SheetScanner(in);
+          if (scanner.isSupported()) {
+            scanner.scan(handler);
+          } else {
+            XML.parse(scanner.remaining(), sheet.part(), handler, true);
+          }
+        } else {
+          XML.parse(in, sheet.part(), handler, true);
+        }
+      } catch (ResourceLimitException ex) {
+        throw ex;
       } catch (XLSXException ex) {
-        throw new XLSXException("Unable to parse shared strings", ex.getCause());
+        // The SAX parser is stopped with an exception once all the rows have been found
+        if (!(ex.getCause() instanceof Stop))
+          throw new XLSXException("Unable to parse worksheet "+sheet.name(), ex.getCause() != null ? ex.getCause() : ex);
       }
-      xml.append("</worksheet>\n");
+      output.finish();
     } catch (IOException ex) {
       throw new XLSXException(ex);
     } finally {
-      if (writer != null)
-        try {
-          writer.close();
-        } catch (IOException ex) {
-          // oh well we tried
-        }
+      output.close();
     }
   }
 
-  public Writer getWriterForXML(String path) throws FileNotFoundException {
-    File out = new File(this._output, path);
-    FileOutputStream fos = new FileOutputStream(out);
-    return new OutputStreamWriter(fos, StandardCharsets.UTF_8);
+  public Writer getWriterForXML(String path) throws IOException {
+    return this._sink.writer(path);
   }
 
   /**
@@ -157,13 +170,105 @@ public final class Interim {
     xml.append("-->\n");
   }
 
+  /**
+   * Thrown by the SAX processor to stop parsing once all the rows have been found.
+   */
+  private static final class Stop extends SAXException {
+
+    private static final long serialVersionUID = 1L;
+
+    Stop() {
+      super("All rows found");
+    }
+  }
+
+  /**
+   * The output of a worksheet, started when the first row is found.
+   */
+  private final class SheetOutput {
+
+    /** The workbook. */
+    private final WorkBook _book;
+
+    /** The worksheet. */
+    private final WorkSheet _sheet;
+
+    /** The XML of the workbook. */
+    private final Appendable _xmlbook;
+
+    /** The writer for the worksheet document when the split level is not workbook */
+    private Writer writer = null;
+
+    /** Where the XML of the worksheet goes once started */
+    private Appendable xml = null;
+
+    SheetOutput(WorkBook book, WorkSheet sheet, Appendable xmlbook) {
+      this._book = book;
+      this._sheet = sheet;
+      this._xmlbook = xmlbook;
+    }
+
+    /**
+     * Starts the worksheet if it has not been started yet.
+     */
+    void open() throws IOException {
+      if (this.xml != null) return;
+      String path = this._sheet.name().trim()+".xml";
+      if (Interim.this._config.getSplitLevel() == SplitLevel.workbook) {
+        this.xml = this._xmlbook;
+        this.xml.append("<worksheet title=\"").append(XML.attribute(this._sheet.name())).append("\">\n");
+      } else {
+        // Copy reference in workbook
+        this._xmlbook.append("  <worksheet");
+        this._xmlbook.append(" href=\"").append(path).append('"');
+        this._xmlbook.append(" title=\"").append(XML.attribute(this._sheet.name())).append('"');
+        this._xmlbook.append("/>\n");
+        // Start new file for work sheet
+        this.writer = getWriterForXML(path);
+        this.xml = this.writer;
+        start(this.xml);
+        this.xml.append("<worksheet");
+        this.xml.append(" title=\"").append(XML.attribute(this._sheet.name())).append('"');
+        this.xml.append(" book-title=\"").append(XML.attribute(this._book.getTitle())).append('"');
+        this.xml.append(">\n");
+      }
+    }
+
+    /**
+     * @return where the XML of the worksheet goes, starting the worksheet if needed.
+     */
+    Appendable xml() throws IOException {
+      open();
+      return this.xml;
+    }
+
+    /**
+     * Ends the worksheet if it was started.
+     */
+    void finish() throws IOException {
+      if (this.xml != null) this.xml.append("</worksheet>\n");
+    }
+
+    /**
+     * Closes the writer of the worksheet document if any.
+     */
+    void close() {
+      if (this.writer != null)
+        try {
+          this.writer.close();
+        } catch (IOException ex) {
+          // oh well we tried
+        }
+    }
+  }
+
   /**
    * Processes the specified file.
    *
    * @author Christophe Lauret
    * @version 18 April 2012
    */
-  private class Processor extends DefaultHandler {
+  private class Processor extends DefaultHandler implements SheetScanner.Handler {
 
     /** The workbook. */
     private final WorkBook _book;
@@ -171,11 +276,8 @@ public final class Interim {
     /** The worksheet. */
     private final WorkSheet _sheet;
 
-    /** The shared strings. */
-    private final SharedStrings _shared;
-
-    /** the style.xml **/
-    private final Style _style;
+    /** Resolves the cell values. */
+    private final CellResolver _resolver;
 
     /** Split level */
     private final SplitLevel level;
@@ -183,6 +285,18 @@ public final class Interim {
     /** Column to use for the filename */
     private final int filenameIndex;
 
+    /** The column of the worksheet to use for the filename (A, B, C, ...) */
+    private String filenameColumn;
+
+    /** The value of the filename column in the current row, kept even when the column is not selected */
+    private String filename;
+
+    /** The letters, indexes or titles of the columns to include, empty for all columns */
+    private final List<String> _columns;
+
+    /** The columns to include (A, B, C, ...), <code>null</code> to include all columns */
+    private Set<String> projection;
+
     /** Buffer. */
     private StringBuilder buffer = new StringBuilder();
 
@@ -201,61 +315,67 @@ public final class Interim {
     /** <code>true</code> if reference to shared string. */
     private boolean isShared;
 
+    /** <code>true</code> if the value is a number. */
+    private boolean isNumber;
+
+    /** <code>true</code> if the value of the current cell is needed. */
+    private boolean accepted;
+
     /** <code>true</code> if the titles should been computed. */
     private boolean getTitles;
 
     /** Where the XML should go */
-    private Appendable _xml;
+    private final SheetOutput _output;
 
-    /** Where to store the rows */
-    private final File rows;
+    /** The position of the first row to include */
+    private final int startRow;
 
+    /** The maximum number of rows to include, -1 for no limit */
+    private final int maxRows;
+
+    /** The number of rows included so far */
+    private int count = 0;
     /**
      * Sole constructor.
      *
      * @param shared the shared strings to resolve the values.
      * @param config the configuration.
      */
-    public Processor(WorkBook book, WorkSheet sheet, SharedStrings shared, Style style, TransformConfig config, Appendable xml) {
+    public Processor(WorkBook book, WorkSheet sheet, SharedStrings shared, Style style, TransformConfig config, SheetOutput output) {
       this._book = book;
       this._sheet = sheet;
-      this._shared = shared;
-      this._style = style;
+      this._resolver = new CellResolver(shared, style, book.isDate1904(), config.isFormatNumbers(), config.isShortestNumbers());
       this.level = config.getSplitLevel();
       this.filenameIndex = config.getFilenameColumn() - 1;
-      this._xml = xml;
+      this._output = output;
+      this.startRow = config.getStartRow();
+      this.maxRows = config.getMaxRows();
       this.getTitles = config.hasHeaders();
-      if (config.getSplitLevel() == SplitLevel.row) {
-        this.rows = new File(Interim.this._output, this._sheet.name());
-        this.rows.mkdir();
-      } else {
-        this.rows = null;
-      }
+      this._columns = config.getColumns();
     }
 
     @Override
     public void startElement(String uri, String localName, String name, Attributes atts)
         throws SAXException {
       if (Namespaces.SPREADSHEETML.equals(uri)) {
-        if ("c".equals(name)) {
+        if ("c".equals(localName)) {
           // <c r="A1" s="1" t="s">
           this.col = Row.toColumn(atts.getValue("r"));
-          this.isShared = "s".equals(atts.getValue("t"));
+          final String type = atts.getValue("t");
+          this.isShared = "s".equals(type);
+          this.isNumber = type == null || "n".equals(type);
+          this.accepted = accepts(this.col);
           final String tempCellFormatID = atts.getValue("s");
           if (tempCellFormatID != null && !tempCellFormatID.isEmpty()) {
             this.cellFormatID = Integer.valueOf(tempCellFormatID);
           }
 
-        } else if ("v".equals(name)) {
-          this.record = true;
+        } else if ("v".equals(localName)) {
+          this.record = this.accepted;
 
-        } else if ("row".equals(name)) {
+        } else if ("row".equals(localName)) {
           // <row r="1" spans="1:6">
-          if (this.row == null) {
-            this.row = new Row(atts.getValue("spans"));
-          }
-          int position = Integer.parseInt(atts.getValue("r"));
-          this.row.setPosition(position);
+          startRow(Integer.parseInt(atts.getValue("r")), atts.getValue("spans"));
         }
       }
     }
@@ -269,119 +389,160 @@ public final class Interim {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
       if (Namespaces.SPREADSHEETML.equals(uri)) {
-        if ("c".equals(qName)) {
+        if ("c".equals(localName)) {
           this.col = null;
           this.isShared = false;
+          this.isNumber = false;
           this.cellFormatID = -1;
-        } else if ("v".equals(qName)) {
-          String value = this.buffer.toString();
-          if (this.isShared) {
-            value = this._shared.get(Integer.parseInt(value));
-          }
-
-          if (this.cellFormatID >= 0) {
-            CellFormat cellFormat = this._style.getCellFormat(this.cellFormatID);
-            boolean applyNumberFormat = cellFormat.isApplyNumberFormat();
-            //Validate if value it has only numbers and or one dot.
-            final boolean isValidNumber = value.matches("^[0-9]*[0-9]+[.]?[0-9]+[^\\W+\\w+]*");
-            if(applyNumberFormat && isValidNumber) {
-              int numFormatId = cellFormat.getNumberFormatId();
-              String numberFormatCode  = this._style.getNumberFormatCode(numFormatId);
-              final boolean isDate = Style.isDateFormat(numberFormatCode);
-              final boolean isTime = Style.isTimeFormat(numberFormatCode);
-
-              if(isDate || isTime) {
-                LocalDateTime localDateTime = calculateDateTime(value);
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                if (isDate && !isTime) {
-                  formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-                } else if (isTime && !isDate) {
-                  formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-                }
-                String formatDateTime = localDateTime.format(formatter);
-                //System.out.println(formatDateTime);
-                value = formatDateTime;
-              }
-            }
-          }
-
-          if (this.getTitles)
-            this.row.title(this.col, value);
-          else
-            this.row.value(this.col, value);
+          this.accepted = false;
+        } else if ("v".equals(localName)) {
+          if (this.accepted) cell(this.col, this.buffer.toString(), this.isShared, this.isNumber, this.cellFormatID);
           this.buffer.setLength(0);
           this.record = false;
-        } else if ("row".equals(qName)) {
-          try {
-            // Serialise the titles
-            if (this.getTitles) {
-              this.getTitles = false;
-              if (this.level != SplitLevel.row) {
-                this.row.toHeadXML(this._xml);
-              }
-            // Serialise the values
-            } else if (this.row.hasValue()) {
-              if (this.level != SplitLevel.row) {
-                // Inline by sheet / book
-                this.row.toXML(this._xml);
-
-              } else {
-                // In a new file for each row
-                String title = null;
-                String filename;
-                if (this.filenameIndex >= 0) {
-                  title = this.row.value(this.filenameIndex);
-                }
-                if (title == null) {
-                  NumberFormat nf = new DecimalFormat("0000");
-                  title = nf.format(this.row.getPosition());
-                }
-                filename = title.trim().replaceAll("\\W+", "_");
-                String path = this._sheet.name()+"/"+filename+".xml";
-                try (Writer xml = Interim.this.getWriterForXML(path)) {
-                  Interim.start(xml);
-                  this.row.toXML(xml, title, this._sheet.name(), this._book.getTitle());
-                } catch (IOException ex) {
-                  throw new XLSXException(ex);
-                }
-                // Reference in book / sheet
-                this._xml.append("  <row href=\"").append(path).append("\" title=\"").append(XML.attribute(title)).append("\"/>\n");
-              }
-            }
+        } else if ("row".equals(localName)) {
+          if (!endRow()) throw new Stop();
+        }
+      }
+    }
 
-          } catch (Exception ex) {
-            ex.printStackTrace();
-            // TODO: handle exception
+    @Override
+    public void startRow(int position, String spans) {
+      try {
+        this._output.open();
+      } catch (IOException ex) {
+        throw new XLSXException(ex);
+      }
+      if (this.row == null) {
+        this.row = new Row(spans);
+        if (this.filenameIndex >= 0 && this.filenameIndex < this.row.size()) {
+          this.filenameColumn = this.row.column(this.filenameIndex);
+        }
+        if (!this._columns.isEmpty()) {
+          this.projection = new HashSet<>();
+          // Titles are only known once the header row has been read
+          if (!this.getTitles) {
+            for (String column : this._columns) {
+              project(column);
+            }
+            this.row = this.row.select(this.projection);
           }
-          this.row.reset();
         }
       }
+      this.row.setPosition(position);
     }
 
-    //To calculate the second the precision is required to be 14. bigger number like 18 ou 20 will result in one second
-    // less
-    private final MathContext SECOND_MATH_CONTEXT = new MathContext(14, RoundingMode.HALF_UP);
-    private final LocalDateTime EXCEL_EPOCH_REFERENCE = LocalDateTime.MAX.of( 1899 , Month.DECEMBER , 31, 0,0,0 );
-    private final BigDecimal EXCEL_SECOND_VALUE = new BigDecimal(1).divide(new BigDecimal(24*60*60), SECOND_MATH_CONTEXT);
-
     /**
+     * Adds the column with the specified letter or 1-based index to the projection.
      *
-     * @param value
-     * @return
+     * @param column the letter or index of the column
      */
-    private LocalDateTime calculateDateTime(String value) {
-      BigDecimal countFromEpoch = new BigDecimal(value);
-      if (countFromEpoch.longValue() > 59) {
-        countFromEpoch = countFromEpoch.subtract(new BigDecimal(1));
+    private void project(String column) {
+      if (column.matches("[A-Z]{1,3}")) {
+        this.projection.add(column);
+      } else if (column.matches("[0-9]{1,5}")) {
+        int index = Integer.parseInt(column);
+        if (index > 0 && index <= SheetScanner.MAX_COLUMNS) this.projection.add(SheetScanner.toColumn(index));
       }
+    }
+
+    @Override
+    public boolean accepts(String col) {
+      // Titles are needed for all columns, values only for the selected columns in the range
+      if (this.getTitles) return true;
+      if (this.row.getPosition() < this.startRow) return false;
+      return this.projection == null || this.projection.contains(col) || isFilenameColumn(col);
+    }
 
-      //Get days
-      long days = countFromEpoch.longValue();  // Extract the number of whole days, dropping the fraction.
+    /**
+     * @param col the column (A, B, C, ...)
+     * @return <code>true</code> if the value of the column is used for the row filename
+     */
+    private boolean isFilenameColumn(String col) {
+      return this.level == SplitLevel.row && col.equals(this.filenameColumn);
+    }
 
-      //Get seconds
-      BigDecimal decimal = countFromEpoch.remainder(BigDecimal.ONE);
-      long seconds = decimal.divide(EXCEL_SECOND_VALUE, SECOND_MATH_CONTEXT).longValue();
-      return EXCEL_EPOCH_REFERENCE.plusDays(days).plusSeconds(seconds);
+    @Override
+    public void cell(String col, String value, boolean isShared, boolean isNumber, int cellFormatID) {
+      String resolved = this._resolver.resolve(value, isShared, isNumber, cellFormatID);
+      if (this.getTitles) {
+        this.row.title(col, resolved);
+        return;
+      }
+      if (isFilenameColumn(col)) this.filename = resolved;
+      // The filename column may not be part of the selected columns
+      if (this.row.index(col) < 0) return;
+      String markup = this._resolver.markup(value, isShared, resolved);
+      if (markup != null)
+        this.row.value(col, resolved, markup);
+      else
+        this.row.value(col, resolved);
+    }
+
+    @Override
+    public boolean endRow() {
+      if (!this.getTitles && this.row.getPosition() < this.startRow) {
+        this.row.reset();
+        this.filename = null;
+        return true;
+      }
+      boolean included = false;
+      try {
+        // Serialise the titles
+        if (this.getTitles) {
+          this.getTitles = false;
+          if (this.projection != null) {
+            // A title takes precedence over a column letter or index with the same text
+            for (String column : this._columns) {
+              boolean found = false;
+              for (int i = 0; i < this.row.size(); i++) {
+                if (column.equals(this.row.title(i))) {
+                  this.projection.add(this.row.column(i));
+                  found = true;
+                }
+              }
+              if (!found) project(column);
+            }
+            this.row = this.row.select(this.projection);
+          }
+          if (this.level != SplitLevel.row) {
+            this.row.toHeadXML(this._output.xml());
+          }
+        // Serialise the values
+        } else if (this.row.hasValue()) {
+          included = true;
+          if (this.level != SplitLevel.row) {
+            // Inline by sheet / book
+            this.row.toXML(this._output.xml());
+
+          } else {
+            // In a new file for each row
+            String title = this.filename;
+            String filename;
+            if (title == null) {
+              NumberFormat nf = new DecimalFormat("0000");
+              title = nf.format(this.row.getPosition());
+            }
+            filename = title.trim().replaceAll("\\W+", "_");
+            String path = this._sheet.name()+"/"+filename+".xml";
+            try (Writer xml = Interim.this.getWriterForXML(path)) {
+              Interim.start(xml);
+              this.row.toXML(xml, title, this._sheet.name(), this._book.getTitle());
+            } catch (IOException ex) {
+              throw new XLSXException(ex);
+            }
+            // Reference in book / sheet
+            this._output.xml().append("  <row href=\"").append(path).append("\" title=\"").append(XML.attribute(title)).append("\"/>\n");
+          }
+        }
+
+      } catch (Exception ex) {
+        ex.printStackTrace();
+        // TODO: handle exception
+      }
+      this.row.reset();
+      this.filename = null;
+      if (included) this.count++;
+      return this.maxRows < 0 || this.count < this.maxRows;
     }
 
   }
@@ -3,6 +3,7 @@ package org.pageseeder.xlsx.interim;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import org.pageseeder.xlsx.util.XML;
@@ -44,6 +45,11 @@ public final class Row {
    */
   private final String[] values;
 
+  /**
+   * The values already written as interim markup, <code>null</code> until needed.
+   */
+  private String[] markups;
+
   /**
    * Creates a new row for the specified columns.
    *
@@ -78,6 +84,37 @@ public final class Row {
     }
   }
 
+  /**
+   * Creates a new row for the specified columns and titles.
+   */
+  private Row(String[] columns, String[] titles) {
+    this.columns = columns;
+    this.titles = titles;
+    this.values = new String[columns.length];
+  }
+
+  /**
+   * Returns a row with only the specified columns.
+   *
+   * <p>The columns keep their order and titles.
+   *
+   * @param selected the columns to keep (A, B, C, ...)
+   * @return a new row with only the selected columns.
+   */
+  public Row select(Collection<String> selected) {
+    List<String> cols = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < this.columns.length; i++) {
+      if (selected.contains(this.columns[i])) {
+        cols.add(this.columns[i]);
+        names.add(this.titles[i]);
+      }
+    }
+    Row row = new Row(cols.toArray(new String[0]), names.toArray(new String[0]));
+    row.position = this.position;
+    return row;
+  }
+
   /**
    * @return the number of columns in the row.
    */
@@ -90,6 +127,7 @@ public final class Row {
    */
   public void reset() {
     Arrays.fill(this.values, null);
+    if (this.markups != null) Arrays.fill(this.markups, null);
   }
 
   /**
@@ -106,6 +144,16 @@ public final class Row {
     return this.position;
   }
 
+  /**
+   * Return the column identifier at the specified index.
+   *
+   * @param index The index of the column.
+   * @return the column identifier (A, B, C, ...)
+   */
+  public String column(int index) {
+    return this.columns[index];
+  }
+
   /**
    * Return the title at the specified column.
    *
@@ -146,6 +194,23 @@ public final class Row {
   public void value(String column, String value) {
     int i = index(column);
     this.values[i] = value;
+    if (this.markups != null) this.markups[i] = null;
+  }
+
+  /**
+   * Set the value of the specified column with its interim markup.
+   *
+   * <p>The markup is written as is in place of the value, it must be well-formed and escaped.
+   *
+   * @param column The column (A, B, C, ...)
+   * @param value  The value of the column
+   * @param markup The value of the column as interim markup
+   */
+  public void value(String column, String value, String markup) {
+    int i = index(column);
+    this.values[i] = value;
+    if (this.markups == null) this.markups = new String[this.values.length];
+    this.markups[i] = markup;
   }
 
   /**
@@ -205,7 +270,9 @@ public final class Row {
     xml.append("<row position=\"").append(Integer.toString(this.position)).append("\">\n");
     for (int i = 0; i < this.columns.length; i++) {
       xml.append("  <col ref=\"").append(this.columns[i]).append("\">");
-      if (this.values[i] != null)
+      if (this.markups != null && this.markups[i] != null)
+        xml.append(this.markups[i]);
+      else if (this.values[i] != null)
         xml.append(XML.text(this.values[i]));
       xml.append("</col>\n");
     }
@@ -240,7 +307,9 @@ public final class Row {
     xml.append(">\n");
     for (int i = 0; i < this.columns.length; i++) {
       xml.append("  <col title=\"").append(XML.attribute(this.titles[i])).append("\">");
-      if (this.values[i] != null)
+      if (this.markups != null && this.markups[i] != null)
+        xml.append(this.markups[i]);
+      else if (this.values[i] != null)
         xml.append(XML.text(this.values[i]));
       xml.append("</col>\n");
     }
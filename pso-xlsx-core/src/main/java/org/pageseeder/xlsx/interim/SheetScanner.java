@@ -0,0 +1,718 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.interim;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.pageseeder.xlsx.XLSXException;
+import org.pageseeder.xlsx.util.Namespaces;
+
+/**
+ * Scans the UTF-8 bytes of a worksheet part for its rows and cells.
+ *
+ * <p>Worksheets only use a handful of elements, so instead of decoding the whole part and
+ * reporting every element and attribute like a SAX parser, this scanner only looks at the
+ * <code>row</code>, <code>c</code> and <code>v</code> elements of the SpreadsheetML namespace
+ * and only decodes the values of cells.
+ *
+ * <p>The prolog and the root element are checked before scanning; if the part is not encoded in
+ * UTF-8, has a document type declaration or does not declare SpreadsheetML as the default
+ * namespace, the scanner is not supported and the part should be parsed with SAX using
+ * {@link #remaining()}.
+ */
+final class SheetScanner {
+
+  /**
+   * Receives the rows and cells found by the scanner.
+   */
+  interface Handler {
+
+    /**
+     * @param position The position of the row (1-based)
+     * @param spans    The spans of the row (1:6) or <code>null</code>
+     */
+    void startRow(int position, String spans);
+
+    /**
+     * Indicates whether the value of a cell is needed, values of other cells are not decoded.
+     *
+     * @param col The column of the cell (A, B, C, ...)
+     * @return <code>true</code> to receive the value of the cell.
+     */
+    boolean accepts(String col);
+
+    /**
+     * @param col          The column of the cell (A, B, C, ...)
+     * @param value        The content of the <code>v</code> element.
+     * @param isShared     Whether the value is the index of a shared string.
+     * @param isNumber     Whether the value is a number.
+     * @param cellFormatID The index of the cell format or -1.
+     */
+    void cell(String col, String value, boolean isShared, boolean isNumber, int cellFormatID);
+
+    /**
+     * Called at the end of each row.
+     *
+     * @return <code>false</code> to stop reading the worksheet.
+     */
+    boolean endRow();
+  }
+
+  /**
+   * The size of the buffer, the prolog and root element must fit in it.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The maximum number of columns in a worksheet (XFD).
+   */
+  static final int MAX_COLUMNS = 16384;
+
+  private static final byte[] ROW = "row".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] C = "c".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] V = "v".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] R = "r".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] S = "s".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] T = "t".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] SPANS = "spans".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] XMLNS = "xmlns".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] SPREADSHEETML = Namespaces.SPREADSHEETML.getBytes(StandardCharsets.US_ASCII);
+
+  private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+  private static final Pattern ATTRIBUTE = Pattern.compile("([^\\s=]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+  /**
+   * The column names by column number (1-based).
+   */
+  private static final String[] COLUMNS = new String[MAX_COLUMNS + 1];
+
+  /**
+   * The part content.
+   */
+  private final InputStream _in;
+
+  /**
+   * The buffer of bytes read from the input.
+   */
+  private final byte[] buf = new byte[BUFFER_SIZE];
+
+  /** The position of the next byte in the buffer */
+  private int pos = 0;
+
+  /** The number of bytes in the buffer */
+  private int limit = 0;
+
+  /** Whether the part can be scanned */
+  private final boolean supported;
+
+  /** Whether the root element is empty */
+  private boolean empty = false;
+
+  /** The name of the current element */
+  private byte[] name = new byte[32];
+  private int nameLength;
+
+  /** The name of the current attribute */
+  private byte[] attName = new byte[32];
+  private int attNameLength;
+
+  /** The value of the current attribute */
+  private byte[] attValue = new byte[128];
+  private int attValueLength;
+
+  /** The text of the current value */
+  private byte[] text = new byte[256];
+  private int textLength;
+
+  /** Whether the text of the current value is not needed */
+  private boolean skipping = false;
+
+  /** The depth of the current element */
+  private int depth = 0;
+
+  /** The depth of the element which changed the default namespace, 0 in SpreadsheetML */
+  private int foreign = 0;
+
+  /**
+   * Creates a new scanner and checks the prolog of the part.
+   *
+   * @param in The content of the worksheet part.
+   *
+   * @throws IOException If thrown while reading the prolog.
+   */
+  SheetScanner(InputStream in) throws IOException {
+    this._in = in;
+    this.supported = prolog();
+  }
+
+  /**
+   * @return <code>true</code> if the part can be scanned; <code>false</code> if it should be parsed with SAX.
+   */
+  boolean isSupported() {
+    return this.supported;
+  }
+
+  /**
+   * @return the full content of the part including the bytes read to check the prolog.
+   */
+  InputStream remaining() {
+    return new SequenceInputStream(new ByteArrayInputStream(this.buf, 0, this.limit), this._in);
+  }
+
+  /**
+   * Scans the rows of the worksheet.
+   *
+   * <p>Scanning stops at the end of the worksheet or when the handler returns <code>false</code>
+   * at the end of a row; the rest of the part is not read.
+   *
+   * @param handler Receives the rows and cells.
+   *
+   * @throws IOException   If thrown while reading the part.
+   * @throws XLSXException If the part is not well-formed.
+   */
+  void scan(Handler handler) throws IOException {
+    if (!this.supported) throw new IllegalStateException("Worksheet must be parsed with SAX");
+    if (this.empty) return;
+    this.depth = 1;
+    String col = null;
+    int column = 0;
+    boolean isShared = false;
+    boolean isNumber = false;
+    int cellFormatID = -1;
+    boolean accepted = false;
+    int position = 0;
+    int b;
+    while ((b = read()) != -1) {
+      if (b != '<') continue;
+      b = next();
+      if (b == '/') {
+        // End tag
+        readName(next());
+        skipTo('>');
+        boolean spreadsheet = this.foreign == 0;
+        if (this.depth == this.foreign) this.foreign = 0;
+        this.depth--;
+        if (spreadsheet && is(ROW)) {
+          if (!handler.endRow()) return;
+          column = 0;
+        }
+        if (this.depth == 0) return;
+
+      } else if (b == '?') {
+        skipPast('?', '>');
+
+      } else if (b == '!') {
+        skipMarkup();
+
+      } else {
+        // Start tag
+        readName(b);
+        boolean spreadsheet = this.foreign == 0;
+        if (spreadsheet && is(C)) {
+          // <c r="A1" s="1" t="s">
+          col = null;
+          isShared = false;
+          isNumber = true;
+          cellFormatID = -1;
+          while (readAttribute()) {
+            if (isAttribute(R)) {
+              column = toColumnNumber();
+              col = column > 0 ? toColumn(column) : null;
+            } else if (isAttribute(S)) {
+              cellFormatID = this.attValueLength > 0 ? toInt() : -1;
+            } else if (isAttribute(T)) {
+              isShared = this.attValueLength == 1 && this.attValue[0] == 's';
+              isNumber = this.attValueLength == 1 && this.attValue[0] == 'n';
+            }
+          }
+          if (col == null) {
+            // Cells without a reference follow the previous cell
+            if (column >= MAX_COLUMNS) throw new XLSXException("Too many cells in row "+position);
+            col = toColumn(++column);
+          }
+          accepted = handler.accepts(col);
+          endStartTag();
+
+        } else if (spreadsheet && is(V)) {
+          skipAttributes();
+          this.skipping = !accepted;
+          if (endStartTag()) {
+            readText();
+          } else {
+            this.textLength = 0;
+          }
+          this.skipping = false;
+          if (accepted) handler.cell(col, new String(this.text, 0, this.textLength, StandardCharsets.UTF_8), isShared, isNumber, cellFormatID);
+
+        } else if (spreadsheet && is(ROW)) {
+          // <row r="1" spans="1:6">
+          String spans = null;
+          int r = -1;
+          while (readAttribute()) {
+            if (isAttribute(R)) {
+              r = toInt();
+            } else if (isAttribute(SPANS)) {
+              spans = new String(this.attValue, 0, this.attValueLength, StandardCharsets.US_ASCII);
+            }
+          }
+          position = r > 0 ? r : position + 1;
+          column = 0;
+          handler.startRow(position, spans);
+          if (!endStartTag() && !handler.endRow()) return;
+
+        } else {
+          boolean other = false;
+          while (readAttribute()) {
+            if (isAttribute(XMLNS) && !isValue(SPREADSHEETML)) {
+              other = true;
+            }
+          }
+          if (endStartTag() && other && this.foreign == 0) {
+            this.foreign = this.depth;
+          }
+        }
+      }
+    }
+    if (this.depth > 0) throw new XLSXException("Unexpected end of worksheet");
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Checks the prolog and root element, leaving the position after the root start tag.
+   *
+   * @return <code>true</code> if the part can be scanned.
+   */
+  private boolean prolog() throws IOException {
+    int end = -1;
+    while (end < 0) {
+      if (this.limit == this.buf.length) return false;
+      int n = this._in.read(this.buf, this.limit, this.buf.length - this.limit);
+      if (n < 0) return false;
+      this.limit += n;
+      end = rootEnd();
+      if (end == -2) return false;
+    }
+    this.pos = end;
+    return true;
+  }
+
+  /**
+   * Looks for the end of the root start tag in the buffer.
+   *
+   * @return the position after the root start tag, -1 if more bytes are needed or -2 if not supported.
+   */
+  private int rootEnd() {
+    String s = new String(this.buf, 0, this.limit, StandardCharsets.ISO_8859_1);
+    int i = 0;
+    if (s.startsWith("\u00EF\u00BB\u00BF")) {
+      i = 3;
+    } else if (s.length() > 0 && s.charAt(0) != '<' && !Character.isWhitespace(s.charAt(0))) {
+      // UTF-16 or other encoding
+      return -2;
+    }
+    while (true) {
+      while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+      if (i >= s.length()) return -1;
+      if (s.charAt(i) != '<') return -2;
+      if (s.startsWith("<?", i)) {
+        int end = s.indexOf("?>", i);
+        if (end < 0) return -1;
+        if (s.startsWith("<?xml ", i)) {
+          Matcher m = ENCODING.matcher(s.substring(i, end));
+          if (m.find() && !"UTF-8".equals(m.group(1).toUpperCase(Locale.ROOT))) return -2;
+        }
+        i = end + 2;
+      } else if (s.startsWith("<!--", i)) {
+        int end = s.indexOf("-->", i);
+        if (end < 0) return -1;
+        i = end + 3;
+      } else if (s.startsWith("<!", i)) {
+        // Document type declaration
+        return -2;
+      } else {
+        // Root element
+        int end = i;
+        char quote = 0;
+        while (end < s.length()) {
+          char c = s.charAt(end);
+          if (quote != 0) {
+            if (c == quote) quote = 0;
+          } else if (c == '"' || c == '\'') {
+            quote = c;
+          } else if (c == '>') {
+            break;
+          }
+          end++;
+        }
+        if (end >= s.length()) return -1;
+        String tag = s.substring(i + 1, end);
+        this.empty = tag.endsWith("/");
+        if (!tag.startsWith("worksheet") || tag.length() == 9
+            || !(Character.isWhitespace(tag.charAt(9)) || tag.charAt(9) == '/')) return -2;
+        boolean spreadsheet = false;
+        Matcher m = ATTRIBUTE.matcher(tag.substring(9));
+        while (m.find()) {
+          String att = m.group(1);
+          String value = m.group(2) != null ? m.group(2) : m.group(3);
+          if ("xmlns".equals(att)) {
+            spreadsheet = Namespaces.SPREADSHEETML.equals(value);
+          } else if (att.startsWith("xmlns:") && Namespaces.SPREADSHEETML.equals(value)) {
+            // Elements may use a prefix
+            return -2;
+          }
+        }
+        return spreadsheet ? end + 1 : -2;
+      }
+    }
+  }
+
+  /**
+   * @return the next byte or -1 at the end of the stream.
+   */
+  private int read() throws IOException {
+    if (this.pos == this.limit) {
+      this.limit = this._in.read(this.buf, 0, this.buf.length);
+      this.pos = 0;
+      if (this.limit <= 0) {
+        this.limit = 0;
+        return -1;
+      }
+    }
+    return this.buf[this.pos++] & 0xFF;
+  }
+
+  /**
+   * @return the next byte.
+   * @throws XLSXException at the end of the stream.
+   */
+  private int next() throws IOException {
+    int b = read();
+    if (b == -1) throw new XLSXException("Unexpected end of worksheet");
+    return b;
+  }
+
+  /**
+   * @return the next byte which is not white space.
+   */
+  private int nextNonSpace() throws IOException {
+    int b = next();
+    while (isSpace(b)) b = next();
+    return b;
+  }
+
+  /**
+   * Reads an element name starting with the specified byte, the following byte is kept.
+   */
+  private void readName(int b) throws IOException {
+    this.nameLength = 0;
+    while (!isSpace(b) && b != '>' && b != '/') {
+      if (this.nameLength == this.name.length) this.name = Arrays.copyOf(this.name, this.nameLength * 2);
+      this.name[this.nameLength++] = (byte)b;
+      b = next();
+    }
+    this.pos--;
+  }
+
+  /**
+   * Reads the next attribute of a start tag.
+   *
+   * @return <code>false</code> if there are no more attributes.
+   */
+  private boolean readAttribute() throws IOException {
+    int b = nextNonSpace();
+    if (b == '>' || b == '/') {
+      this.pos--;
+      return false;
+    }
+    this.attNameLength = 0;
+    while (b != '=' && !isSpace(b)) {
+      if (this.attNameLength == this.attName.length) this.attName = Arrays.copyOf(this.attName, this.attNameLength * 2);
+      this.attName[this.attNameLength++] = (byte)b;
+      b = next();
+    }
+    if (isSpace(b)) b = nextNonSpace();
+    if (b != '=') throw new XLSXException("Malformed attribute in worksheet");
+    int quote = nextNonSpace();
+    if (quote != '"' && quote != '\'') throw new XLSXException("Malformed attribute in worksheet");
+    this.attValueLength = 0;
+    b = next();
+    while (b != quote) {
+      if (this.attValueLength == this.attValue.length) this.attValue = Arrays.copyOf(this.attValue, this.attValueLength * 2);
+      this.attValue[this.attValueLength++] = (byte)b;
+      b = next();
+    }
+    return true;
+  }
+
+  /**
+   * Skips the attributes of a start tag.
+   */
+  private void skipAttributes() throws IOException {
+    while (readAttribute()) {
+      // ignore
+    }
+  }
+
+  /**
+   * Reads the end of a start tag.
+   *
+   * @return <code>true</code> if the element has content; <code>false</code> if it is empty.
+   */
+  private boolean endStartTag() throws IOException {
+    int b = next();
+    if (b == '/') {
+      if (next() != '>') throw new XLSXException("Malformed element in worksheet");
+      return false;
+    }
+    this.depth++;
+    return true;
+  }
+
+  /**
+   * Reads the text of a <code>v</code> element including its end tag.
+   */
+  private void readText() throws IOException {
+    this.textLength = 0;
+    while (true) {
+      int b = next();
+      if (b == '<') {
+        b = next();
+        if (b == '/') {
+          readName(next());
+          skipTo('>');
+          this.depth--;
+          return;
+        } else if (b == '!') {
+          if (!readCData()) skipMarkup();
+        } else if (b == '?') {
+          skipPast('?', '>');
+        } else {
+          throw new XLSXException("Unexpected element in cell value");
+        }
+      } else if (b == '&') {
+        readReference();
+      } else if (b == '\r') {
+        // Line ends are normalized
+        append('\n');
+        if (next() != '\n') this.pos--;
+      } else {
+        append(b);
+      }
+    }
+  }
+
+  /**
+   * Reads a CDATA section if the markup after '&lt;!' is one.
+   *
+   * @return <code>true</code> if a CDATA section was read.
+   */
+  private boolean readCData() throws IOException {
+    int b = next();
+    if (b != '[') {
+      this.pos--;
+      return false;
+    }
+    for (char c : "CDATA[".toCharArray()) {
+      if (next() != c) throw new XLSXException("Malformed CDATA section in worksheet");
+    }
+    while (true) {
+      b = next();
+      if (b == ']') {
+        int brackets = 1;
+        while ((b = next()) == ']') brackets++;
+        if (b == '>' && brackets >= 2) {
+          for (int i = 0; i < brackets - 2; i++) append(']');
+          return true;
+        }
+        for (int i = 0; i < brackets; i++) append(']');
+        this.pos--;
+      } else {
+        append(b);
+      }
+    }
+  }
+
+  /**
+   * Reads a character or predefined entity reference after '&amp;'.
+   */
+  private void readReference() throws IOException {
+    StringBuilder ref = new StringBuilder();
+    int b = next();
+    while (b != ';') {
+      if (ref.length() > 10) throw new XLSXException("Malformed reference in worksheet");
+      ref.append((char)b);
+      b = next();
+    }
+    String r = ref.toString();
+    switch (r) {
+      case "amp":  append('&'); break;
+      case "lt":   append('<'); break;
+      case "gt":   append('>'); break;
+      case "quot": append('"'); break;
+      case "apos": append('\''); break;
+      default:
+        if (!r.startsWith("#")) throw new XLSXException("Undefined entity "+r+" in worksheet");
+        int codePoint;
+        try {
+          codePoint = r.startsWith("#x") ? Integer.parseInt(r.substring(2), 16) : Integer.parseInt(r.substring(1));
+        } catch (NumberFormatException ex) {
+          throw new XLSXException("Malformed character reference in worksheet");
+        }
+        if (!Character.isValidCodePoint(codePoint))
+          throw new XLSXException("Malformed character reference in worksheet");
+        byte[] bytes = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+        for (byte c : bytes) append(c & 0xFF);
+    }
+  }
+
+  /**
+   * Skips a comment, CDATA section or declaration after '&lt;!'.
+   */
+  private void skipMarkup() throws IOException {
+    int b = next();
+    if (b == '-') {
+      if (next() != '-') throw new XLSXException("Malformed comment in worksheet");
+      // Look for "-->"
+      int dashes = 0;
+      while (true) {
+        b = next();
+        if (b == '>' && dashes >= 2) return;
+        dashes = b == '-' ? dashes + 1 : 0;
+      }
+    } else if (b == '[') {
+      // CDATA section outside a value, look for "]]>"
+      int brackets = 0;
+      while (true) {
+        b = next();
+        if (b == '>' && brackets >= 2) return;
+        brackets = b == ']' ? brackets + 1 : 0;
+      }
+    } else {
+      throw new XLSXException("Unexpected declaration in worksheet");
+    }
+  }
+
+  /**
+   * Skips up to and including the specified byte.
+   */
+  private void skipTo(int c) throws IOException {
+    while (next() != c) {
+      // skip
+    }
+  }
+
+  /**
+   * Skips up to and including the specified sequence of two bytes.
+   */
+  private void skipPast(int c1, int c2) throws IOException {
+    int previous = 0;
+    int b;
+    while (!((b = next()) == c2 && previous == c1)) {
+      previous = b;
+    }
+  }
+
+  private void append(int b) {
+    if (this.skipping) return;
+    if (this.textLength == this.text.length) this.text = Arrays.copyOf(this.text, this.textLength * 2);
+    this.text[this.textLength++] = (byte)b;
+  }
+
+  /**
+   * @return whether the current element has the specified name.
+   */
+  private boolean is(byte[] expected) {
+    return equals(this.name, this.nameLength, expected);
+  }
+
+  /**
+   * @return whether the current attribute has the specified name.
+   */
+  private boolean isAttribute(byte[] expected) {
+    return equals(this.attName, this.attNameLength, expected);
+  }
+
+  /**
+   * @return whether the current attribute has the specified value.
+   */
+  private boolean isValue(byte[] expected) {
+    return equals(this.attValue, this.attValueLength, expected);
+  }
+
+  /**
+   * @return the value of the current attribute as a positive integer.
+   */
+  private int toInt() {
+    int value = 0;
+    for (int i = 0; i < this.attValueLength; i++) {
+      int digit = this.attValue[i] - '0';
+      if (digit < 0 || digit > 9) throw new XLSXException("Invalid number in worksheet");
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * @return the column number (1-based) of the cell reference in the current attribute or 0.
+   */
+  private int toColumnNumber() {
+    int column = 0;
+    for (int i = 0; i < this.attValueLength; i++) {
+      int letter = this.attValue[i] - 'A';
+      if (letter < 0 || letter > 25) break;
+      column = column * 26 + letter + 1;
+    }
+    return column <= MAX_COLUMNS ? column : 0;
+  }
+
+  /**
+   * @return the name of the column (1-based).
+   */
+  static String toColumn(int column) {
+    String name = COLUMNS[column];
+    if (name == null) {
+      StringBuilder s = new StringBuilder(3);
+      for (int n = column; n > 0; n = (n - 1) / 26) {
+        s.insert(0, (char)('A' + (n - 1) % 26));
+      }
+      name = s.toString();
+      COLUMNS[column] = name;
+    }
+    return name;
+  }
+
+  private static boolean equals(byte[] bytes, int length, byte[] expected) {
+    if (length != expected.length) return false;
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] != expected[i]) return false;
+    }
+    return true;
+  }
+
+  private static boolean isSpace(int b) {
+    return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.interim;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.pageseeder.xlsx.XLSXException;
+import org.pageseeder.xlsx.core.Style;
+import org.pageseeder.xlsx.util.Namespaces;
+import org.pageseeder.xlsx.util.SharedStrings;
+
+/**
+ * Reads the rows of a worksheet on demand.
+ *
+ * <p>Unlike the SAX processor which pushes every row of the sheet, the rows are pulled one at a
+ * time so that the caller can stop reading as soon as it has the rows it needs. Cell values are
+ * resolved in the same way as the interim data.
+ *
+ * <pre>{@code
+ * try (WorksheetReader reader = new WorksheetReader(in, shared, style, book.isDate1904())) {
+ *   for (Row row = reader.next(); row != null; row = reader.next()) {
+ *     ...
+ *   }
+ * }
+ * }</pre>
+ */
+public final class WorksheetReader implements Closeable {
+
+  /**
+   * The factory for the stream readers, DTDs and external entities are never loaded.
+   */
+  private static final XMLInputFactory FACTORY = newFactory();
+
+  /**
+   * The XML stream of the worksheet part.
+   */
+  private final XMLStreamReader _reader;
+
+  /**
+   * Resolves the cell values.
+   */
+  private final CellResolver _resolver;
+
+  /**
+   * The spans of the last row which declared them.
+   */
+  private String spans = null;
+
+  /**
+   * Whether the end of the sheet was reached.
+   */
+  private boolean done = false;
+
+  /**
+   * Creates a new reader for the content of a worksheet part.
+   *
+   * <p>The input stream is not closed by this reader.
+   *
+   * @param in       The content of the worksheet part.
+   * @param shared   The shared strings to resolve cell values.
+   * @param style    The styles to format cell values.
+   * @param date1904 Whether the workbook uses the 1904 date system.
+   *
+   * @throws XLSXException if the stream reader could not be created.
+   */
+  public WorksheetReader(InputStream in, SharedStrings shared, Style style, boolean date1904) {
+    try {
+      this._reader = FACTORY.createXMLStreamReader(in);
+    } catch (XMLStreamException ex) {
+      throw new XLSXException("Unable to read worksheet", ex);
+    }
+    this._resolver = new CellResolver(shared, style, date1904);
+  }
+
+  /**
+   * Returns the next row of the worksheet.
+   *
+   * <p>A new row is returned for each call; its columns are the spans of the row, or the spans
+   * of the previous row when they are not specified.
+   *
+   * @return the next row or <code>null</code> if there are no more rows.
+   *
+   * @throws XLSXException if the worksheet could not be parsed.
+   */
+  public Row next() {
+    if (this.done) return null;
+    try {
+      XMLStreamReader xml = this._reader;
+      while (xml.hasNext()) {
+        int event = xml.next();
+        if (event == XMLStreamConstants.START_ELEMENT
+            && "row".equals(xml.getLocalName()) && Namespaces.SPREADSHEETML.equals(xml.getNamespaceURI())) {
+          return readRow(xml);
+        }
+      }
+      this.done = true;
+      return null;
+    } catch (XMLStreamException ex) {
+      throw new XLSXException("Unable to parse worksheet", ex);
+    }
+  }
+
+  /**
+   * Closes the stream reader, the underlying input stream is left open.
+   */
+  @Override
+  public void close() {
+    this.done = true;
+    try {
+      this._reader.close();
+    } catch (XMLStreamException ex) {
+      // oh well we tried
+    }
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Reads the row at the current <code>row</code> element up to its end.
+   */
+  private Row readRow(XMLStreamReader xml) throws XMLStreamException {
+    // <row r="1" spans="1:6">
+    String rowSpans = xml.getAttributeValue(null, "spans");
+    if (rowSpans != null) this.spans = rowSpans;
+    String r = xml.getAttributeValue(null, "r");
+    List<String> columns = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    String col = null;
+    int column = 0;
+    boolean isShared = false;
+    boolean isNumber = false;
+    int cellFormatID = -1;
+    int depth = 1;
+    while (depth > 0) {
+      int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        if (!Namespaces.SPREADSHEETML.equals(xml.getNamespaceURI())) continue;
+        String name = xml.getLocalName();
+        if ("c".equals(name)) {
+          // <c r="A1" s="1" t="s">, without a reference the cell follows the previous one
+          String ref = xml.getAttributeValue(null, "r");
+          column = ref != null ? toColumnNumber(ref) : column + 1;
+          col = column > 0 ? toColumn(column) : null;
+          String type = xml.getAttributeValue(null, "t");
+          isShared = "s".equals(type);
+          isNumber = type == null || "n".equals(type);
+          String s = xml.getAttributeValue(null, "s");
+          cellFormatID = s != null && !s.isEmpty() ? Integer.parseInt(s) : -1;
+        } else if ("v".equals(name)) {
+          String value = xml.getElementText();
+          depth--;
+          if (col != null) {
+            columns.add(col);
+            values.add(this._resolver.resolve(value, isShared, isNumber, cellFormatID));
+          }
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    Row row = new Row(this.spans != null ? Row.toColumns(this.spans) : columns);
+    if (r != null) row.setPosition(Integer.parseInt(r));
+    for (int i = 0; i < columns.size(); i++) {
+      if (row.index(columns.get(i)) >= 0) row.value(columns.get(i), values.get(i));
+    }
+    return row;
+  }
+
+  /**
+   * @param ref the reference of a cell (A1, B1, ...)
+   * @return the number of the column (1-based) or 0 if the reference does not start with a column.
+   */
+  private static int toColumnNumber(String ref) {
+    int column = 0;
+    for (int i = 0; i < ref.length(); i++) {
+      int letter = ref.charAt(i) - 'A';
+      if (letter < 0 || letter > 25) break;
+      column = column * 26 + letter + 1;
+    }
+    return column;
+  }
+
+  /**
+   * @param column the number of the column (1-based)
+   * @return the name of the column (A, B, C, ...)
+   */
+  private static String toColumn(int column) {
+    StringBuilder name = new StringBuilder(3);
+    for (int n = column; n > 0; n = (n - 1) / 26) {
+      name.insert(0, (char)('A' + (n - 1) % 26));
+    }
+    return name.toString();
+  }
+
+  /**
+   * @return a new factory for secure stream readers.
+   */
+  private static XMLInputFactory newFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return factory;
+  }
+
+}
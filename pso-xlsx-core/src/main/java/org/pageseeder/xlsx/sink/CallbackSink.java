@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.sink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes each document to a callback once it is complete.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * OutputSink sink = new CallbackSink((path, content) -> upload(path, content));
+ * }</pre>
+ */
+public final class CallbackSink implements OutputSink {
+
+  /**
+   * Receives the documents.
+   */
+  @FunctionalInterface
+  public interface Callback {
+
+    /**
+     * Called when a document is complete.
+     *
+     * @param path    the path of the document
+     * @param content the content of the document
+     *
+     * @throws IOException if the document cannot be handled.
+     */
+    void document(String path, byte[] content) throws IOException;
+
+  }
+
+  /**
+   * The callback for each document.
+   */
+  private final Callback _callback;
+
+  /**
+   * @param callback The callback for each document.
+   */
+  public CallbackSink(Callback callback) {
+    this._callback = callback;
+  }
+
+  @Override
+  public OutputStream newDocument(String path) {
+    return new ByteArrayOutputStream(BUFFER_SIZE) {
+
+      private boolean closed = false;
+
+      @Override
+      public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        CallbackSink.this._callback.document(path, toByteArray());
+      }
+    };
+  }
+
+}
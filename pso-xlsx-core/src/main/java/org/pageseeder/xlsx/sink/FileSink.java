@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.sink;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each document to a file in a folder.
+ *
+ * <p>Sub-folders are created as needed.
+ */
+public final class FileSink implements OutputSink {
+
+  /**
+   * The folder to write the documents to.
+   */
+  private final File _folder;
+
+  /**
+   * @param folder The folder to write the documents to.
+   */
+  public FileSink(File folder) {
+    this._folder = folder;
+  }
+
+  /**
+   * @return the folder the documents are written to.
+   */
+  public File getFolder() {
+    return this._folder;
+  }
+
+  @Override
+  public OutputStream newDocument(String path) throws IOException {
+    File file = new File(this._folder, path);
+    File parent = file.getParentFile();
+    if (!parent.exists() && !parent.mkdirs())
+      throw new IOException("Unable to create folder "+parent.getName());
+    return new FileOutputStream(file);
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.sink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the documents in memory, mapped to their path in the order they were completed.
+ */
+public final class MemorySink implements OutputSink {
+
+  /**
+   * The completed documents.
+   */
+  private final Map<String, byte[]> _documents = Collections.synchronizedMap(new LinkedHashMap<>());
+
+  @Override
+  public OutputStream newDocument(String path) {
+    return new ByteArrayOutputStream(BUFFER_SIZE) {
+      @Override
+      public void close() {
+        MemorySink.this._documents.put(path, toByteArray());
+      }
+    };
+  }
+
+  /**
+   * @param path the path of the document
+   * @return the content of the document or <code>null</code> if there is no such document.
+   */
+  public byte[] get(String path) {
+    return this._documents.get(path);
+  }
+
+  /**
+   * @return the documents mapped to their path (read only).
+   */
+  public Map<String, byte[]> documents() {
+    return Collections.unmodifiableMap(this._documents);
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A destination for the generated documents.
+ *
+ * <p>Documents are identified by a relative path using '/' as a separator, for example
+ * <code>workbook.xml</code> or <code>Sheet1/0001.xml</code>.
+ *
+ * <p>Implementations only need to provide the raw stream for each document with
+ * {@link #newDocument(String)}; callers should use {@link #stream(String)} or
+ * {@link #writer(String)} which add the buffering.
+ */
+public interface OutputSink extends Closeable {
+
+  /**
+   * The size of the buffer for each document.
+   */
+  int BUFFER_SIZE = 8192;
+
+  /**
+   * Creates a new document.
+   *
+   * <p>The document is complete when the returned stream is closed.
+   *
+   * @param path the path of the document
+   * @return the stream to write the content of the document to.
+   *
+   * @throws IOException if the document cannot be created.
+   */
+  OutputStream newDocument(String path) throws IOException;
+
+  /**
+   * Creates a new document and returns a buffered stream to write to it.
+   *
+   * @param path the path of the document
+   * @return the buffered stream to write the content of the document to.
+   *
+   * @throws IOException if the document cannot be created.
+   */
+  default OutputStream stream(String path) throws IOException {
+    return new BufferedOutputStream(newDocument(path), BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new document and returns a buffered writer to write to it as UTF-8.
+   *
+   * @param path the path of the document
+   * @return the buffered writer to write the content of the document to.
+   *
+   * @throws IOException if the document cannot be created.
+   */
+  default Writer writer(String path) throws IOException {
+    return new OutputStreamWriter(stream(path), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Completes the output, by default nothing needs to be done.
+   *
+   * @throws IOException if the output cannot be completed.
+   */
+  @Override
+  default void close() throws IOException {
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.sink;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the interim documents until they are transformed.
+ *
+ * <p>Documents are kept in memory up to a ceiling; once the ceiling is reached, documents are
+ * written to files in the spill folder instead. A document which does not fit in the memory left
+ * is moved to a file as it is being written.
+ */
+public final class WorkingArea implements OutputSink {
+
+  /**
+   * The default maximum number of bytes held in memory (64MB).
+   */
+  public static final long DEFAULT_MEMORY_CEILING = 64 * 1024 * 1024;
+
+  /**
+   * The folder for documents which do not fit in memory.
+   */
+  private final File _spill;
+
+  /**
+   * The maximum number of bytes held in memory.
+   */
+  private final long _ceiling;
+
+  /**
+   * The completed documents mapped to their path in the order they were completed.
+   */
+  private final Map<String, Document> _documents = new LinkedHashMap<>();
+
+  /**
+   * The number of bytes held in memory including the documents being written.
+   */
+  private long memory = 0;
+
+  /**
+   * @param spill   The folder for documents which do not fit in memory.
+   * @param ceiling The maximum number of bytes to hold in memory, 0 to write all documents to files.
+   */
+  public WorkingArea(File spill, long ceiling) {
+    this._spill = spill;
+    this._ceiling = ceiling;
+  }
+
+  /**
+   * Returns a working area for documents which have already been written to a folder.
+   *
+   * <p>The XML files in the folder and its sub-folders (one level deep) are included.
+   *
+   * @param folder The folder containing the documents.
+   * @param filter The filter for the XML files.
+   * @return the corresponding working area.
+   */
+  public static WorkingArea scan(File folder, FileFilter filter) {
+    WorkingArea area = new WorkingArea(folder, 0);
+    File[] files = folder.listFiles(filter);
+    if (files != null) {
+      for (File f : files) {
+        area._documents.put(f.getName(), new Document(f));
+      }
+    }
+    File[] folders = folder.listFiles(File::isDirectory);
+    if (folders != null) {
+      for (File dir : folders) {
+        File[] children = dir.listFiles(filter);
+        if (children == null) continue;
+        for (File f : children) {
+          area._documents.put(dir.getName()+"/"+f.getName(), new Document(f));
+        }
+      }
+    }
+    return area;
+  }
+
+  @Override
+  public OutputStream newDocument(String path) {
+    return new Spillable(path);
+  }
+
+  /**
+   * Returns the paths of the completed documents.
+   *
+   * <p>The documents at the top level come first, then the other documents in the order
+   * they were completed.
+   *
+   * @return the paths of the documents.
+   */
+  public synchronized List<String> paths() {
+    List<String> top = new ArrayList<>();
+    List<String> nested = new ArrayList<>();
+    for (String path : this._documents.keySet()) {
+      (path.indexOf('/') < 0 ? top : nested).add(path);
+    }
+    top.addAll(nested);
+    return top;
+  }
+
+  /**
+   * Opens a completed document for reading.
+   *
+   * @param path the path of the document
+   * @return its content.
+   *
+   * @throws IOException if the document does not exist or was released.
+   */
+  public synchronized InputStream open(String path) throws IOException {
+    Document document = this._documents.get(path);
+    if (document == null || document.released())
+      throw new FileNotFoundException("No document "+path+" in working area");
+    if (document.data != null) return new ByteArrayInputStream(document.data);
+    return new BufferedInputStream(new FileInputStream(document.file), BUFFER_SIZE);
+  }
+
+  /**
+   * Returns the URI to use as the system ID of a document.
+   *
+   * <p>Documents held in memory use the URI they would have in the spill folder.
+   *
+   * @param path the path of the document
+   * @return the URI of the document.
+   */
+  public String systemId(String path) {
+    return new File(this._spill, path).toURI().toString();
+  }
+
+  /**
+   * Releases the memory used by a document once it is no longer needed.
+   *
+   * <p>Documents written to files are left in the spill folder.
+   *
+   * @param path the path of the document
+   */
+  public synchronized void release(String path) {
+    Document document = this._documents.get(path);
+    if (document != null && document.data != null) {
+      this.memory -= document.data.length;
+      document.data = null;
+    }
+  }
+
+  /**
+   * @return the number of bytes currently held in memory.
+   */
+  public synchronized long memory() {
+    return this.memory;
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Reserves memory for a document being written.
+   *
+   * @return <code>true</code> if the memory was reserved.
+   */
+  private synchronized boolean reserve(long size) {
+    if (this.memory + size > this._ceiling) return false;
+    this.memory += size;
+    return true;
+  }
+
+  private synchronized void free(long size) {
+    this.memory -= size;
+  }
+
+  private synchronized void complete(String path, Document document) {
+    this._documents.put(path, document);
+  }
+
+  /**
+   * A completed document, in memory or in a file.
+   */
+  private static final class Document {
+
+    /** The content if in memory */
+    private byte[] data;
+
+    /** The file otherwise */
+    private final File file;
+
+    Document(byte[] data) {
+      this.data = data;
+      this.file = null;
+    }
+
+    Document(File file) {
+      this.data = null;
+      this.file = file;
+    }
+
+    boolean released() {
+      return this.data == null && this.file == null;
+    }
+  }
+
+  /**
+   * Writes a document to memory and moves it to a file if it does not fit.
+   */
+  private final class Spillable extends OutputStream {
+
+    /** The path of the document */
+    private final String path;
+
+    /** The content while in memory */
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+
+    /** The file once spilled */
+    private File file = null;
+
+    /** The file stream once spilled */
+    private OutputStream out = null;
+
+    /** Whether the document is complete */
+    private boolean closed = false;
+
+    Spillable(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (this.out == null && !reserve(1)) {
+        spill();
+      }
+      if (this.out != null) {
+        this.out.write(b);
+      } else {
+        this.buffer.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (this.out == null && !reserve(len)) {
+        spill();
+      }
+      if (this.out != null) {
+        this.out.write(b, off, len);
+      } else {
+        this.buffer.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (this.out != null) this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (this.closed) return;
+      this.closed = true;
+      if (this.out != null) {
+        this.out.close();
+        complete(this.path, new Document(this.file));
+      } else {
+        complete(this.path, new Document(this.buffer.toByteArray()));
+        this.buffer = null;
+      }
+    }
+
+    /**
+     * Moves the content written so far to a file.
+     */
+    private void spill() throws IOException {
+      this.file = new File(WorkingArea.this._spill, this.path);
+      File parent = this.file.getParentFile();
+      if (!parent.exists() && !parent.mkdirs())
+        throw new IOException("Unable to create folder "+parent.getName());
+      this.out = new FileOutputStream(this.file);
+      this.buffer.writeTo(this.out);
+      free(this.buffer.size());
+      this.buffer = null;
+    }
+  }
+}
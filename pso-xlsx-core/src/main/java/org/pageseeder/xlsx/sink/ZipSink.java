@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes documents as entries of a single zip archive.
+ *
+ * <p>Each entry is written as it is generated so that no file is created apart from the archive.
+ * Only one document can be written at a time.
+ *
+ * <p>With a compression level of <code>0</code>, entries are stored without compression; since
+ * the size and checksum of stored entries must precede their content, each one is buffered in
+ * memory until it is closed.
+ */
+public final class ZipSink implements OutputSink {
+
+  /**
+   * Size of the buffer for the archive.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The zip stream.
+   */
+  private final ZipOutputStream _zip;
+
+  /**
+   * Whether entries are stored without compression.
+   */
+  private final boolean _stored;
+
+  /**
+   * Whether a document is being written.
+   */
+  private boolean writing = false;
+
+  /**
+   * Creates a zip sink using the default compression level.
+   *
+   * @param archive The zip file to create.
+   *
+   * @throws IOException If the file cannot be created.
+   */
+  public ZipSink(File archive) throws IOException {
+    this(new FileOutputStream(archive), Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates a zip sink.
+   *
+   * @param out   Where the zip should be written, it is closed with this sink.
+   * @param level The compression level (0-9), 0 to store entries without compression or
+   *              -1 for the default level.
+   */
+  public ZipSink(OutputStream out, int level) {
+    this._zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    this._stored = level == Deflater.NO_COMPRESSION;
+    if (!this._stored) {
+      this._zip.setLevel(level);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalStateException if another document is being written.
+   */
+  @Override
+  public synchronized OutputStream newDocument(String path) throws IOException {
+    if (this.writing)
+      throw new IllegalStateException("Unable to write "+path+" while another document is being written");
+    this.writing = true;
+    if (this._stored) return new StoredEntry(path);
+    this._zip.putNextEntry(new ZipEntry(path));
+    return new FilterOutputStream(this._zip) {
+      /** Whether the entry was closed, closing it again must not end the next entry */
+      private boolean closed = false;
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        this.out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        done();
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    this._zip.close();
+  }
+
+  /**
+   * Completes the current entry.
+   */
+  private synchronized void done() throws IOException {
+    if (this.writing) {
+      this._zip.closeEntry();
+      this.writing = false;
+    }
+  }
+
+  /**
+   * Buffers an entry until it is closed so that it can be stored.
+   */
+  private final class StoredEntry extends ByteArrayOutputStream {
+
+    /** The name of the entry */
+    private final String name;
+
+    /** Whether the entry was written */
+    private boolean closed = false;
+
+    StoredEntry(String name) {
+      super(8192);
+      this.name = name;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (this.closed) return;
+      this.closed = true;
+      CRC32 crc = new CRC32();
+      crc.update(this.buf, 0, this.count);
+      ZipEntry entry = new ZipEntry(this.name);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(this.count);
+      entry.setCompressedSize(this.count);
+      entry.setCrc(crc.getValue());
+      ZipSink.this._zip.putNextEntry(entry);
+      ZipSink.this._zip.write(this.buf, 0, this.count);
+      done();
+    }
+  }
+}
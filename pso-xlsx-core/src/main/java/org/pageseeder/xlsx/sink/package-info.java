@@ -0,0 +1,7 @@
+/*
+ *  Copyright (c) 2021 Allette Systems pty. ltd.
+ */
+/**
+ * Destinations for the generated documents.
+ */
+package org.pageseeder.xlsx.sink;
@@ -5,6 +5,7 @@ package org.pageseeder.xlsx.util;
 
 import java.io.File;
 
+import org.pageseeder.xlsx.ResourceLimitException;
 import org.pageseeder.xlsx.XLSXException;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -54,6 +55,34 @@ public final class CoreProperties {
     return handler.core();
   }
 
+  /**
+   * Parses the core properties part of the specified package.
+   *
+   * @param pkg  The package
+   * @param part The name of the core properties part, usually <code>docProps/core.xml</code>
+   * @return the corresponding instance.
+   *
+   * @throws XLSXException If an error occurs while trying to parse the core properties.
+   */
+  public static CoreProperties parse(OfficePackage pkg, String part) {
+    Handler handler = new Handler();
+    try {
+      XML.parse(pkg, part, handler, true);
+    } catch (ResourceLimitException ex) {
+      throw ex;
+    } catch (XLSXException ex) {
+      throw new XLSXException("Unable to parse core document properties", ex.getCause());
+    }
+    return handler.core();
+  }
+
+  /**
+   * @return empty core properties for packages which do not include any.
+   */
+  public static CoreProperties empty() {
+    return new CoreProperties();
+  }
+
   /**
    * Handles the docProps/core.xml file.
    *
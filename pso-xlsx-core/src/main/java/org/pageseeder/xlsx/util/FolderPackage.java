@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An Office Open XML package which has already been extracted to a folder.
+ */
+public final class FolderPackage implements OfficePackage {
+
+  /**
+   * The root folder of the package.
+   */
+  private final File _root;
+
+  /**
+   * @param root The root folder of the extracted package.
+   */
+  public FolderPackage(File root) {
+    this._root = root;
+  }
+
+  @Override
+  public String name() {
+    return this._root.getAbsolutePath();
+  }
+
+  @Override
+  public boolean contains(String part) {
+    return toFile(part).isFile();
+  }
+
+  @Override
+  public InputStream open(String part) throws IOException {
+    return new FileInputStream(toFile(part));
+  }
+
+  @Override
+  public long size(String part) {
+    File file = toFile(part);
+    return file.isFile() ? file.length() : -1;
+  }
+
+  @Override
+  public Collection<String> parts() {
+    List<String> parts = new ArrayList<>();
+    collect(this._root, "", parts);
+    return parts;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+
+  /**
+   * @param part the name of the part
+   * @return the corresponding file.
+   */
+  public File toFile(String part) {
+    return new File(this._root, part.startsWith("/") ? part.substring(1) : part);
+  }
+
+  /**
+   * Collect the part names recursively.
+   */
+  private static void collect(File folder, String prefix, List<String> parts) {
+    File[] files = folder.listFiles();
+    if (files == null) return;
+    for (File f : files) {
+      if (f.isDirectory()) {
+        collect(f, prefix + f.getName() + "/", parts);
+      } else {
+        parts.add(prefix + f.getName());
+      }
+    }
+  }
+
+}
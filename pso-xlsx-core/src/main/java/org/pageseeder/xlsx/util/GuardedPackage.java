@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+import org.pageseeder.xlsx.ResourceLimitException;
+
+/**
+ * A package which enforces resource limits on the parts read from another package.
+ *
+ * <p>The number of entries is checked when the package is created and each part is counted
+ * as it is inflated.
+ */
+public final class GuardedPackage implements OfficePackage {
+
+  /**
+   * The package to read from.
+   */
+  private final OfficePackage _package;
+
+  /**
+   * The guard enforcing the limits.
+   */
+  private final ResourceGuard _guard;
+
+  /**
+   * @param pkg   The package to read from, it must list its parts without reading them.
+   * @param guard The guard enforcing the limits.
+   *
+   * @throws ResourceLimitException if the package has too many entries.
+   */
+  public GuardedPackage(OfficePackage pkg, ResourceGuard guard) {
+    this._package = pkg;
+    this._guard = guard;
+    guard.checkEntries(pkg.parts().size());
+  }
+
+  @Override
+  public String name() {
+    return this._package.name();
+  }
+
+  @Override
+  public boolean contains(String part) {
+    return this._package.contains(part);
+  }
+
+  @Override
+  public InputStream open(String part) throws IOException {
+    long size = this._package.size(part);
+    long compressedSize = this._package.compressedSize(part);
+    InputStream in = this._package.open(part);
+    try {
+      return this._guard.guard(part, in, size, compressedSize);
+    } catch (ResourceLimitException ex) {
+      in.close();
+      throw ex;
+    }
+  }
+
+  @Override
+  public long size(String part) {
+    return this._package.size(part);
+  }
+
+  @Override
+  public long compressedSize(String part) {
+    return this._package.compressedSize(part);
+  }
+
+  @Override
+  public Collection<String> parts() {
+    return this._package.parts();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this._package.close();
+  }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * An Office Open XML package held in memory.
+ *
+ * <p>The central directory of the zip is read directly from the buffer so that each part
+ * can be inflated on demand, without copying the package to a temporary file.
+ *
+ * <p>ZIP64 archives are not supported.
+ */
+public final class MemoryPackage implements OfficePackage {
+
+  /** Signature of the end of central directory record. */
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+  /** Signature of a central directory file header. */
+  private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+
+  /** Signature of a local file header. */
+  private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+  /** Minimum size of the end of central directory record. */
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  /** Size of the fixed part of a local file header. */
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+  /** Size of the fixed part of a central directory file header. */
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+  /**
+   * The zip data (little-endian, read only).
+   */
+  private final ByteBuffer _data;
+
+  /**
+   * The entries mapped to their lower case part name.
+   */
+  private final Map<String, Entry> _entries;
+
+  /**
+   * Creates a package from the specified bytes.
+   *
+   * @param data the content of the XLSX file.
+   *
+   * @throws ZipException if the data is not a valid zip
+   */
+  public MemoryPackage(byte[] data) throws ZipException {
+    this(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Creates a package from the remaining bytes in the specified buffer.
+   *
+   * <p>The buffer is not modified.
+   *
+   * @param data the content of the XLSX file.
+   *
+   * @throws ZipException if the data is not a valid zip
+   */
+  public MemoryPackage(ByteBuffer data) throws ZipException {
+    this._data = data.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    this._entries = index(this._data);
+  }
+
+  /**
+   * Reads the specified stream fully and creates a package from its content.
+   *
+   * @param in the stream to read
+   * @return the corresponding package
+   *
+   * @throws IOException if an error occurs while reading the stream
+   */
+  public static MemoryPackage read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return new MemoryPackage(out.toByteArray());
+  }
+
+  @Override
+  public String name() {
+    return "memory";
+  }
+
+  @Override
+  public boolean contains(String part) {
+    return this._entries.containsKey(key(part));
+  }
+
+  @Override
+  public InputStream open(String part) throws IOException {
+    Entry entry = this._entries.get(key(part));
+    if (entry == null)
+      throw new FileNotFoundException("No part "+part+" in package");
+    ByteBuffer data = this._data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    if (data.getInt(entry.offset) != LOCAL_FILE_HEADER)
+      throw new ZipException("Invalid local header for "+entry.name);
+    int start = entry.offset + LOCAL_FILE_HEADER_SIZE + (data.getShort(entry.offset + 26) & 0xFFFF) + (data.getShort(entry.offset + 28) & 0xFFFF);
+    long end = start + entry.compressedSize;
+    if (end > data.limit())
+      throw new ZipException("Truncated entry "+entry.name);
+    data.position(start);
+    if (entry.method == ZipEntry.STORED) {
+      data.limit((int)end);
+      return new ByteBufferInputStream(data.slice());
+    }
+    // The inflater may need an extra byte when there is no zlib wrapper
+    data.limit((int)Math.min(end + 1, data.limit()));
+    InputStream raw = new ByteBufferInputStream(data.slice());
+    if (entry.method == ZipEntry.DEFLATED) return new InflaterInputStream(raw, new Inflater(true), 8192) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        this.inf.end();
+      }
+    };
+    throw new ZipException("Unsupported compression method "+entry.method+" for "+entry.name);
+  }
+
+  @Override
+  public long size(String part) {
+    Entry entry = this._entries.get(key(part));
+    return entry != null ? entry.size : -1;
+  }
+
+  @Override
+  public long compressedSize(String part) {
+    Entry entry = this._entries.get(key(part));
+    return entry != null ? entry.compressedSize : -1;
+  }
+
+  @Override
+  public Collection<String> parts() {
+    List<String> parts = new ArrayList<>(this._entries.size());
+    for (Entry entry : this._entries.values()) {
+      parts.add(entry.name);
+    }
+    return Collections.unmodifiableList(parts);
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Reads the central directory.
+   */
+  private static Map<String, Entry> index(ByteBuffer data) throws ZipException {
+    int eocd = -1;
+    int min = Math.max(0, data.limit() - END_OF_CENTRAL_DIRECTORY_SIZE - 0xFFFF);
+    for (int i = data.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= min; i--) {
+      if (data.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+        eocd = i;
+        break;
+      }
+    }
+    if (eocd < 0) throw new ZipException("Not a zip: end of central directory not found");
+    int count = data.getShort(eocd + 10) & 0xFFFF;
+    long offset = data.getInt(eocd + 16) & 0xFFFFFFFFL;
+    if (count == 0xFFFF || offset == 0xFFFFFFFFL)
+      throw new ZipException("ZIP64 archives are not supported in memory");
+    Map<String, Entry> entries = new LinkedHashMap<>();
+    int position = (int)offset;
+    for (int i = 0; i < count; i++) {
+      if (position + CENTRAL_DIRECTORY_HEADER_SIZE > data.limit() || data.getInt(position) != CENTRAL_DIRECTORY_HEADER)
+        throw new ZipException("Invalid central directory");
+      int method = data.getShort(position + 10) & 0xFFFF;
+      long compressedSize = data.getInt(position + 20) & 0xFFFFFFFFL;
+      long size = data.getInt(position + 24) & 0xFFFFFFFFL;
+      int nameLength = data.getShort(position + 28) & 0xFFFF;
+      int extraLength = data.getShort(position + 30) & 0xFFFF;
+      int commentLength = data.getShort(position + 32) & 0xFFFF;
+      int local = data.getInt(position + 42);
+      byte[] name = new byte[nameLength];
+      ByteBuffer b = data.duplicate();
+      b.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+      b.get(name);
+      String n = new String(name, StandardCharsets.UTF_8);
+      if (!n.endsWith("/")) {
+        entries.put(key(n), new Entry(n, method, compressedSize, size, local));
+      }
+      position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return entries;
+  }
+
+  /**
+   * @return the key to use for the specified part name.
+   */
+  private static String key(String part) {
+    String name = part.startsWith("/") ? part.substring(1) : part;
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * An entry from the central directory.
+   */
+  private static final class Entry {
+
+    /** Name of the entry */
+    private final String name;
+
+    /** Compression method */
+    private final int method;
+
+    /** Compressed size in bytes */
+    private final long compressedSize;
+
+    /** Uncompressed size in bytes */
+    private final long size;
+
+    /** Offset of the local file header */
+    private final int offset;
+
+    Entry(String name, int method, long compressedSize, long size, int offset) {
+      this.name = name;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * Reads the remaining bytes of a buffer.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    /** The buffer to read */
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) return 0;
+      if (!this.buffer.hasRemaining()) return -1;
+      int n = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return this.buffer.remaining();
+    }
+  }
+}
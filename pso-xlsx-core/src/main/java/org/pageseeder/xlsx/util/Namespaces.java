@@ -32,6 +32,13 @@ public final class Namespaces {
    */
   public static final String PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
 
+  /**
+   * Relationship type of the core properties in the package relationships.
+   *
+   * <p><code>http://schemas.openxmlformats.org/package/2006/relationships/metadata/core-properties</code>
+   */
+  public static final String CORE_PROPERTIES = "http://schemas.openxmlformats.org/package/2006/relationships/metadata/core-properties";
+
   /**
    * Utility class.
    */
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+/**
+ * An Office Open XML package from which individual parts can be read.
+ *
+ * <p>Part names are relative to the root of the package and do not start with a slash,
+ * for example <code>xl/workbook.xml</code> or <code>xl/_rels/workbook.xml.rels</code>.
+ *
+ * <p>Implementations stream the content of each part directly from their source so that
+ * parts do not need to be extracted before they are parsed.
+ */
+public interface OfficePackage extends Closeable {
+
+  /**
+   * @return a name identifying this package in messages.
+   */
+  String name();
+
+  /**
+   * @param part the name of the part
+   * @return <code>true</code> if the package contains the specified part.
+   */
+  boolean contains(String part);
+
+  /**
+   * Opens the specified part for reading.
+   *
+   * <p>The caller is responsible for closing the stream.
+   *
+   * @param part the name of the part
+   * @return the content of the part
+   *
+   * @throws IOException if the part does not exist or cannot be read
+   */
+  InputStream open(String part) throws IOException;
+
+  /**
+   * @param part the name of the part
+   * @return the uncompressed size of the part in bytes or -1 if unknown.
+   */
+  long size(String part);
+
+  /**
+   * @param part the name of the part
+   * @return the compressed size of the part in bytes or -1 if unknown.
+   */
+  default long compressedSize(String part) {
+    return -1;
+  }
+
+  /**
+   * @return the names of all the parts in this package.
+   */
+  Collection<String> parts();
+
+}
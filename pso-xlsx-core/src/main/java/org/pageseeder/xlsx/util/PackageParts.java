@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds the parts of a package that are needed to process the workbook.
+ *
+ * <p>The parts are found by following the relationship graph from the package relationships
+ * to the workbook, and from the workbook to its work sheets, shared strings and styles.
+ * Media, drawings, printer settings, embedded objects and other parts that are not
+ * referenced this way are not included.
+ */
+public final class PackageParts {
+
+  /**
+   * The workbook part used when the package relationships do not specify one.
+   */
+  public static final String DEFAULT_WORKBOOK_PART = "xl/workbook.xml";
+
+  /**
+   * The core properties part used when the package relationships do not specify one.
+   */
+  public static final String DEFAULT_CORE_PROPERTIES_PART = "docProps/core.xml";
+
+  /**
+   * The types of workbook relationships needed to process the workbook.
+   */
+  private static final Set<Relationship.Type> WORKBOOK_TYPES =
+      EnumSet.of(Relationship.Type.worksheet, Relationship.Type.sharedStrings, Relationship.Type.styles);
+
+  /** Utility class. */
+  private PackageParts() {
+  }
+
+  /**
+   * Returns the name of the workbook part from the package relationships.
+   *
+   * @param relationships The package relationships.
+   * @return the name of the workbook part.
+   */
+  public static String workbook(Relationships relationships) {
+    String workbook = DEFAULT_WORKBOOK_PART;
+    for (Relationship r : relationships.forType(Relationship.Type.officeDocument)) {
+      workbook = Relationships.resolve("", r.target());
+    }
+    return workbook;
+  }
+
+  /**
+   * Returns the name of the core properties part from the package relationships.
+   *
+   * @param relationships The package relationships.
+   * @return the name of the core properties part.
+   */
+  public static String coreProperties(Relationships relationships) {
+    String core = DEFAULT_CORE_PROPERTIES_PART;
+    for (Relationship r : relationships.forType(Relationship.Type.coreProperties)) {
+      core = Relationships.resolve("", r.target());
+    }
+    return core;
+  }
+
+  /**
+   * Returns the names of the parts needed to process the workbook in the specified package.
+   *
+   * <p>This includes the relationships parts that were followed.
+   *
+   * @param pkg The package
+   * @return the names of the required parts in the order they were found.
+   */
+  public static Set<String> required(OfficePackage pkg) {
+    Relationships root = Relationships.parse(pkg, "");
+    String workbook = workbook(root);
+    Set<String> parts = new LinkedHashSet<>();
+    for (String part : referenced(root, workbook, Relationships.parse(pkg, workbook))) {
+      add(pkg, part, parts);
+    }
+    return parts;
+  }
+
+  /**
+   * Returns the names of the parts needed to process the workbook from relationships that
+   * have already been parsed.
+   *
+   * <p>Unlike {@link #required(OfficePackage)}, the parts are not checked against the package.
+   *
+   * @param root          The package relationships
+   * @param workbook      The name of the workbook part
+   * @param relationships The workbook relationships
+   * @return the names of the referenced parts including the relationships parts.
+   */
+  public static Set<String> referenced(Relationships root, String workbook, Relationships relationships) {
+    Set<String> parts = new LinkedHashSet<>();
+    parts.add(Relationships.partFor(""));
+    parts.add(coreProperties(root));
+    parts.add(workbook);
+    parts.add(Relationships.partFor(workbook));
+    for (Relationship r : relationships.all()) {
+      if (WORKBOOK_TYPES.contains(r.type())) {
+        parts.add(Relationships.resolve(workbook, r.target()));
+      }
+    }
+    return parts;
+  }
+
+  /**
+   * Extracts the specified parts of the package to a folder.
+   *
+   * <p>Part names are compared ignoring case, other parts are neither read nor written.
+   *
+   * @param pkg   The package
+   * @param dest  The destination folder
+   * @param parts The names of the parts to extract
+   *
+   * @return the number of uncompressed bytes that were skipped.
+   *
+   * @throws IOException If an error occurs while reading or writing a part
+   */
+  public static long extract(OfficePackage pkg, File dest, Collection<String> parts) throws IOException {
+    Set<String> selected = new HashSet<>();
+    for (String part : parts) {
+      selected.add(part.toLowerCase(Locale.ROOT));
+    }
+    long skipped = 0;
+    byte[] buffer = new byte[8192];
+    for (String part : pkg.parts()) {
+      if (!selected.contains(part.toLowerCase(Locale.ROOT))) {
+        long size = pkg.size(part);
+        if (size > 0) skipped += size;
+        continue;
+      }
+      File f = new File(dest, part);
+      File dir = f.getParentFile();
+      if (!dir.exists()) {
+        dir.mkdirs();
+      }
+      try (InputStream in = pkg.open(part); OutputStream out = new FileOutputStream(f)) {
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+          out.write(buffer, 0, count);
+        }
+      }
+    }
+    return skipped;
+  }
+
+  /**
+   * Adds the part if it is in the package.
+   */
+  private static void add(OfficePackage pkg, String part, Set<String> parts) {
+    if (pkg.contains(part)) parts.add(part);
+  }
+
+}
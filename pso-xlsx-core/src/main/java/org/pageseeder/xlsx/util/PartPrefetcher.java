@@ -0,0 +1,270 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inflates a sequence of parts on a background thread so that decompression overlaps with parsing.
+ *
+ * <p>The parts must be read in the order they were specified using {@link #next(String)}.
+ * While the caller parses a part, the background thread inflates the rest of it and then the
+ * following part into a bounded buffer. The background thread never works more than one part
+ * ahead of the caller, so memory use is limited to two buffers.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * try (PartPrefetcher prefetcher = new PartPrefetcher(pkg, parts)) {
+ *   for (String part : parts) {
+ *     try (InputStream in = prefetcher.next(part)) {
+ *       // parse
+ *     }
+ *   }
+ * }
+ * }</pre>
+ */
+public final class PartPrefetcher implements Closeable {
+
+  /**
+   * Size of each chunk of inflated data.
+   */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * The default maximum number of bytes buffered for each part.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * How long the inflater waits for buffer space before checking whether the part was closed (in ms).
+   */
+  private static final long POLL_INTERVAL = 50;
+
+  /**
+   * Marks the end of a part.
+   */
+  private static final byte[] END = new byte[0];
+
+  /**
+   * The package to read the parts from.
+   */
+  private final OfficePackage _package;
+
+  /**
+   * The parts to read in order.
+   */
+  private final List<String> _parts;
+
+  /**
+   * The buffers for each part.
+   */
+  private final List<Pipe> _pipes;
+
+  /**
+   * Lets the background thread start the next part once the previous one has been opened.
+   */
+  private final Semaphore _ahead = new Semaphore(1);
+
+  /**
+   * The thread inflating the parts.
+   */
+  private final Thread _inflater;
+
+  /**
+   * The index of the next part to open.
+   */
+  private int next = 0;
+
+  /**
+   * Creates a new prefetcher and starts inflating the first part.
+   *
+   * @param pkg   The package to read the parts from.
+   * @param parts The parts to read in order.
+   */
+  public PartPrefetcher(OfficePackage pkg, List<String> parts) {
+    this(pkg, parts, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new prefetcher and starts inflating the first part.
+   *
+   * @param pkg        The package to read the parts from.
+   * @param parts      The parts to read in order.
+   * @param bufferSize The maximum number of bytes to buffer for each part.
+   */
+  public PartPrefetcher(OfficePackage pkg, List<String> parts, int bufferSize) {
+    this._package = pkg;
+    this._parts = new ArrayList<>(parts);
+    this._pipes = new ArrayList<>(parts.size());
+    int capacity = Math.max(1, bufferSize / CHUNK_SIZE);
+    for (int i = 0; i < parts.size(); i++) {
+      this._pipes.add(new Pipe(capacity));
+    }
+    this._inflater = new Thread(this::inflate, "xlsx-inflater");
+    this._inflater.setDaemon(true);
+    this._inflater.start();
+  }
+
+  /**
+   * Returns the content of the next part.
+   *
+   * @param part the name of the part, which must be the next in the sequence.
+   * @return the content of the part.
+   *
+   * @throws IllegalStateException if the part is not the next in the sequence.
+   */
+  public InputStream next(String part) {
+    if (this.next >= this._parts.size() || !this._parts.get(this.next).equals(part))
+      throw new IllegalStateException("Part "+part+" is not the next in the sequence");
+    Pipe pipe = this._pipes.get(this.next++);
+    this._ahead.release();
+    return pipe;
+  }
+
+  @Override
+  public void close() {
+    this._inflater.interrupt();
+  }
+
+  /**
+   * Inflate each part in sequence.
+   */
+  private void inflate() {
+    try {
+      for (int i = 0; i < this._parts.size(); i++) {
+        this._ahead.acquire();
+        Pipe pipe = this._pipes.get(i);
+        try (InputStream in = this._package.open(this._parts.get(i))) {
+          byte[] chunk = new byte[CHUNK_SIZE];
+          int count = 0;
+          int n;
+          while ((n = in.read(chunk, count, CHUNK_SIZE - count)) != -1) {
+            count += n;
+            if (count == CHUNK_SIZE) {
+              if (!pipe.put(chunk)) break;
+              chunk = new byte[CHUNK_SIZE];
+              count = 0;
+            }
+          }
+          if (count > 0) pipe.put(Arrays.copyOf(chunk, count));
+        } catch (IOException | RuntimeException ex) {
+          pipe.error = ex;
+        }
+        pipe.put(END);
+      }
+    } catch (InterruptedException ex) {
+      // Closed before all parts were read
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The bounded buffer between the inflater and the parser of a part.
+   */
+  private static final class Pipe extends InputStream {
+
+    /** The inflated chunks */
+    private final BlockingQueue<byte[]> queue;
+
+    /** Set by the inflater if the part could not be read */
+    private volatile Exception error;
+
+    /** Set by the reader when it no longer needs the data */
+    private volatile boolean closed = false;
+
+    /** The chunk being read */
+    private byte[] chunk = null;
+
+    /** The position in the current chunk */
+    private int position = 0;
+
+    /**
+     * @param capacity the number of chunks that can be buffered.
+     */
+    Pipe(int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) return -1;
+      return this.chunk[this.position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+      if (!fill()) return -1;
+      int n = Math.min(len, this.chunk.length - this.position);
+      System.arraycopy(this.chunk, this.position, b, off, n);
+      this.position += n;
+      return n;
+    }
+
+    @Override
+    public void close() {
+      // Stop the inflater from buffering the rest of this part
+      this.closed = true;
+      this.chunk = END;
+      this.queue.clear();
+    }
+
+    /**
+     * Adds a chunk to the buffer, waiting for space to become available.
+     *
+     * @param data the chunk to add
+     * @return <code>false</code> if the pipe was closed by the reader
+     */
+    private boolean put(byte[] data) throws InterruptedException {
+      while (!this.closed) {
+        if (this.queue.offer(data, POLL_INTERVAL, TimeUnit.MILLISECONDS)) return true;
+      }
+      return false;
+    }
+
+    /**
+     * Ensures that there is data available in the current chunk.
+     *
+     * @return <code>false</code> if the end of the part was reached.
+     */
+    private boolean fill() throws IOException {
+      while (this.chunk != END && (this.chunk == null || this.position == this.chunk.length)) {
+        try {
+          this.chunk = this.queue.take();
+          this.position = 0;
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for inflated data");
+        }
+      }
+      if (this.chunk == END && this.error instanceof RuntimeException)
+        throw (RuntimeException)this.error;
+      if (this.chunk == END && this.error != null)
+        throw new IOException("Unable to inflate part", this.error);
+      return this.chunk != END;
+    }
+  }
+}
@@ -14,7 +14,7 @@ public final class Relationship {
   /**
    * The type of relationship.
    */
-  public enum Type { worksheet, sharedStrings, styles, theme, xmlMaps, calcChain, unknown };
+  public enum Type { officeDocument, coreProperties, worksheet, sharedStrings, styles, theme, xmlMaps, calcChain, unknown };
 
   /**
    * The relationship ID.
@@ -4,12 +4,15 @@
 package org.pageseeder.xlsx.util;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.pageseeder.xlsx.ResourceLimitException;
 import org.pageseeder.xlsx.XLSXException;
 import org.pageseeder.xlsx.util.Relationship.Type;
 import org.xml.sax.Attributes;
@@ -89,6 +92,69 @@ public final class Relationships {
     return new Relationships(handler.getRelationships());
   }
 
+  /**
+   * Returns the relationships of the specified part.
+   *
+   * <p>If the package does not include relationships for that part, the returned
+   * relationships are empty.
+   *
+   * @param pkg    The package.
+   * @param source The name of the part the relationships are for (use "" for the package).
+   * @return the relationships of that part.
+   */
+  public static Relationships parse(OfficePackage pkg, String source) {
+    String part = partFor(source);
+    Loader handler = new Loader();
+    if (pkg.contains(part)) {
+      try {
+        XML.parse(pkg, part, handler, true);
+      } catch (ResourceLimitException ex) {
+        throw ex;
+      } catch (XLSXException ex) {
+        throw new XLSXException("Unable to parse relationships "+part, ex.getCause());
+      }
+    }
+    return new Relationships(handler.getRelationships());
+  }
+
+  /**
+   * Returns the name of the relationships part for the specified part.
+   *
+   * <p>For example, the relationships for <code>xl/workbook.xml</code> are stored in
+   * <code>xl/_rels/workbook.xml.rels</code> and the package relationships in
+   * <code>_rels/.rels</code>.
+   *
+   * @param source The name of the source part (use "" for the package).
+   * @return the name of the part containing its relationships.
+   */
+  public static String partFor(String source) {
+    int slash = source.lastIndexOf('/');
+    return source.substring(0, slash + 1) + "_rels/" + source.substring(slash + 1) + ".rels";
+  }
+
+  /**
+   * Resolves the target of a relationship into a part name.
+   *
+   * <p>Targets are relative to the folder of the source part unless they start with '/'.
+   *
+   * @param source The name of the source part.
+   * @param target The target of the relationship.
+   * @return the name of the target part.
+   */
+  public static String resolve(String source, String target) {
+    if (target.startsWith("/")) return target.substring(1);
+    int slash = source.lastIndexOf('/');
+    Deque<String> path = new ArrayDeque<>();
+    for (String segment : (source.substring(0, slash + 1) + target).split("/")) {
+      if ("..".equals(segment)) {
+        path.pollLast();
+      } else if (!segment.isEmpty() && !".".equals(segment)) {
+        path.addLast(segment);
+      }
+    }
+    return String.join("/", path);
+  }
+
   /**
    * Extracts the relationships from a "rels" file.
    *
@@ -111,7 +177,9 @@ public final class Relationships {
         String id = atts.getValue("Id");
         String typeURI = atts.getValue("Type");
         Type type = Relationship.Type.unknown;
-        if (typeURI.startsWith(Namespaces.RELATIONSHIPS)) {
+        if (typeURI.equals(Namespaces.CORE_PROPERTIES)) {
+          type = Type.coreProperties;
+        } else if (typeURI.startsWith(Namespaces.RELATIONSHIPS)) {
           try {
             type = Type.valueOf(typeURI.substring(Namespaces.RELATIONSHIPS.length() + 1));
           } catch (IllegalArgumentException ex) {
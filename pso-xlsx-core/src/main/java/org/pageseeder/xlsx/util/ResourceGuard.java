@@ -0,0 +1,245 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.pageseeder.xlsx.ResourceLimitException;
+
+/**
+ * Enforces resource limits while a package is read.
+ *
+ * <p>A guard keeps track of the bytes inflated for a single package. The sizes declared in
+ * the zip are checked before a part is read, and the actual number of bytes is counted as
+ * the part is inflated since declared sizes cannot be trusted. Reading the same part more
+ * than once only counts towards the total once.
+ */
+public final class ResourceGuard {
+
+  /**
+   * Compression ratios are only checked once a part has inflated more than this number of
+   * bytes as small parts with a high ratio are harmless.
+   */
+  private static final long RATIO_GRACE_SIZE = 100 * 1024;
+
+  /**
+   * The limits to enforce.
+   */
+  private final ResourceLimits _limits;
+
+  /**
+   * The number of bytes counted for each part.
+   */
+  private final Map<String, Long> _counted = new HashMap<>();
+
+  /**
+   * The total number of bytes inflated.
+   */
+  private long total = 0;
+
+  /**
+   * @param limits The limits to enforce.
+   */
+  public ResourceGuard(ResourceLimits limits) {
+    this._limits = limits;
+  }
+
+  /**
+   * @return the limits enforced by this guard.
+   */
+  public ResourceLimits getLimits() {
+    return this._limits;
+  }
+
+  /**
+   * Checks the number of entries in the package.
+   *
+   * @param count the number of entries
+   *
+   * @throws ResourceLimitException if the number of entries exceeds the limit.
+   */
+  public void checkEntries(int count) {
+    int max = this._limits.getMaxEntries();
+    if (max > 0 && count > max)
+      throw new ResourceLimitException("maxEntries", max, "Package contains more than "+max+" entries");
+  }
+
+  /**
+   * Checks the number of shared strings.
+   *
+   * @param count the number of shared strings
+   *
+   * @throws ResourceLimitException if the number of shared strings exceeds the limit.
+   */
+  public void checkSharedStrings(int count) {
+    int max = this._limits.getMaxSharedStrings();
+    if (max > 0 && count > max)
+      throw new ResourceLimitException("maxSharedStrings", max, "Workbook contains more than "+max+" shared strings");
+  }
+
+  /**
+   * Returns a stream which enforces the limits as the part is inflated.
+   *
+   * @param part           The name of the part
+   * @param in             The uncompressed content of the part
+   * @param size           The declared uncompressed size or -1 if unknown
+   * @param compressedSize The compressed size or -1 if unknown
+   *
+   * @return the guarded stream.
+   *
+   * @throws ResourceLimitException if the declared size already exceeds a limit.
+   */
+  public InputStream guard(String part, InputStream in, long size, long compressedSize) {
+    return guard(part, in, size, () -> compressedSize);
+  }
+
+  /**
+   * Returns a stream which enforces the limits as the part is inflated when its compressed size
+   * may only be known once it has been read.
+   *
+   * <p>Entries followed by a data descriptor in a zip stream only have a compressed size at the
+   * end, their compression ratio is checked when the end of the part is reached.
+   *
+   * @param part           The name of the part
+   * @param in             The uncompressed content of the part
+   * @param size           The declared uncompressed size or -1 if unknown
+   * @param compressedSize The compressed size or -1 while it is unknown
+   *
+   * @return the guarded stream.
+   *
+   * @throws ResourceLimitException if the declared size already exceeds a limit.
+   */
+  public InputStream guard(String part, InputStream in, long size, LongSupplier compressedSize) {
+    if (!this._limits.isLimited()) return in;
+    if (size > 0) {
+      checkPartSize(part, size);
+      checkRatio(part, size, compressedSize.getAsLong());
+      synchronized (this) {
+        Long counted = this._counted.get(key(part));
+        checkTotal(this.total + size - (counted != null ? counted : 0));
+      }
+    }
+    return new Guarded(in, part, compressedSize);
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  private void checkPartSize(String part, long size) {
+    long max = this._limits.getMaxPartSize();
+    if (max > 0 && size > max)
+      throw new ResourceLimitException("maxPartSize", max, "Part "+part+" exceeds "+max+" bytes");
+  }
+
+  private void checkRatio(String part, long size, long compressedSize) {
+    double max = this._limits.getMaxCompressionRatio();
+    if (max > 0 && compressedSize > 0 && size > RATIO_GRACE_SIZE && size > compressedSize * max)
+      throw new ResourceLimitException("maxCompressionRatio", (long)max, "Part "+part+" exceeds a compression ratio of "+max);
+  }
+
+  private void checkTotal(long size) {
+    long max = this._limits.getMaxTotalSize();
+    if (max > 0 && size > max)
+      throw new ResourceLimitException("maxTotalSize", max, "Package exceeds "+max+" uncompressed bytes");
+  }
+
+  /**
+   * Counts the bytes read from a part towards the total.
+   */
+  private synchronized void count(String key, long read) {
+    Long counted = this._counted.get(key);
+    long previous = counted != null ? counted : 0;
+    if (read > previous) {
+      checkTotal(this.total + read - previous);
+      this.total += read - previous;
+      this._counted.put(key, read);
+    }
+  }
+
+  /**
+   * @return the key to use for the specified part name.
+   */
+  private static String key(String part) {
+    String name = part.startsWith("/") ? part.substring(1) : part;
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Counts the bytes as they are read.
+   */
+  private final class Guarded extends FilterInputStream {
+
+    /** The name of the part */
+    private final String part;
+
+    /** The key of the part */
+    private final String key;
+
+    /** The compressed size of the part */
+    private final LongSupplier compressedSize;
+
+    /** The number of bytes read */
+    private long read = 0;
+
+    Guarded(InputStream in, String part, LongSupplier compressedSize) {
+      super(in);
+      this.part = part;
+      this.key = key(part);
+      this.compressedSize = compressedSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) check(1);
+      else end();
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) check(n);
+      else if (n == -1) end();
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      if (skipped > 0) check(skipped);
+      return skipped;
+    }
+
+    private void check(long n) {
+      this.read += n;
+      checkPartSize(this.part, this.read);
+      checkRatio(this.part, this.read, this.compressedSize.getAsLong());
+      count(this.key, this.read);
+    }
+
+    private void end() {
+      // The compressed size may only be known now
+      checkRatio(this.part, this.read, this.compressedSize.getAsLong());
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+/**
+ * The limits on the resources used to read a package.
+ *
+ * <p>A negative or zero value means that there is no limit.
+ */
+public final class ResourceLimits {
+
+  /**
+   * No limits.
+   */
+  public static final ResourceLimits NONE = new ResourceLimits(-1, -1, -1, -1, -1);
+
+  /**
+   * Maximum number of bytes inflated from all the parts.
+   */
+  private final long _maxTotalSize;
+
+  /**
+   * Maximum number of bytes inflated from a single part.
+   */
+  private final long _maxPartSize;
+
+  /**
+   * Maximum ratio between the uncompressed and the compressed size of a part.
+   */
+  private final double _maxCompressionRatio;
+
+  /**
+   * Maximum number of entries in the package.
+   */
+  private final int _maxEntries;
+
+  /**
+   * Maximum number of shared strings.
+   */
+  private final int _maxSharedStrings;
+
+  /**
+   * Creates new limits.
+   *
+   * @param maxTotalSize        Maximum number of bytes inflated from all the parts.
+   * @param maxPartSize         Maximum number of bytes inflated from a single part.
+   * @param maxCompressionRatio Maximum ratio between the uncompressed and the compressed size of a part.
+   * @param maxEntries          Maximum number of entries in the package.
+   * @param maxSharedStrings    Maximum number of shared strings.
+   */
+  public ResourceLimits(long maxTotalSize, long maxPartSize, double maxCompressionRatio, int maxEntries, int maxSharedStrings) {
+    this._maxTotalSize = maxTotalSize;
+    this._maxPartSize = maxPartSize;
+    this._maxCompressionRatio = maxCompressionRatio;
+    this._maxEntries = maxEntries;
+    this._maxSharedStrings = maxSharedStrings;
+  }
+
+  /**
+   * @return the maximum number of bytes inflated from all the parts.
+   */
+  public long getMaxTotalSize() {
+    return this._maxTotalSize;
+  }
+
+  /**
+   * @return the maximum number of bytes inflated from a single part.
+   */
+  public long getMaxPartSize() {
+    return this._maxPartSize;
+  }
+
+  /**
+   * @return the maximum ratio between the uncompressed and the compressed size of a part.
+   */
+  public double getMaxCompressionRatio() {
+    return this._maxCompressionRatio;
+  }
+
+  /**
+   * @return the maximum number of entries in the package.
+   */
+  public int getMaxEntries() {
+    return this._maxEntries;
+  }
+
+  /**
+   * @return the maximum number of shared strings.
+   */
+  public int getMaxSharedStrings() {
+    return this._maxSharedStrings;
+  }
+
+  /**
+   * @return <code>true</code> if at least one limit is set.
+   */
+  public boolean isLimited() {
+    return this._maxTotalSize > 0 || this._maxPartSize > 0 || this._maxCompressionRatio > 0
+        || this._maxEntries > 0 || this._maxSharedStrings > 0;
+  }
+
+}
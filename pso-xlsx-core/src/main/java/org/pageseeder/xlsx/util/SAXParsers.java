@@ -0,0 +1,209 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.IOException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Provides pre-configured SAX parsers which are reused by each thread.
+ *
+ * <p>The factories are looked up and configured once: DTDs and external entities are never
+ * loaded since the parts of an Office package do not need them. Each thread keeps its own
+ * parsers which are reset after each parse.
+ *
+ * <p>A specific implementation can be used by setting the system property
+ * {@value #FACTORY_PROPERTY} to the class name of its <code>SAXParserFactory</code>, or by
+ * calling {@link #setFactoryClass(String)}.
+ */
+public final class SAXParsers {
+
+  /**
+   * The system property to specify the class name of the SAX parser factory.
+   */
+  public static final String FACTORY_PROPERTY = "org.pageseeder.xlsx.saxParserFactory";
+
+  /**
+   * The features to disable on the factories when supported.
+   */
+  private static final String[] DISABLED_FEATURES = {
+    "http://xml.org/sax/features/external-general-entities",
+    "http://xml.org/sax/features/external-parameter-entities",
+    "http://apache.org/xml/features/nonvalidating/load-external-dtd"
+  };
+
+  /**
+   * The factories for namespace aware and non-namespace aware parsers.
+   */
+  private static volatile Factories factories = new Factories(System.getProperty(FACTORY_PROPERTY));
+
+  /**
+   * The parsers of the current thread.
+   */
+  private static final ThreadLocal<Parsers> PARSERS = new ThreadLocal<>();
+
+  /**
+   * Utility class.
+   */
+  private SAXParsers() {
+  }
+
+  /**
+   * Sets the SAX parser factory implementation to use.
+   *
+   * <p>Parsers already created by other threads are replaced the next time they are used.
+   *
+   * @param className the class name of the <code>SAXParserFactory</code> or <code>null</code>
+   *                  to use the default implementation.
+   */
+  public static void setFactoryClass(String className) {
+    factories = new Factories(className);
+  }
+
+  /**
+   * Parses the specified source using a parser of the current thread.
+   *
+   * <p>If the parser of the current thread is already in use, because a handler is parsing
+   * another document, a new parser is used.
+   *
+   * @param source    the XML content to parse
+   * @param handler   the handler
+   * @param namespace whether the parse is namespace aware.
+   *
+   * @throws IOException if thrown while reading the source
+   * @throws SAXException if thrown while parsing the source
+   * @throws ParserConfigurationException if the parser could not be created
+   */
+  public static void parse(InputSource source, DefaultHandler handler, boolean namespace)
+      throws IOException, SAXException, ParserConfigurationException {
+    Factories current = factories;
+    Parsers parsers = PARSERS.get();
+    if (parsers == null || parsers.factories != current) {
+      parsers = new Parsers(current);
+      PARSERS.set(parsers);
+    }
+    SAXParser parser = parsers.acquire(namespace);
+    try {
+      parser.parse(source, handler);
+    } finally {
+      parsers.release(namespace, parser);
+    }
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Creates a configured factory.
+   */
+  private static SAXParserFactory newFactory(String className, boolean namespace) {
+    SAXParserFactory factory = className != null
+        ? SAXParserFactory.newInstance(className, SAXParsers.class.getClassLoader())
+        : SAXParserFactory.newInstance();
+    factory.setNamespaceAware(namespace);
+    factory.setValidating(false);
+    trySetFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    for (String feature : DISABLED_FEATURES) {
+      trySetFeature(factory, feature, false);
+    }
+    return factory;
+  }
+
+  /**
+   * Sets a feature on the factory, ignoring features which the implementation does not support.
+   */
+  private static void trySetFeature(SAXParserFactory factory, String feature, boolean value) {
+    try {
+      factory.setFeature(feature, value);
+    } catch (ParserConfigurationException | SAXException ex) {
+      // Not supported by this implementation
+    }
+  }
+
+  /**
+   * The configured factories.
+   */
+  private static final class Factories {
+
+    /** For namespace aware parsers */
+    private final SAXParserFactory namespaceAware;
+
+    /** For non-namespace aware parsers */
+    private final SAXParserFactory plain;
+
+    Factories(String className) {
+      this.namespaceAware = newFactory(className, true);
+      this.plain = newFactory(className, false);
+    }
+
+    SAXParser newParser(boolean namespace) throws ParserConfigurationException, SAXException {
+      return namespace ? this.namespaceAware.newSAXParser() : this.plain.newSAXParser();
+    }
+  }
+
+  /**
+   * The parsers of a thread.
+   */
+  private static final class Parsers {
+
+    /** The factories used to create the parsers */
+    private final Factories factories;
+
+    /** The idle namespace aware parser */
+    private SAXParser namespaceAware;
+
+    /** The idle non-namespace aware parser */
+    private SAXParser plain;
+
+    Parsers(Factories factories) {
+      this.factories = factories;
+    }
+
+    SAXParser acquire(boolean namespace) throws ParserConfigurationException, SAXException {
+      SAXParser parser = namespace ? this.namespaceAware : this.plain;
+      if (parser == null) return this.factories.newParser(namespace);
+      if (namespace) this.namespaceAware = null;
+      else this.plain = null;
+      return parser;
+    }
+
+    void release(boolean namespace, SAXParser parser) {
+      try {
+        parser.reset();
+        // Do not hold on to the last handler
+        XMLReader reader = parser.getXMLReader();
+        reader.setContentHandler(null);
+        reader.setErrorHandler(null);
+        reader.setEntityResolver(null);
+        reader.setDTDHandler(null);
+      } catch (UnsupportedOperationException | SAXException | NullPointerException ex) {
+        // Cannot be reused
+        return;
+      }
+      if (namespace) this.namespaceAware = parser;
+      else this.plain = parser;
+    }
+  }
+}
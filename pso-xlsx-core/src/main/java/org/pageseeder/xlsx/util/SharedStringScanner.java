@@ -0,0 +1,593 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.pageseeder.xlsx.XLSXException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Indexes the raw UTF-8 bytes of a shared strings part so that each string can be decoded
+ * when it is first needed.
+ *
+ * <p>The part is kept in memory as is and only the offset of each <code>si</code> element is
+ * recorded. A string is decoded from its <code>si</code> element by concatenating the text of
+ * its <code>t</code> elements, like the SAX loader does.
+ *
+ * <p>The prolog and the root element are checked first; if the part is not encoded in UTF-8,
+ * has a document type declaration or does not declare SpreadsheetML as the default namespace,
+ * the scanner is not supported and the part should be parsed with SAX using {@link #remaining()}.
+ */
+final class SharedStringScanner {
+
+  /**
+   * The maximum number of bytes read to find the root element.
+   */
+  private static final int PROLOG_SIZE = 8192;
+
+  /**
+   * The maximum size of a part which can be held in memory.
+   */
+  private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+  private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+  private static final Pattern ATTRIBUTE = Pattern.compile("([^\\s=]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+  /**
+   * The part content.
+   */
+  private final InputStream _in;
+
+  /**
+   * The bytes of the part read so far.
+   */
+  private byte[] data = new byte[PROLOG_SIZE];
+
+  /** The number of bytes read */
+  private int length = 0;
+
+  /** The position of the root start tag */
+  private int rootStart = -1;
+
+  /** The position after the root start tag, -1 if the part cannot be scanned */
+  private int rootEnd = -1;
+
+  /** Whether the root element is empty */
+  private boolean empty = false;
+
+  /** The number of strings declared by the root element or -1 */
+  private int expected = -1;
+
+  /** The bytes of the string being decoded */
+  private final Text text = new Text();
+
+  /**
+   * Creates a new scanner and checks the prolog of the part.
+   *
+   * @param in The content of the shared strings part.
+   *
+   * @throws IOException If thrown while reading the prolog.
+   */
+  SharedStringScanner(InputStream in) throws IOException {
+    this._in = in;
+    prolog();
+  }
+
+  /**
+   * @return <code>true</code> if the part can be scanned; <code>false</code> if it should be parsed with SAX.
+   */
+  boolean isSupported() {
+    return this.rootEnd >= 0;
+  }
+
+  /**
+   * @return the number of strings declared by the <code>uniqueCount</code> attribute or -1.
+   */
+  int expected() {
+    return this.expected;
+  }
+
+  /**
+   * @return the number of bytes held in memory.
+   */
+  int size() {
+    return this.data.length;
+  }
+
+  /**
+   * @return the full content of the part including the bytes already read.
+   */
+  InputStream remaining() {
+    return new SequenceInputStream(new ByteArrayInputStream(this.data, 0, this.length), this._in);
+  }
+
+  /**
+   * Reads the rest of the part in memory.
+   *
+   * @return <code>true</code> if the part was read; <code>false</code> if it is too large and
+   *         should be parsed with SAX using {@link #remaining()}.
+   *
+   * @throws IOException If thrown while reading the part.
+   */
+  boolean load() throws IOException {
+    while (true) {
+      if (this.length == this.data.length) {
+        if (this.length == MAX_SIZE) return false;
+        this.data = Arrays.copyOf(this.data, (int)Math.min(MAX_SIZE, this.data.length * 2L));
+      }
+      int n = this._in.read(this.data, this.length, this.data.length - this.length);
+      if (n < 0) break;
+      this.length += n;
+    }
+    if (this.data.length - this.length > this.data.length / 4) {
+      this.data = Arrays.copyOf(this.data, this.length);
+    }
+    return true;
+  }
+
+  /**
+   * Records the position of each <code>si</code> element in the loaded part.
+   *
+   * @param guard The guard limiting the number of shared strings (may be <code>null</code>).
+   * @return the positions of the <code>si</code> elements.
+   *
+   * @throws XLSXException If the part is not well-formed.
+   */
+  int[] index(ResourceGuard guard) {
+    if (this.empty) return new int[0];
+    int[] starts = new int[this.expected > 0 ? Math.min(this.expected, 1 << 20) : 64];
+    int count = 0;
+    byte[] d = this.data;
+    int depth = 1;
+    int i = this.rootEnd;
+    while (i < this.length) {
+      if (d[i] != '<') {
+        i++;
+        continue;
+      }
+      int b = at(i + 1);
+      if (b == '/') {
+        depth--;
+        i = find('>', i + 2) + 1;
+        if (depth == 0) break;
+      } else if (b == '?') {
+        i = find("?>", i + 2) + 2;
+      } else if (b == '!') {
+        i = skipMarkup(i + 2);
+      } else {
+        int end = endOfTag(i + 1);
+        if (depth == 1 && isName(i + 1, 's', 'i')) {
+          if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+          starts[count++] = i;
+          if (guard != null) guard.checkSharedStrings(count);
+        }
+        if (d[end - 1] != '/') depth++;
+        i = end + 1;
+      }
+    }
+    if (depth > 0) throw new XLSXException("Unexpected end of shared strings");
+    return Arrays.copyOf(starts, count);
+  }
+
+  /**
+   * Decodes the string of the <code>si</code> element at the specified position.
+   *
+   * @param start The position of the <code>si</code> element.
+   * @return the concatenated text of its <code>t</code> elements.
+   *
+   * @throws XLSXException If the element is not well-formed.
+   */
+  String decode(int start) {
+    this.text.length = 0;
+    decode(start, this.text);
+    return new String(this.text.bytes, 0, this.text.length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decodes the string of the <code>si</code> element at the specified position as UTF-8.
+   *
+   * <p>This method only reads the part and can be called by several threads with different
+   * buffers.
+   *
+   * @param start The position of the <code>si</code> element.
+   * @param out   Where the UTF-8 bytes of the string are appended.
+   *
+   * @throws XLSXException If the element is not well-formed.
+   */
+  void decode(int start, Text out) {
+    byte[] d = this.data;
+    int mark = out.length;
+    boolean record = false;
+    int depth = 0;
+    int i = start;
+    do {
+      if (d[i] != '<') {
+        if (!record) {
+          i++;
+        } else if (d[i] == '&') {
+          i = readReference(i + 1, out);
+        } else if (d[i] == '\r') {
+          // Line ends are normalized
+          out.append('\n');
+          i = at(i + 1) == '\n' ? i + 2 : i + 1;
+        } else {
+          // Copy up to the next markup, reference or line end
+          int j = i + 1;
+          while (j < this.length && d[j] != '<' && d[j] != '&' && d[j] != '\r') j++;
+          out.append(d, i, j - i);
+          i = j;
+        }
+        continue;
+      }
+      int b = at(i + 1);
+      if (b == '/') {
+        record = false;
+        depth--;
+        i = find('>', i + 2) + 1;
+      } else if (b == '?') {
+        i = find("?>", i + 2) + 2;
+      } else if (b == '!') {
+        if (record && startsWith(i, "<![CDATA[")) {
+          int end = find("]]>", i + 9);
+          for (int j = i + 9; j < end; j++) out.append(d[j]);
+          i = end + 3;
+        } else {
+          i = skipMarkup(i + 2);
+        }
+      } else {
+        int end = endOfTag(i + 1);
+        // Namespaces declared within the string are left to the SAX parser
+        if (isPrefixed(i + 1) || contains(i, end, "xmlns")) {
+          out.length = mark;
+          for (byte c : parse(start).getBytes(StandardCharsets.UTF_8)) out.append(c);
+          return;
+        }
+        if (d[end - 1] != '/') {
+          depth++;
+          record = isName(i + 1, 't');
+        }
+        i = end + 1;
+      }
+    } while (depth > 0);
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Decodes the <code>si</code> element at the specified position with a SAX parser.
+   */
+  private String parse(int start) {
+    int end;
+    for (int depth = 0, i = start; ; ) {
+      if (this.data[i] != '<') {
+        i++;
+        continue;
+      }
+      int b = at(i + 1);
+      if (b == '/') {
+        i = find('>', i + 2) + 1;
+        if (--depth == 0) {
+          end = i;
+          break;
+        }
+      } else if (b == '?') {
+        i = find("?>", i + 2) + 2;
+      } else if (b == '!') {
+        i = skipMarkup(i + 2);
+      } else {
+        int e = endOfTag(i + 1);
+        if (this.data[e - 1] != '/') depth++;
+        else if (depth == 0) {
+          end = e + 1;
+          break;
+        }
+        i = e + 1;
+      }
+    }
+    // Wrap the element in the root element to keep its namespace declarations
+    ByteArrayOutputStream xml = new ByteArrayOutputStream(this.rootEnd - this.rootStart + end - start + 8);
+    xml.write(this.data, this.rootStart, this.rootEnd - this.rootStart);
+    xml.write(this.data, start, end - start);
+    byte[] close = "</sst>".getBytes(StandardCharsets.US_ASCII);
+    xml.write(close, 0, close.length);
+    final StringBuilder buffer = new StringBuilder();
+    DefaultHandler handler = new DefaultHandler() {
+      private boolean record = false;
+      @Override
+      public void startElement(String uri, String localName, String name, Attributes atts) {
+        this.record = Namespaces.SPREADSHEETML.equals(uri) && "t".equals(localName);
+      }
+      @Override
+      public void endElement(String uri, String localName, String name) {
+        this.record = false;
+      }
+      @Override
+      public void characters(char[] ch, int s, int length) {
+        if (this.record) buffer.append(ch, s, length);
+      }
+    };
+    try {
+      SAXParsers.parse(new InputSource(new ByteArrayInputStream(xml.toByteArray())), handler, true);
+    } catch (IOException | SAXException | ParserConfigurationException ex) {
+      throw new XLSXException("Unable to parse shared string", ex);
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * Checks the prolog and root element, leaving the position after the root start tag.
+   */
+  private void prolog() throws IOException {
+    int end = -1;
+    while (end == -1 && this.length < this.data.length) {
+      int n = this._in.read(this.data, this.length, this.data.length - this.length);
+      if (n < 0) return;
+      this.length += n;
+      end = rootEnd();
+    }
+    if (end >= 0) this.rootEnd = end;
+  }
+
+  /**
+   * Looks for the end of the root start tag in the bytes read so far.
+   *
+   * @return the position after the root start tag, -1 if more bytes are needed or -2 if not supported.
+   */
+  private int rootEnd() {
+    String s = new String(this.data, 0, this.length, StandardCharsets.ISO_8859_1);
+    int i = 0;
+    if (s.startsWith("\u00EF\u00BB\u00BF")) {
+      i = 3;
+    } else if (s.length() > 0 && s.charAt(0) != '<' && !Character.isWhitespace(s.charAt(0))) {
+      // UTF-16 or other encoding
+      return -2;
+    }
+    while (true) {
+      while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+      if (i >= s.length()) return -1;
+      if (s.charAt(i) != '<') return -2;
+      if (s.startsWith("<?", i)) {
+        int end = s.indexOf("?>", i);
+        if (end < 0) return -1;
+        if (s.startsWith("<?xml ", i)) {
+          Matcher m = ENCODING.matcher(s.substring(i, end));
+          if (m.find() && !"UTF-8".equals(m.group(1).toUpperCase(Locale.ROOT))) return -2;
+        }
+        i = end + 2;
+      } else if (s.startsWith("<!--", i)) {
+        int end = s.indexOf("-->", i);
+        if (end < 0) return -1;
+        i = end + 3;
+      } else if (s.startsWith("<!", i)) {
+        // Document type declaration
+        return -2;
+      } else {
+        // Root element
+        int end = i;
+        char quote = 0;
+        while (end < s.length()) {
+          char c = s.charAt(end);
+          if (quote != 0) {
+            if (c == quote) quote = 0;
+          } else if (c == '"' || c == '\'') {
+            quote = c;
+          } else if (c == '>') {
+            break;
+          }
+          end++;
+        }
+        if (end >= s.length()) return -1;
+        String tag = s.substring(i + 1, end);
+        this.empty = tag.endsWith("/");
+        if (!tag.startsWith("sst") || tag.length() == 3
+            || !(Character.isWhitespace(tag.charAt(3)) || tag.charAt(3) == '/')) return -2;
+        boolean spreadsheet = false;
+        Matcher m = ATTRIBUTE.matcher(tag.substring(3));
+        while (m.find()) {
+          String att = m.group(1);
+          String value = m.group(2) != null ? m.group(2) : m.group(3);
+          if ("xmlns".equals(att)) {
+            spreadsheet = Namespaces.SPREADSHEETML.equals(value);
+          } else if (att.startsWith("xmlns:") && Namespaces.SPREADSHEETML.equals(value)) {
+            // Elements may use a prefix
+            return -2;
+          } else if ("uniqueCount".equals(att)) {
+            try {
+              this.expected = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+              return -2;
+            }
+          }
+        }
+        this.rootStart = i;
+        return spreadsheet ? end + 1 : -2;
+      }
+    }
+  }
+
+  /**
+   * @return the byte at the specified position.
+   * @throws XLSXException past the end of the part.
+   */
+  private int at(int i) {
+    if (i >= this.length) throw new XLSXException("Unexpected end of shared strings");
+    return this.data[i];
+  }
+
+  /**
+   * @return the position of the specified byte from the specified position.
+   */
+  private int find(int c, int from) {
+    for (int i = from; i < this.length; i++) {
+      if (this.data[i] == c) return i;
+    }
+    throw new XLSXException("Unexpected end of shared strings");
+  }
+
+  /**
+   * @return the position of the specified ASCII sequence from the specified position.
+   */
+  private int find(String s, int from) {
+    for (int i = find(s.charAt(0), from); ; i = find(s.charAt(0), i + 1)) {
+      if (startsWith(i, s)) return i;
+    }
+  }
+
+  /**
+   * @return whether the bytes at the specified position match the specified ASCII sequence.
+   */
+  private boolean startsWith(int i, String s) {
+    if (i + s.length() > this.length) return false;
+    for (int j = 0; j < s.length(); j++) {
+      if (this.data[i + j] != s.charAt(j)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return whether the bytes between the specified positions contain the specified ASCII sequence.
+   */
+  private boolean contains(int from, int to, String s) {
+    for (int i = from; i + s.length() <= to; i++) {
+      if (startsWith(i, s)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Skips a comment, CDATA section or declaration after '&lt;!'.
+   *
+   * @return the position after the markup.
+   */
+  private int skipMarkup(int i) {
+    if (startsWith(i, "--")) return find("-->", i + 2) + 3;
+    if (startsWith(i, "[CDATA[")) return find("]]>", i + 7) + 3;
+    throw new XLSXException("Unexpected declaration in shared strings");
+  }
+
+  /**
+   * @return the position of the '&gt;' ending the tag starting with the name at the specified position.
+   */
+  private int endOfTag(int i) {
+    int quote = 0;
+    for (; i < this.length; i++) {
+      byte c = this.data[i];
+      if (quote != 0) {
+        if (c == quote) quote = 0;
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i;
+      }
+    }
+    throw new XLSXException("Unexpected end of shared strings");
+  }
+
+  /**
+   * @return whether the element name at the specified position is made of the specified characters.
+   */
+  private boolean isName(int i, char... name) {
+    for (char c : name) {
+      if (at(i++) != c) return false;
+    }
+    int b = at(i);
+    return b == '>' || b == '/' || isSpace(b);
+  }
+
+  /**
+   * @return whether the element name at the specified position has a prefix.
+   */
+  private boolean isPrefixed(int i) {
+    for (int b = at(i); b != '>' && b != '/' && !isSpace(b); b = at(++i)) {
+      if (b == ':') return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reads a character or predefined entity reference after '&amp;'.
+   *
+   * @return the position after the reference.
+   */
+  private int readReference(int i, Text out) {
+    int end = find(';', i);
+    if (end - i > 10) throw new XLSXException("Malformed reference in shared strings");
+    String r = new String(this.data, i, end - i, StandardCharsets.US_ASCII);
+    switch (r) {
+      case "amp":  out.append('&'); break;
+      case "lt":   out.append('<'); break;
+      case "gt":   out.append('>'); break;
+      case "quot": out.append('"'); break;
+      case "apos": out.append('\''); break;
+      default:
+        if (!r.startsWith("#")) throw new XLSXException("Undefined entity "+r+" in shared strings");
+        int codePoint;
+        try {
+          codePoint = r.startsWith("#x") ? Integer.parseInt(r.substring(2), 16) : Integer.parseInt(r.substring(1));
+          for (byte c : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) out.append(c);
+        } catch (IllegalArgumentException ex) {
+          throw new XLSXException("Malformed character reference in shared strings");
+        }
+    }
+    return end + 1;
+  }
+
+  private static boolean isSpace(int b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+
+  /**
+   * A growable buffer for the UTF-8 bytes of decoded strings.
+   */
+  static final class Text {
+
+    /** The bytes */
+    byte[] bytes = new byte[256];
+
+    /** The number of bytes used */
+    int length = 0;
+
+    void append(int b) {
+      if (this.length == this.bytes.length) this.bytes = Arrays.copyOf(this.bytes, this.length * 2);
+      this.bytes[this.length++] = (byte)b;
+    }
+
+    void append(byte[] b, int off, int len) {
+      if (this.length + len > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(this.length + len, this.length * 2));
+      }
+      System.arraycopy(b, off, this.bytes, this.length, len);
+      this.length += len;
+    }
+  }
+
+}
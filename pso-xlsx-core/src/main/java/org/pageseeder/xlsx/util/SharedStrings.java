@@ -15,11 +15,30 @@
  */
 package org.pageseeder.xlsx.util;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import org.pageseeder.xlsx.ResourceLimitException;
 import org.pageseeder.xlsx.XLSXException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -27,37 +46,184 @@ import org.xml.sax.helpers.DefaultHandler;
 /**
  * Stores the shared strings from the Excel Open XML format.
  *
+ * <p>The strings are packed as UTF-8 in a single byte array and located by their offsets,
+ * a string is only decoded when it is requested.
+ *
+ * <p>When there are more strings than the spill threshold, the strings and their offsets are
+ * written to temporary files instead and read back through memory mappings, the most recently
+ * used strings are kept in a small cache. These should be closed when no longer needed.
+ *
+ * <p>When loaded lazily, the part is kept in memory as is and each string is only decoded the
+ * first time it is requested, which saves the cost of decoding strings which are never used.
+ * When loaded in parallel, the strings are decoded by chunks on the fork/join pool.
+ *
+ * <p>The most recently used strings are kept with their escaped form in a small cache indexed
+ * by their position, so that strings which are used many times are neither decoded nor escaped
+ * again while they remain in the cache.
+ *
+ * <p>When rich text is kept, the strings with formatted runs are also rendered once as interim
+ * markup using <code>bold</code>, <code>italic</code>, <code>underline</code> and <code>br</code>
+ * elements.
+ *
  * @author Christophe Lauret
  * @version 19 April 2012
  */
-public final class SharedStrings {
+public final class SharedStrings implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedStrings.class);
+
+  /**
+   * Shared strings are written to disk when there are more than a million of them by default.
+   */
+  public static final int DEFAULT_SPILL_THRESHOLD = 1000000;
+
+  /**
+   * The maximum number of strings to allocate space for upfront, the declared count of
+   * strings is not trusted beyond that.
+   */
+  private static final int MAX_INITIAL_COUNT = 1 << 20;
+
+  /**
+   * The number of decoded strings cached when the strings are on disk.
+   */
+  private static final int CACHE_SIZE = 8192;
+
+  /**
+   * The number of strings kept with their escaped form, must be a power of two.
+   */
+  private static final int ESCAPE_CACHE_SIZE = 8192;
+
+  /**
+   * The number of strings decoded by each task when loading in parallel.
+   */
+  private static final int CHUNK_SIZE = 16384;
+
+  /**
+   * The maximum size of each mapping of a file.
+   */
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * How the shared strings are loaded.
+   */
+  public enum Loading {
+
+    /** All the strings are decoded by the SAX parser as they are read */
+    EAGER,
+
+    /** The strings are decoded when they are first requested */
+    LAZY,
+
+    /** The strings are decoded by chunks in parallel once the part has been read */
+    PARALLEL
+  }
+
+  /**
+   * Where the strings are stored.
+   */
+  private final Table _table;
+
+  /**
+   * The number of shared strings.
+   */
+  private final int _count;
+
+  /**
+   * The interim markup of the strings with rich text by index.
+   */
+  private final Map<Integer, String> _markup;
+
+  /**
+   * The recently used strings and their escaped form by index modulo the size of the cache.
+   */
+  private final Entry[] _cache = new Entry[ESCAPE_CACHE_SIZE];
 
   /**
-   * All the shared strings.
+   * Creates a new shared string instance.
+   *
+   * @param table where the shared strings are stored.
+   * @param count the number of shared strings.
    */
-  private final List<String> _shared;
+  private SharedStrings(Table table, int count) {
+    this(table, count, Collections.<Integer, String>emptyMap());
+  }
 
   /**
    * Creates a new shared string instance.
-   * @param shared the list of shared strings.
+   *
+   * @param table  where the shared strings are stored.
+   * @param count  the number of shared strings.
+   * @param markup the interim markup of the strings with rich text.
    */
-  private SharedStrings(List<String> shared) {
-    this._shared = shared;
+  private SharedStrings(Table table, int count, Map<Integer, String> markup) {
+    this._table = table;
+    this._count = count;
+    this._markup = markup;
   }
 
   /**
    * @param i the index of the shared string.
    * @return the shared string
+   *
+   * @throws IndexOutOfBoundsException if there is no shared string at that index.
    */
   public String get(int i) {
-    return this._shared.get(i);
+    return entry(i).text;
+  }
+
+  /**
+   * Returns the shared string escaped for use as XML text.
+   *
+   * @param i the index of the shared string.
+   * @return the shared string with the characters that cannot appear in text escaped.
+   *
+   * @throws IndexOutOfBoundsException if there is no shared string at that index.
+   */
+  public String getEscaped(int i) {
+    return entry(i).escaped;
+  }
+
+  /**
+   * Returns the shared string as interim markup when it contains rich text.
+   *
+   * <p>The text is escaped and the formatted runs are wrapped in <code>bold</code>,
+   * <code>italic</code> and <code>underline</code> elements; line breaks are kept as
+   * <code>br</code> elements.
+   *
+   * @param i the index of the shared string.
+   * @return the markup or <code>null</code> if the string has no rich text or was not loaded with rich text.
+   */
+  public String getMarkup(int i) {
+    return this._markup.isEmpty() ? null : this._markup.get(i);
   }
 
   /**
    * @return the number of shared strings.
    */
   public int length() {
-    return this._shared.size();
+    return this._count;
+  }
+
+  /**
+   * @return the number of bytes used to store the shared strings, in memory or on disk.
+   */
+  public long memory() {
+    return this._table.memory();
+  }
+
+  /**
+   * @return <code>true</code> if the shared strings are read from disk.
+   */
+  public boolean isMapped() {
+    return this._table instanceof MappedTable;
+  }
+
+  /**
+   * Releases the cache and mappings of shared strings stored on disk.
+   */
+  @Override
+  public void close() {
+    this._table.close();
   }
 
   /**
@@ -67,19 +233,498 @@ public final class SharedStrings {
    * @return links  THe list of files to link.
    */
   public static SharedStrings parse(File shared) {
-    Loader handler = new Loader();
+    Loader handler = new Loader(null, null, -1, false);
     try {
       XML.parse(shared, handler, true);
     } catch (XLSXException ex) {
+      handler.discard();
       throw new XLSXException("Unable to parse shared strings", ex.getCause());
     }
-    return new SharedStrings(handler.getShared());
+    return handler.getShared();
+  }
+
+  /**
+   * Returns the shared strings from the specified part of the package.
+   *
+   * @param pkg  The package containing the shared strings.
+   * @param part The name of the part where all the shared strings are stored.
+   * @return the shared strings.
+   */
+  public static SharedStrings parse(OfficePackage pkg, String part) {
+    return parse(pkg, part, null);
+  }
+
+  /**
+   * Returns the shared strings from the specified part of the package.
+   *
+   * @param pkg   The package containing the shared strings.
+   * @param part  The name of the part where all the shared strings are stored.
+   * @param guard The guard limiting the number of shared strings (may be <code>null</code>).
+   * @return the shared strings.
+   *
+   * @throws ResourceLimitException If there are more shared strings than allowed.
+   */
+  public static SharedStrings parse(OfficePackage pkg, String part, ResourceGuard guard) {
+    return parse(pkg, part, guard, null, -1);
+  }
+
+  /**
+   * Returns the shared strings from the specified part of the package.
+   *
+   * <p>The strings are written to temporary files in the spill directory once their number
+   * exceeds the threshold, either as declared by the <code>uniqueCount</code> attribute or as
+   * they are read.
+   *
+   * @param pkg       The package containing the shared strings.
+   * @param part      The name of the part where all the shared strings are stored.
+   * @param guard     The guard limiting the number of shared strings (may be <code>null</code>).
+   * @param spill     The directory for the temporary files (<code>null</code> for the default).
+   * @param threshold The number of strings above which they are stored on disk, -1 to always
+   *                  keep them in memory.
+   * @return the shared strings.
+   *
+   * @throws ResourceLimitException If there are more shared strings than allowed.
+   */
+  public static SharedStrings parse(OfficePackage pkg, String part, ResourceGuard guard, File spill, int threshold) {
+    return parse(pkg, part, guard, spill, threshold, false);
+  }
+
+  /**
+   * Returns the shared strings from the specified part of the package.
+   *
+   * <p>When rich text is kept, the strings with formatted runs are also rendered as interim
+   * markup as they are read.
+   *
+   * @param pkg       The package containing the shared strings.
+   * @param part      The name of the part where all the shared strings are stored.
+   * @param guard     The guard limiting the number of shared strings (may be <code>null</code>).
+   * @param spill     The directory for the temporary files (<code>null</code> for the default).
+   * @param threshold The number of strings above which they are stored on disk, -1 to always
+   *                  keep them in memory.
+   * @param richtext  Whether to keep the rich text as markup.
+   * @return the shared strings.
+   *
+   * @throws ResourceLimitException If there are more shared strings than allowed.
+   */
+  public static SharedStrings parse(OfficePackage pkg, String part, ResourceGuard guard, File spill, int threshold, boolean richtext) {
+    Loader handler = new Loader(guard, spill, threshold, richtext);
+    try {
+      XML.parse(pkg, part, handler, true);
+    } catch (ResourceLimitException ex) {
+      handler.discard();
+      throw ex;
+    } catch (XLSXException ex) {
+      handler.discard();
+      throw new XLSXException("Unable to parse shared strings", ex.getCause());
+    }
+    return handler.getShared();
+  }
+
+  /**
+   * Returns the shared strings from the specified part of the package.
+   *
+   * <p>Unless loaded eagerly, the part is read in memory and the offset of each string is
+   * recorded in a first pass over the part. When loaded lazily, strings are decoded when they
+   * are first requested; when loaded in parallel, the strings are split in chunks which are
+   * decoded on the common fork/join pool and packed in order. Parts which cannot be scanned or
+   * with more strings than the threshold are always loaded eagerly.
+   *
+   * @param pkg       The package containing the shared strings.
+   * @param part      The name of the part where all the shared strings are stored.
+   * @param guard     The guard limiting the number of shared strings (may be <code>null</code>).
+   * @param spill     The directory for the temporary files (<code>null</code> for the default).
+   * @param threshold The number of strings above which they are stored on disk, -1 to always
+   *                  keep them in memory.
+   * @param loading   How to load the strings.
+   * @return the shared strings.
+   *
+   * @throws ResourceLimitException If there are more shared strings than allowed.
+   */
+  public static SharedStrings parse(OfficePackage pkg, String part, ResourceGuard guard, File spill, int threshold, Loading loading) {
+    if (loading == Loading.EAGER) return parse(pkg, part, guard, spill, threshold);
+    Loader handler = new Loader(guard, spill, threshold, false);
+    try (InputStream in = pkg.open(part)) {
+      SharedStringScanner scanner = new SharedStringScanner(in);
+      int expected = scanner.expected();
+      if (scanner.isSupported() && guard != null) guard.checkSharedStrings(expected);
+      if (scanner.isSupported() && !(threshold >= 0 && expected > threshold) && scanner.load()) {
+        int[] starts = scanner.index(guard);
+        if (expected != starts.length) {
+          LOGGER.warn("Expected {} shared strings but found {}", expected, starts.length);
+        }
+        if (loading == Loading.LAZY) return new SharedStrings(new LazyTable(scanner, starts), starts.length);
+        return new SharedStrings(decode(scanner, starts), starts.length);
+      }
+      // Load the strings from what has been read so far
+      XML.parse(scanner.remaining(), part, handler, true);
+    } catch (IOException ex) {
+      handler.discard();
+      throw new XLSXException("Unable to parse shared strings", ex);
+    } catch (ResourceLimitException ex) {
+      handler.discard();
+      throw ex;
+    } catch (XLSXException ex) {
+      handler.discard();
+      throw new XLSXException("Unable to parse shared strings", ex.getCause() != null ? ex.getCause() : ex);
+    }
+    return handler.getShared();
+  }
+
+  /**
+   * Returns the cached entry for the specified string, replacing the entry in its slot if needed.
+   */
+  private Entry entry(int i) {
+    if (i < 0 || i >= this._count)
+      throw new IndexOutOfBoundsException("Index: "+i+", Size: "+this._count);
+    int slot = i & (ESCAPE_CACHE_SIZE - 1);
+    Entry entry = this._cache[slot];
+    if (entry == null || entry.index != i) {
+      // Entries are immutable so concurrent readers at worst decode the same string twice
+      String text = this._table.get(i);
+      entry = new Entry(i, text, XML.text(text));
+      this._cache[slot] = entry;
+    }
+    return entry;
+  }
+
+  /**
+   * Decodes all the strings in parallel and packs them in order.
+   */
+  private static Table decode(SharedStringScanner scanner, int[] starts) {
+    int chunks = (starts.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    SharedStringScanner.Text[] texts = new SharedStringScanner.Text[chunks];
+    int[] ends = new int[starts.length];
+    ForkJoinPool.commonPool().invoke(new DecodeTask(scanner, starts, ends, texts, 0, chunks));
+    long total = 0;
+    for (SharedStringScanner.Text text : texts) total += text.length;
+    // The strings never take more space than the markup they were decoded from
+    byte[] arena = new byte[(int)total];
+    int[] offsets = new int[starts.length + 1];
+    int base = 0;
+    for (int c = 0; c < chunks; c++) {
+      SharedStringScanner.Text text = texts[c];
+      System.arraycopy(text.bytes, 0, arena, base, text.length);
+      texts[c] = null;
+      for (int i = c * CHUNK_SIZE; i < Math.min(starts.length, (c + 1) * CHUNK_SIZE); i++) {
+        offsets[i + 1] = base + ends[i];
+      }
+      base += text.length;
+    }
+    return new ArenaTable(arena, offsets);
+  }
+
+  /**
+   * Encodes the specified string as UTF-8.
+   *
+   * @param s     The string to encode.
+   * @param bytes Where to write the bytes, at least three times the length of the string from
+   *              the position.
+   * @param pos   The position of the first byte.
+   * @return the position after the last byte.
+   */
+  private static int encode(CharSequence s, byte[] bytes, int pos) {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        bytes[pos++] = (byte)c;
+      } else if (c < 0x800) {
+        bytes[pos++] = (byte)(0xC0 | (c >> 6));
+        bytes[pos++] = (byte)(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i+1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        bytes[pos++] = (byte)(0xF0 | (cp >> 18));
+        bytes[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+        bytes[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+        bytes[pos++] = (byte)(0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogates cannot be encoded
+        bytes[pos++] = '?';
+      } else {
+        bytes[pos++] = (byte)(0xE0 | (c >> 12));
+        bytes[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+        bytes[pos++] = (byte)(0x80 | (c & 0x3F));
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * A string in the cache with its escaped form.
+   */
+  private static final class Entry {
+
+    /** The index of the string. */
+    private final int index;
+
+    /** The string. */
+    private final String text;
+
+    /** The string escaped as XML text. */
+    private final String escaped;
+
+    Entry(int index, String text, String escaped) {
+      this.index = index;
+      this.text = text;
+      this.escaped = escaped;
+    }
+  }
+
+  /**
+   * Where the shared strings are stored.
+   */
+  private interface Table {
+
+    /**
+     * @param i the index of a valid shared string.
+     * @return the shared string
+     */
+    String get(int i);
+
+    /**
+     * @return the number of bytes used to store the shared strings.
+     */
+    long memory();
+
+    /**
+     * Releases the resources used by the table.
+     */
+    void close();
+  }
+
+  /**
+   * Decodes a range of chunks of strings, splitting the range until it is a single chunk.
+   */
+  private static final class DecodeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The raw part. */
+    private final transient SharedStringScanner _scanner;
+
+    /** The position of each string in the part. */
+    private final int[] _starts;
+
+    /** Receives the end of each string in the bytes of its chunk. */
+    private final int[] _ends;
+
+    /** Receives the bytes of each chunk. */
+    private final SharedStringScanner.Text[] _texts;
+
+    /** The first chunk to decode. */
+    private final int _from;
+
+    /** The chunk after the last chunk to decode. */
+    private final int _to;
+
+    DecodeTask(SharedStringScanner scanner, int[] starts, int[] ends, SharedStringScanner.Text[] texts, int from, int to) {
+      this._scanner = scanner;
+      this._starts = starts;
+      this._ends = ends;
+      this._texts = texts;
+      this._from = from;
+      this._to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this._to - this._from > 1) {
+        int middle = (this._from + this._to) >>> 1;
+        invokeAll(new DecodeTask(this._scanner, this._starts, this._ends, this._texts, this._from, middle),
+                  new DecodeTask(this._scanner, this._starts, this._ends, this._texts, middle, this._to));
+      } else if (this._to > this._from) {
+        int first = this._from * CHUNK_SIZE;
+        int last = Math.min(this._starts.length, first + CHUNK_SIZE);
+        SharedStringScanner.Text text = new SharedStringScanner.Text();
+        for (int i = first; i < last; i++) {
+          this._scanner.decode(this._starts[i], text);
+          this._ends[i] = text.length;
+        }
+        this._texts[this._from] = text;
+      }
+    }
+  }
+
+  /**
+   * Shared strings decoded from the raw part when first requested.
+   */
+  private static final class LazyTable implements Table {
+
+    /** The raw part. */
+    private final SharedStringScanner _scanner;
+
+    /** The position of each string in the part. */
+    private final int[] _starts;
+
+    /** The strings decoded so far. */
+    private final String[] _decoded;
+
+    LazyTable(SharedStringScanner scanner, int[] starts) {
+      this._scanner = scanner;
+      this._starts = starts;
+      this._decoded = new String[starts.length];
+    }
+
+    @Override
+    public synchronized String get(int i) {
+      String s = this._decoded[i];
+      if (s == null) {
+        s = this._scanner.decode(this._starts[i]);
+        this._decoded[i] = s;
+      }
+      return s;
+    }
+
+    @Override
+    public long memory() {
+      return this._scanner.size() + 4L * this._starts.length + 4L * this._decoded.length;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Shared strings packed in memory.
+   */
+  private static final class ArenaTable implements Table {
+
+    /** The UTF-8 bytes of all the shared strings. */
+    private final byte[] _arena;
+
+    /** The offset of each string in the arena followed by the end of the last string. */
+    private final int[] _offsets;
+
+    ArenaTable(byte[] arena, int[] offsets) {
+      this._arena = arena;
+      this._offsets = offsets;
+    }
+
+    @Override
+    public String get(int i) {
+      int start = this._offsets[i];
+      return new String(this._arena, start, this._offsets[i+1] - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long memory() {
+      return this._arena.length + 4L * this._offsets.length;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Shared strings read from memory mapped files.
+   */
+  private static final class MappedTable implements Table {
+
+    /** The UTF-8 bytes of all the shared strings. */
+    private final Mapping _data;
+
+    /** The offset of each string as a long followed by the end of the last string. */
+    private final Mapping _index;
+
+    /** The most recently used strings. */
+    private final Map<Integer, String> _cache = new LinkedHashMap<Integer, String>(CACHE_SIZE * 2, .75f, true) {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+
+    MappedTable(Mapping data, Mapping index) {
+      this._data = data;
+      this._index = index;
+    }
+
+    @Override
+    public synchronized String get(int i) {
+      String s = this._cache.get(i);
+      if (s == null) {
+        long start = this._index.getLong(i * 8L);
+        byte[] bytes = new byte[(int)(this._index.getLong(i * 8L + 8) - start)];
+        this._data.get(start, bytes);
+        s = new String(bytes, StandardCharsets.UTF_8);
+        this._cache.put(i, s);
+      }
+      return s;
+    }
+
+    @Override
+    public long memory() {
+      return this._data.size() + this._index.size();
+    }
+
+    @Override
+    public synchronized void close() {
+      this._cache.clear();
+    }
+  }
+
+  /**
+   * A read-only mapping of a file split in segments so that files over 2GB can be mapped.
+   */
+  private static final class Mapping {
+
+    /** The mapped segments of the file. */
+    private final ByteBuffer[] _segments;
+
+    /** The size of the file. */
+    private final long _size;
+
+    /**
+     * Maps the specified file, the file can be deleted once mapped.
+     */
+    Mapping(File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        this._size = channel.size();
+        this._segments = new ByteBuffer[(int)((this._size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < this._segments.length; i++) {
+          long start = (long)i * SEGMENT_SIZE;
+          this._segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, this._size - start));
+        }
+      }
+    }
+
+    long size() {
+      return this._size;
+    }
+
+    /**
+     * Reads a long at a position which is a multiple of 8.
+     */
+    long getLong(long pos) {
+      return this._segments[(int)(pos / SEGMENT_SIZE)].getLong((int)(pos % SEGMENT_SIZE));
+    }
+
+    /**
+     * Reads bytes from the specified position, possibly across segments.
+     */
+    void get(long pos, byte[] bytes) {
+      int copied = 0;
+      while (copied < bytes.length) {
+        ByteBuffer segment = this._segments[(int)(pos / SEGMENT_SIZE)].duplicate();
+        segment.position((int)(pos % SEGMENT_SIZE));
+        int n = Math.min(bytes.length - copied, segment.remaining());
+        segment.get(bytes, copied, n);
+        copied += n;
+        pos += n;
+      }
+    }
   }
 
   /**
    * Loads the shared strings from the shared strings document.
    *
-   * <p>Not this class will not preserve markup or formatting within the shared strings.
+   * <p>Unless rich text is kept, this class will not preserve markup or formatting within the
+   * shared strings. Otherwise the bold, italic and underline properties of runs and the line breaks
+   * are rendered as interim markup for the strings which have them; like the rich text templates,
+   * phonetic runs are left out of the markup.
    *
    * <p>The XML to parse looks like:
    * <pre>{@code
@@ -97,8 +742,17 @@ public final class SharedStrings {
    */
   private static class Loader extends DefaultHandler {
 
-    /** The shared strings. */
-    private final List<String> _shared = new ArrayList<String>();
+    /** The UTF-8 bytes of the shared strings. */
+    private byte[] arena = new byte[1024];
+
+    /** The number of bytes used in the arena or written to disk. */
+    private long size = 0;
+
+    /** The offsets of the shared strings. */
+    private int[] offsets = new int[64];
+
+    /** The number of shared strings. */
+    private int count = 0;
 
     /** Buffer. */
     private StringBuilder buffer = new StringBuilder();
@@ -109,8 +763,64 @@ public final class SharedStrings {
     /** Indicates the number of shared strings we should expect. */
     private int expected = -1;
 
-    /** Sole constructor. */
-    public Loader() {
+    /** Limits the number of shared strings */
+    private final ResourceGuard _guard;
+
+    /** The directory for the temporary files */
+    private final File _spill;
+
+    /** The number of strings above which they are written to disk, -1 to keep them in memory */
+    private final int _threshold;
+
+    /** The temporary file for the strings once spilled */
+    private File dataFile;
+
+    /** The temporary file for the offsets once spilled */
+    private File indexFile;
+
+    /** Where the strings are written once spilled */
+    private OutputStream data;
+
+    /** Where the offsets are written once spilled */
+    private DataOutputStream index;
+
+    /** Whether to render the rich text as markup */
+    private final boolean _richtext;
+
+    /** The markup of the strings with rich text by index */
+    private final Map<Integer, String> markup = new HashMap<>();
+
+    /** The markup of the current string */
+    private final StringBuilder rich = new StringBuilder();
+
+    /** Whether the markup of the current string differs from its text */
+    private boolean isRich = false;
+
+    /** Whether we are within a run */
+    private boolean inRun = false;
+
+    /** Whether we are within a phonetic run */
+    private boolean inPhonetic = false;
+
+    /** Whether the current run is bold, italic or underlined */
+    private boolean bold, italic, underline;
+
+    /** Whether the formatting elements of the current run have been opened */
+    private boolean opened = false;
+
+    /**
+     * Sole constructor.
+     *
+     * @param guard     the guard limiting the number of shared strings (may be <code>null</code>)
+     * @param spill     the directory for the temporary files (may be <code>null</code>)
+     * @param threshold the number of strings above which they are written to disk, -1 to keep them in memory
+     * @param richtext  whether to render the rich text as markup
+     */
+    public Loader(ResourceGuard guard, File spill, int threshold, boolean richtext) {
+      this._guard = guard;
+      this._spill = spill;
+      this._threshold = threshold;
+      this._richtext = richtext;
     }
 
     @Override
@@ -119,10 +829,27 @@ public final class SharedStrings {
       if (Namespaces.SPREADSHEETML.equals(uri)) {
         if ("t".equals(localName)) {
           this.record = true;
+          if (this._richtext) {
+            if (this.inPhonetic) this.isRich = true;
+            else if (this.inRun) openRun();
+          }
         } else if ("si".equals(localName)) {
           this.buffer.setLength(0);
+          this.rich.setLength(0);
+          this.isRich = false;
         } else if ("sst".equals(localName)) {
           this.expected = Integer.parseInt(atts.getValue("uniqueCount"));
+          // Fail before loading any string when the declared count is too high
+          if (this._guard != null) this._guard.checkSharedStrings(this.expected);
+          if (this._threshold >= 0 && this.expected > this._threshold) {
+            spill();
+          } else if (this.expected > 0) {
+            int initial = Math.min(this.expected, MAX_INITIAL_COUNT);
+            this.offsets = new int[initial + 1];
+            this.arena = new byte[initial * 16];
+          }
+        } else if (this._richtext && !this.inPhonetic) {
+          startRichElement(localName);
         }
       }
     }
@@ -131,12 +858,19 @@ public final class SharedStrings {
     public void endElement(String uri, String localName, String name) throws SAXException {
       if (Namespaces.SPREADSHEETML.equals(uri)) {
         if ("si".equals(localName)) {
-          this._shared.add(this.buffer.toString());
+          if (this.isRich) this.markup.put(this.count, this.rich.toString());
+          add(this.buffer);
+          if (this._guard != null) this._guard.checkSharedStrings(this.count);
         } else if ("t".equals(localName)) {
           this.record = false;
+        } else if ("r".equals(localName)) {
+          if (this.opened) closeRun();
+          this.inRun = false;
+        } else if ("rPh".equals(localName)) {
+          this.inPhonetic = false;
         } else if ("sst".equals(localName)) {
-          if (this.expected != this._shared.size()) {
-            System.err.println("Expected "+this.expected+" but found "+this._shared.size());
+          if (this.expected != this.count) {
+            System.err.println("Expected "+this.expected+" but found "+this.count);
           }
         }
       }
@@ -144,17 +878,195 @@ public final class SharedStrings {
 
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
-      if (this.record)
+      if (this.record) {
         this.buffer.append(ch, start, length);
+        if (this._richtext && !this.inPhonetic) {
+          for (int i = start; i < start + length; i++) {
+            char c = ch[i];
+            if (c == '&') this.rich.append("&amp;");
+            else if (c == '<') this.rich.append("&lt;");
+            else this.rich.append(c);
+          }
+        }
+      }
+    }
+
+    /**
+     * Handles the elements which affect the rich text of the current string.
+     */
+    private void startRichElement(String localName) {
+      switch (localName) {
+        case "r":
+          this.inRun = true;
+          this.bold = false;
+          this.italic = false;
+          this.underline = false;
+          this.opened = false;
+          break;
+        case "rPh":
+          this.inPhonetic = true;
+          break;
+        case "b":
+          if (this.inRun) this.bold = true;
+          break;
+        case "i":
+          if (this.inRun) this.italic = true;
+          break;
+        case "u":
+          if (this.inRun) this.underline = true;
+          break;
+        case "br":
+          if (this.inRun) {
+            openRun();
+            this.rich.append("<br/>");
+            this.isRich = true;
+          }
+          break;
+        default:
+      }
+    }
+
+    /**
+     * Opens the formatting elements of the current run before its first text or break.
+     */
+    private void openRun() {
+      if (this.opened) return;
+      this.opened = true;
+      if (this.bold) this.rich.append("<bold>");
+      if (this.italic) this.rich.append("<italic>");
+      if (this.underline) this.rich.append("<underline>");
+      if (this.bold || this.italic || this.underline) this.isRich = true;
+    }
+
+    /**
+     * Closes the formatting elements of the current run.
+     */
+    private void closeRun() {
+      if (this.underline) this.rich.append("</underline>");
+      if (this.italic) this.rich.append("</italic>");
+      if (this.bold) this.rich.append("</bold>");
+      this.opened = false;
     }
 
     /**
      * @return the shared strings found.
      */
-    public List<String> getShared() {
-      return this._shared;
+    public SharedStrings getShared() {
+      if (this.data != null) {
+        try {
+          this.data.close();
+          this.index.close();
+          Mapping strings = new Mapping(this.dataFile);
+          Mapping offsets = new Mapping(this.indexFile);
+          return new SharedStrings(new MappedTable(strings, offsets), this.count, this.markup);
+        } catch (IOException ex) {
+          throw new XLSXException("Unable to map shared strings", ex);
+        } finally {
+          // The mappings remain valid once the files are deleted
+          discard();
+        }
+      }
+      // Only trim when a large part of the arena is unused
+      int used = (int)this.size;
+      byte[] bytes = this.arena.length - used > this.arena.length / 4 ? Arrays.copyOf(this.arena, used) : this.arena;
+      return new SharedStrings(new ArenaTable(bytes, this.offsets), this.count, this.markup);
+    }
+
+    /**
+     * Closes and deletes the temporary files if any.
+     */
+    public void discard() {
+      try {
+        if (this.data != null) this.data.close();
+        if (this.index != null) this.index.close();
+      } catch (IOException ex) {
+        // oh well we tried
+      }
+      delete(this.dataFile);
+      delete(this.indexFile);
+    }
+
+    /**
+     * Adds the specified string.
+     */
+    private void add(CharSequence s) {
+      if (this.data == null && this._threshold >= 0
+          && (this.count >= this._threshold || this.size + 3L * s.length() > Integer.MAX_VALUE - 8)) {
+        spill();
+      }
+      if (this.data != null) {
+        write(s);
+        return;
+      }
+      if (this.count + 1 == this.offsets.length) {
+        this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+      }
+      ensureCapacity(this.size + 3L * s.length());
+      this.size = encode(s, this.arena, (int)this.size);
+      this.offsets[++this.count] = (int)this.size;
+    }
+
+    /**
+     * Writes the specified string to disk.
+     */
+    private void write(CharSequence s) {
+      // The arena is no longer needed and is reused as a buffer
+      if (this.arena.length < 3 * s.length()) {
+        this.arena = new byte[3 * s.length()];
+      }
+      int length = encode(s, this.arena, 0);
+      try {
+        this.data.write(this.arena, 0, length);
+        this.size += length;
+        this.index.writeLong(this.size);
+        this.count++;
+      } catch (IOException ex) {
+        throw new XLSXException("Unable to write shared strings", ex);
+      }
+    }
+
+    /**
+     * Moves the strings loaded so far to temporary files, the following strings are written
+     * to the files directly.
+     */
+    private void spill() {
+      try {
+        this.dataFile = File.createTempFile("xlsx-", ".sst", this._spill);
+        this.data = new BufferedOutputStream(new FileOutputStream(this.dataFile), 1 << 16);
+        this.indexFile = File.createTempFile("xlsx-", ".idx", this._spill);
+        this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.indexFile), 1 << 16));
+        this.data.write(this.arena, 0, (int)this.size);
+        for (int i = 0; i <= this.count; i++) {
+          this.index.writeLong(this.offsets[i]);
+        }
+      } catch (IOException ex) {
+        discard();
+        throw new XLSXException("Unable to write shared strings", ex);
+      }
+      this.arena = new byte[1024];
+      this.offsets = null;
+    }
+
+    /**
+     * Grows the arena so that it can hold the specified number of bytes.
+     */
+    private void ensureCapacity(long capacity) {
+      if (capacity <= this.arena.length) return;
+      if (capacity > Integer.MAX_VALUE - 8)
+        throw new XLSXException("Shared strings exceed the maximum size of "+(Integer.MAX_VALUE - 8)+" bytes");
+      long grown = Math.min(this.arena.length + (this.arena.length >> 1) + 16L, Integer.MAX_VALUE - 8);
+      this.arena = Arrays.copyOf(this.arena, (int)Math.max(capacity, grown));
     }
-  }
 
+    /**
+     * Deletes a temporary file.
+     */
+    private static void delete(File file) {
+      if (file != null && file.exists() && !file.delete()) {
+        // Mapped files cannot be deleted on some platforms
+        file.deleteOnExit();
+      }
+    }
+  }
 
 }
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.pageseeder.xlsx.XLSXException;
+
+/**
+ * An Office Open XML package read from a forward-only stream.
+ *
+ * <p>Parts are read in the order they appear in the zip. When the part being opened is the
+ * next entry in the stream, it is read directly from the stream without being buffered. Parts
+ * that appear before they are needed, for example work sheets stored before the shared strings,
+ * are buffered as they are passed: in memory up to a limit and in temporary files beyond it.
+ *
+ * <p>Each part can only be opened once and opening a part invalidates any stream previously
+ * returned for a part that comes earlier in the zip. Use {@link #retain(Collection)} to declare
+ * which parts will be needed so that other parts are skipped instead of buffered.
+ *
+ * <p>Methods are synchronized so that parts can be opened from another thread, but a stream
+ * returned by this package should only be read by one thread.
+ */
+public final class StreamingPackage implements OfficePackage {
+
+  /**
+   * The default maximum number of bytes buffered in memory (16MB).
+   */
+  public static final long DEFAULT_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+  /**
+   * The zip stream.
+   */
+  private final ZipInputStream _zip;
+
+  /**
+   * The folder for parts which do not fit in memory.
+   */
+  private final File _spill;
+
+  /**
+   * The maximum number of bytes buffered in memory.
+   */
+  private final long _memoryLimit;
+
+  /**
+   * The guard enforcing the resource limits.
+   */
+  private final ResourceGuard _guard;
+
+  /**
+   * The name of each part seen so far mapped to its lower case name.
+   */
+  private final Map<String, String> _seen = new LinkedHashMap<>();
+
+  /**
+   * The buffered parts mapped to their lower case name.
+   */
+  private final Map<String, Buffer> _buffers = new HashMap<>();
+
+  /**
+   * The lower case names of the parts to buffer, <code>null</code> to buffer all parts.
+   */
+  private Set<String> retained = null;
+
+  /**
+   * The number of bytes currently buffered in memory.
+   */
+  private long memory = 0;
+
+  /**
+   * The entry the zip stream is positioned on.
+   */
+  private ZipEntry current = null;
+
+  /**
+   * The stream returned for the current entry if it was opened.
+   */
+  private Live live = null;
+
+  /**
+   * Whether the end of the zip was reached.
+   */
+  private boolean ended = false;
+
+  /**
+   * Creates a new package buffering up to {@value #DEFAULT_MEMORY_LIMIT} bytes in memory.
+   *
+   * @param in    The stream to read the zip from, it is not closed by this package.
+   * @param spill The folder for parts which do not fit in memory.
+   */
+  public StreamingPackage(InputStream in, File spill) {
+    this(in, spill, DEFAULT_MEMORY_LIMIT);
+  }
+
+  /**
+   * Creates a new package.
+   *
+   * @param in          The stream to read the zip from, it is not closed by this package.
+   * @param spill       The folder for parts which do not fit in memory.
+   * @param memoryLimit The maximum number of bytes to buffer in memory.
+   */
+  public StreamingPackage(InputStream in, File spill, long memoryLimit) {
+    this(in, spill, memoryLimit, new ResourceGuard(ResourceLimits.NONE));
+  }
+
+  /**
+   * Creates a new package which enforces resource limits.
+   *
+   * <p>The limits apply to the parts as they are read from the stream, including the parts
+   * which are buffered.
+   *
+   * @param in          The stream to read the zip from, it is not closed by this package.
+   * @param spill       The folder for parts which do not fit in memory.
+   * @param memoryLimit The maximum number of bytes to buffer in memory.
+   * @param guard       The guard enforcing the resource limits.
+   */
+  public StreamingPackage(InputStream in, File spill, long memoryLimit, ResourceGuard guard) {
+    this._guard = guard;
+    this._zip = new ZipInputStream(new FilterInputStream(in) {
+      @Override
+      public void close() {
+        // The caller owns the stream
+      }
+    });
+    this._spill = spill;
+    this._memoryLimit = memoryLimit;
+  }
+
+  /**
+   * Declares the parts that will be opened.
+   *
+   * <p>Other parts which are passed in the stream are skipped instead of being buffered.
+   *
+   * @param parts the names of the parts to retain.
+   */
+  public synchronized void retain(Collection<String> parts) {
+    Set<String> keys = new HashSet<>();
+    for (String part : parts) {
+      keys.add(key(part));
+    }
+    this.retained = keys;
+  }
+
+  /**
+   * Declares parts which were retained but will not be opened.
+   *
+   * <p>The parts are released if they have already been buffered and skipped otherwise.
+   *
+   * @param parts the names of the parts to discard.
+   */
+  public synchronized void discard(Collection<String> parts) {
+    for (String part : parts) {
+      String key = key(part);
+      if (this.retained != null) this.retained.remove(key);
+      Buffer buffer = this._buffers.remove(key);
+      if (buffer != null) buffer.release();
+    }
+  }
+
+  @Override
+  public String name() {
+    return "stream";
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Parts are read from the stream until the part is found; if the package does not
+   * contain the part, the rest of the stream is read.
+   */
+  @Override
+  public synchronized boolean contains(String part) {
+    try {
+      return seek(key(part));
+    } catch (IOException ex) {
+      throw new XLSXException("Unable to read package stream", ex);
+    }
+  }
+
+  @Override
+  public synchronized InputStream open(String part) throws IOException {
+    String key = key(part);
+    if (!seek(key))
+      throw new FileNotFoundException("No part "+part+" in package");
+    Buffer buffer = this._buffers.remove(key);
+    if (buffer != null) return buffer.open();
+    if (this.current != null && this.live == null && key(this.current.getName()).equals(key)) {
+      this.live = new Live(entry());
+      return this.live;
+    }
+    throw new IOException("Part "+part+" was already read from the stream or skipped");
+  }
+
+  @Override
+  public synchronized long compressedSize(String part) {
+    String key = key(part);
+    Buffer buffer = this._buffers.get(key);
+    if (buffer != null) return buffer.compressedSize;
+    if (this.current != null && key(this.current.getName()).equals(key)) return this.current.getCompressedSize();
+    return -1;
+  }
+
+  @Override
+  public synchronized long size(String part) {
+    String key = key(part);
+    Buffer buffer = this._buffers.get(key);
+    if (buffer != null) return buffer.size;
+    if (this.current != null && key(this.current.getName()).equals(key)) return this.current.getSize();
+    return -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>This method reads the rest of the stream.
+   */
+  @Override
+  public synchronized Collection<String> parts() {
+    try {
+      while (!this.ended) {
+        next();
+      }
+    } catch (IOException ex) {
+      throw new XLSXException("Unable to read package stream", ex);
+    }
+    return new ArrayList<>(this._seen.values());
+  }
+
+  /**
+   * Deletes any temporary file; the underlying stream is not closed.
+   */
+  @Override
+  public synchronized void close() {
+    for (Buffer buffer : this._buffers.values()) {
+      buffer.release();
+    }
+    this._buffers.clear();
+    if (this.live != null) this.live.valid = false;
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Reads the stream until the specified part has been seen.
+   *
+   * @return <code>true</code> if the part was found.
+   */
+  private boolean seek(String key) throws IOException {
+    while (!this._seen.containsKey(key) && !this.ended) {
+      next();
+    }
+    return this._seen.containsKey(key);
+  }
+
+  /**
+   * Moves to the next entry, buffering the current entry if it was not opened.
+   */
+  private void next() throws IOException {
+    if (this.current != null) {
+      String key = key(this.current.getName());
+      if (this.live != null) {
+        this.live.valid = false;
+        this.live = null;
+      } else if (this.retained == null || this.retained.contains(key)) {
+        this._buffers.put(key, buffer());
+      } else {
+        skip();
+      }
+    }
+    ZipEntry entry = this._zip.getNextEntry();
+    while (entry != null && entry.isDirectory()) {
+      entry = this._zip.getNextEntry();
+    }
+    this.current = entry;
+    if (entry != null) {
+      String name = entry.getName().startsWith("/") ? entry.getName().substring(1) : entry.getName();
+      this._seen.put(key(name), name);
+      this._guard.checkEntries(this._seen.size());
+    } else {
+      this.ended = true;
+    }
+  }
+
+  /**
+   * @return the content of the current entry, guarded by the resource limits.
+   */
+  private InputStream entry() {
+    // An entry followed by a data descriptor only has a compressed size once it has been read
+    ZipEntry entry = this.current;
+    return this._guard.guard(entry.getName(), this._zip, entry.getSize(), entry::getCompressedSize);
+  }
+
+  /**
+   * Skips the current entry, it is still inflated so the limits apply.
+   */
+  private void skip() throws IOException {
+    InputStream in = entry();
+    byte[] chunk = new byte[8192];
+    while (in.read(chunk) != -1) {
+      // discard
+    }
+  }
+
+  /**
+   * Buffers the rest of the current entry in memory or in a temporary file.
+   */
+  private Buffer buffer() throws IOException {
+    InputStream in = entry();
+    ByteArrayOutputStream data = new ByteArrayOutputStream(8192);
+    File file = null;
+    OutputStream out = data;
+    long size = 0;
+    try {
+      byte[] chunk = new byte[8192];
+      int count;
+      while ((count = in.read(chunk)) != -1) {
+        if (file == null && this.memory + size + count > this._memoryLimit) {
+          file = File.createTempFile("xlsx-", ".part", this._spill);
+          out = new BufferedOutputStream(new FileOutputStream(file));
+          data.writeTo(out);
+          data = null;
+        }
+        out.write(chunk, 0, count);
+        size += count;
+      }
+    } catch (IOException | RuntimeException ex) {
+      out.close();
+      if (file != null) file.delete();
+      throw ex;
+    }
+    out.close();
+    // The compressed size is known once the entry has been read
+    long compressedSize = this.current.getCompressedSize();
+    if (file != null) return new Buffer(file, size, compressedSize);
+    this.memory += size;
+    return new Buffer(data.toByteArray(), compressedSize);
+  }
+
+  /**
+   * @return the key to use for the specified part name.
+   */
+  private static String key(String part) {
+    String name = part.startsWith("/") ? part.substring(1) : part;
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * A part buffered in memory or in a temporary file.
+   */
+  private final class Buffer {
+
+    /** The content if in memory */
+    private byte[] data;
+
+    /** The temporary file otherwise */
+    private final File file;
+
+    /** The size of the part */
+    private final long size;
+
+    /** The compressed size of the part */
+    private final long compressedSize;
+
+    Buffer(byte[] data, long compressedSize) {
+      this.data = data;
+      this.file = null;
+      this.size = data.length;
+      this.compressedSize = compressedSize;
+    }
+
+    Buffer(File file, long size, long compressedSize) {
+      this.data = null;
+      this.file = file;
+      this.size = size;
+      this.compressedSize = compressedSize;
+    }
+
+    /**
+     * Opens the buffered part, the buffer is released when the stream is closed.
+     */
+    InputStream open() throws IOException {
+      InputStream in = this.data != null ? new ByteArrayInputStream(this.data) : new BufferedInputStream(new FileInputStream(this.file));
+      return new FilterInputStream(in) {
+        @Override
+        public void close() throws IOException {
+          super.close();
+          synchronized (StreamingPackage.this) {
+            release();
+          }
+        }
+      };
+    }
+
+    /**
+     * Frees the memory or deletes the temporary file.
+     */
+    void release() {
+      if (this.data != null) {
+        StreamingPackage.this.memory -= this.size;
+        this.data = null;
+      }
+      if (this.file != null) {
+        this.file.delete();
+      }
+    }
+  }
+
+  /**
+   * Reads the current entry directly from the zip stream.
+   */
+  private static final class Live extends FilterInputStream {
+
+    /** Set to false when the stream moves past this entry */
+    private volatile boolean valid = true;
+
+    Live(InputStream zip) {
+      super(zip);
+    }
+
+    @Override
+    public int read() throws IOException {
+      check();
+      return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      check();
+      return super.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      check();
+      return super.skip(n);
+    }
+
+    @Override
+    public void close() {
+      // The rest of the entry is skipped when the stream moves to the next one
+    }
+
+    private void check() throws IOException {
+      if (!this.valid) throw new IOException("The package stream has moved past this part");
+    }
+  }
+}
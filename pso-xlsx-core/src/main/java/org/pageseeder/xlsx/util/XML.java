@@ -10,8 +10,6 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.pageseeder.xlsx.XLSXException;
 import org.xml.sax.InputSource;
@@ -69,11 +67,7 @@ public final class XML {
    */
   public static void parse(File file, DefaultHandler handler, boolean namespace) {
     try (InputStream in = new FileInputStream(file)) {
-      InputSource source = new InputSource(in);
-      SAXParserFactory factory = SAXParserFactory.newInstance();
-      factory.setNamespaceAware(namespace);
-      SAXParser parser = factory.newSAXParser();
-      parser.parse(source, handler);
+      SAXParsers.parse(new InputSource(in), handler, namespace);
     } catch (IOException ex) {
       throw new XLSXException("Unable to parse file "+file.getAbsolutePath(), ex);
     } catch (SAXException ex) {
@@ -83,6 +77,44 @@ public final class XML {
     }
   }
 
+  /**
+   * Parses the specified part of an Office package.
+   *
+   * <p>The part is streamed from the package and not extracted.
+   *
+   * @param pkg       the package containing the part
+   * @param part      the name of the part to parse
+   * @param handler   the handler
+   * @param namespace whether the parse is namespace aware.
+   */
+  public static void parse(OfficePackage pkg, String part, DefaultHandler handler, boolean namespace) {
+    try (InputStream in = pkg.open(part)) {
+      parse(in, part, handler, namespace);
+    } catch (IOException ex) {
+      throw new XLSXException("Unable to parse part "+part, ex);
+    }
+  }
+
+  /**
+   * Parses the specified input stream.
+   *
+   * @param in        the XML content to parse
+   * @param name      the name of the content for error messages
+   * @param handler   the handler
+   * @param namespace whether the parse is namespace aware.
+   */
+  public static void parse(InputStream in, String name, DefaultHandler handler, boolean namespace) {
+    try {
+      SAXParsers.parse(new InputSource(in), handler, namespace);
+    } catch (IOException ex) {
+      throw new XLSXException("Unable to parse "+name, ex);
+    } catch (SAXException ex) {
+      throw new XLSXException("Error while parsing "+name, ex);
+    } catch (ParserConfigurationException ex) {
+      throw new XLSXException("Unable to configure parser", ex);
+    }
+  }
+
   /**
    * Escapes the character data within an element for an UTF-8 encoded XML document.
    *
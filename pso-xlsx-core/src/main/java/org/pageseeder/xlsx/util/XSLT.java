@@ -114,6 +114,28 @@ public final class XSLT {
     }
   }
 
+  /**
+   * Utility function to transforms the specified XML source and writes the results to a stream.
+   *
+   * <p>The output stream should be buffered, it is flushed but not closed.
+   *
+   * @param source     The Source XML data.
+   * @param out        Where the results should be written.
+   * @param templates  The XSLT templates to use.
+   * @param parameters Parameters to transmit to the transformer for use by the stylesheet (optional)
+   *
+   * @throws XLSXException For XSLT Transformation errors or XSLT configuration errors
+   */
+  public static void transform(File source, OutputStream out, Templates templates, Map<String, String> parameters) {
+    try (InputStream in = new FileInputStream(source)) {
+      Source src = new StreamSource(new BufferedInputStream(in), source.toURI().toString());
+      transform(src, new StreamResult(out), templates, parameters);
+      out.flush();
+    } catch (IOException ex) {
+      throw new XLSXException(ex);
+    }
+  }
+
   /**
    * Utility function to transforms the specified XML source and returns the results as XML.
    *
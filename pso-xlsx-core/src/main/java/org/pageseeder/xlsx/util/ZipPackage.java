@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.xlsx.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An Office Open XML package backed by a {@link ZipFile}.
+ *
+ * <p>Parts are inflated on demand as they are read, nothing is written to disk.
+ *
+ * <p>Part names in OPC are case-insensitive, so lookups ignore the case of the entry names.
+ */
+public final class ZipPackage implements OfficePackage {
+
+  /**
+   * The underlying zip file.
+   */
+  private final ZipFile _zip;
+
+  /**
+   * The zip entries mapped to their lower case part name.
+   */
+  private final Map<String, ZipEntry> _entries;
+
+  /**
+   * Opens the specified file as a package.
+   *
+   * @param file The XLSX file
+   *
+   * @throws IOException If the file cannot be opened as a zip.
+   */
+  public ZipPackage(File file) throws IOException {
+    this._zip = new ZipFile(file);
+    this._entries = index(this._zip);
+  }
+
+  @Override
+  public String name() {
+    return this._zip.getName();
+  }
+
+  @Override
+  public boolean contains(String part) {
+    return this._entries.containsKey(key(part));
+  }
+
+  @Override
+  public InputStream open(String part) throws IOException {
+    ZipEntry entry = this._entries.get(key(part));
+    if (entry == null)
+      throw new FileNotFoundException("No part "+part+" in package "+name());
+    return this._zip.getInputStream(entry);
+  }
+
+  @Override
+  public long size(String part) {
+    ZipEntry entry = this._entries.get(key(part));
+    return entry != null ? entry.getSize() : -1;
+  }
+
+  @Override
+  public long compressedSize(String part) {
+    ZipEntry entry = this._entries.get(key(part));
+    return entry != null ? entry.getCompressedSize() : -1;
+  }
+
+  @Override
+  public Collection<String> parts() {
+    List<String> parts = new ArrayList<>(this._entries.size());
+    for (ZipEntry entry : this._entries.values()) {
+      parts.add(entry.getName());
+    }
+    return Collections.unmodifiableList(parts);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this._zip.close();
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Index the file entries in the zip.
+   */
+  private static Map<String, ZipEntry> index(ZipFile zip) {
+    Map<String, ZipEntry> entries = new LinkedHashMap<>();
+    for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+      ZipEntry entry = e.nextElement();
+      if (!entry.isDirectory()) {
+        entries.put(key(entry.getName()), entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * @return the key to use for the specified part name.
+   */
+  private static String key(String part) {
+    String name = part.startsWith("/") ? part.substring(1) : part;
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+}
@@ -80,6 +80,12 @@ public class StyleHandler extends DefaultHandler {
     }
   }
 
+  @Override
+  public void endDocument() throws SAXException {
+    // Cell formats are classified once so that each cell only needs to look up its kind
+    this.style.classify();
+  }
+
   public Style getStyle() {
     return this.style;
   }
@@ -0,0 +1,66 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+import org.pageseeder.xlsx.config.TransformConfigBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_ArchiveTest {
+
+  @Test
+  public void testArchive() throws IOException {
+    for (File sample : new File[] { TransformTestUtils.SAMPLE, TransformTestUtils.SAMPLE2 }) {
+      for (SplitLevel level : SplitLevel.values()) {
+        String name = "archive/" + sample.getName().replace(".xlsx", "") + "-" + level;
+        Map<String, String> expected = transform(name + "-folder", builder(sample, level));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, archive(name + "-stored", builder(sample, level), Deflater.NO_COMPRESSION));
+        Assert.assertEquals(expected, archive(name + "-deflated", builder(sample, level), Deflater.DEFAULT_COMPRESSION));
+      }
+    }
+  }
+
+  /**
+   * Processes the workbook into a new archive.
+   *
+   * @return the content of each entry by name
+   */
+  private static Map<String, String> archive(String name, TransformConfigBuilder builder, int level) throws IOException {
+    File archive = new File(TransformTestUtils.DEFAULT_OUTPUT_ROOT_FOLDER, name + ".zip");
+    File working = new File(TransformTestUtils.DEFAULT_OUTPUT_ROOT_FOLDER, name + "-working");
+    archive.delete();
+    TransformTestUtils.delete(working);
+    builder.archive(archive).archiveCompression(level);
+    builder.working(working);
+    new TransformProcessor(builder.build()).process();
+    Map<String, String> entries = new TreeMap<>();
+    try (ZipFile zip = new ZipFile(archive)) {
+      for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+        ZipEntry entry = e.nextElement();
+        Assert.assertEquals(entry.getName(), level == Deflater.NO_COMPRESSION ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = zip.getInputStream(entry)) {
+          TransformTestUtils.copy(in, content);
+        }
+        entries.put(entry.getName(), new String(content.toByteArray(), StandardCharsets.UTF_8));
+      }
+    }
+    return entries;
+  }
+
+}
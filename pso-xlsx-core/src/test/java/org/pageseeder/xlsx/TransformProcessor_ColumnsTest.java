@@ -0,0 +1,50 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.replace;
+import static org.pageseeder.xlsx.TransformTestUtils.sharedStrings;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_ColumnsTest {
+
+  @Test
+  public void testColumns_ShortTitles() throws IOException {
+    // The titles are SKU, C and QTY
+    byte[] input = replace(TransformTestUtils.SAMPLE, "xl/sharedStrings.xml", sharedStrings("SKU", "C", "Value 1a", "Value 1b",
+        "Value 2b", "Value 2a", "QTY", "file-1.psml", "file-2.psml"));
+
+    String workbook = transform("columns/title", builder(input, SplitLevel.workbook).columns("C")).get("workbook.xml");
+    Assert.assertTrue(workbook, workbook.contains("Value 1b"));
+    Assert.assertFalse(workbook, workbook.contains("file-1.psml"));
+
+    workbook = transform("columns/sku", builder(input, SplitLevel.workbook).columns("SKU")).get("workbook.xml");
+    Assert.assertTrue(workbook, workbook.contains("Value 1a"));
+    Assert.assertFalse(workbook, workbook.contains("Value 1b"));
+
+    // Letters still select the columns without such a title
+    workbook = transform("columns/letter", builder(input, SplitLevel.workbook).columns("A")).get("workbook.xml");
+    Assert.assertTrue(workbook, workbook.contains("Value 1a"));
+    Assert.assertFalse(workbook, workbook.contains("Value 1b"));
+  }
+
+  @Test
+  public void testColumns_FilenameColumn() throws IOException {
+    // The filename column (C) is not one of the selected columns
+    Map<String, String> files = transform("columns/filename", builder(TransformTestUtils.SAMPLE, SplitLevel.row).columns("A", "B"));
+    Assert.assertFalse(files.toString(), files.keySet().stream().anyMatch(path -> path.endsWith("0001.xml")));
+    String row = files.entrySet().stream().filter(e -> e.getKey().endsWith("file_1_psml.xml")).map(Map.Entry::getValue).findFirst().orElse(null);
+    Assert.assertNotNull(files.keySet().toString(), row);
+    Assert.assertTrue(row, row.contains("Value 1a"));
+    Assert.assertTrue(row, row.contains("Value 1b"));
+    Assert.assertFalse(row, row.contains(">file-1.psml<"));
+    Assert.assertEquals(files, transform("columns/filename-sax", builder(TransformTestUtils.SAMPLE, SplitLevel.row).columns("A", "B").scanning(false)));
+  }
+
+}
@@ -0,0 +1,71 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+import org.pageseeder.xlsx.config.TransformConfigBuilder;
+import org.pageseeder.xlsx.util.ResourceLimits;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_LimitsTest {
+
+  private static final ResourceLimits GENEROUS = new ResourceLimits(1024 * 1024, 256 * 1024, 1000, 20, 10);
+
+  @Test
+  public void testLimits() throws IOException {
+    byte[] input = Files.readAllBytes(TransformTestUtils.SAMPLE.toPath());
+    Map<String, String> expected = transform("limits/default", builder(input, SplitLevel.workbook));
+    Assert.assertEquals(expected, transform("limits/generous", builder(input, SplitLevel.workbook).limits(GENEROUS)));
+    Assert.assertEquals(expected, transform("limits/generous-streaming", builder(SplitLevel.workbook)
+        .input(new ByteArrayInputStream(input)).streaming(true).limits(GENEROUS)));
+
+    // The sample has 11 entries and 9 shared strings, the styles part alone has 16726 bytes,
+    // only the parts which are read count and, when streaming, the entries before the last part needed
+    assertLimitExceeded("maxEntries", input, new ResourceLimits(-1, -1, -1, 5, -1));
+    assertLimitExceeded("maxSharedStrings", input, new ResourceLimits(-1, -1, -1, -1, 8));
+    assertLimitExceeded("maxPartSize", input, new ResourceLimits(-1, 16000, -1, -1, -1));
+    assertLimitExceeded("maxTotalSize", input, new ResourceLimits(20000, -1, -1, -1, -1));
+  }
+
+  @Test
+  public void testCompressionRatio() throws IOException {
+    byte[] input = Files.readAllBytes(TransformTestUtils.SAMPLE.toPath());
+    Map<String, String> expected = transform("limits/default", builder(input, SplitLevel.workbook));
+
+    // Compression ratios are only checked for large parts
+    StringBuilder padded = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!--");
+    for (int i = 0; i < 200000; i++) padded.append(' ');
+    padded.append("-->").append(TransformTestUtils.sheetData(""));
+    byte[] bomb = TransformTestUtils.replace(input, "xl/worksheets/sheet1.xml", padded.toString().getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(expected, transform("limits/ratio", builder(bomb, SplitLevel.workbook).limits(GENEROUS)));
+    // The zip stream only gives the compressed size of this part once it has been read
+    assertLimitExceeded("maxCompressionRatio", bomb, new ResourceLimits(-1, -1, 50, -1, -1));
+  }
+
+  /**
+   * Checks that the specified limit is exceeded when reading the input from memory and from a stream.
+   */
+  private static void assertLimitExceeded(String limit, byte[] input, ResourceLimits limits) throws IOException {
+    TransformConfigBuilder[] builders = {
+        builder(input, SplitLevel.workbook).limits(limits),
+        builder(SplitLevel.workbook).input(new ByteArrayInputStream(input)).streaming(true).limits(limits)
+    };
+    for (TransformConfigBuilder builder : builders) {
+      try {
+        transform("limits/" + limit, builder);
+        Assert.fail("Expected " + limit + " to be exceeded");
+      } catch (ResourceLimitException ex) {
+        Assert.assertEquals(limit, ex.getLimit());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+import org.pageseeder.xlsx.config.TransformConfig;
+import org.pageseeder.xlsx.config.TransformConfigBuilder;
+import org.pageseeder.xlsx.sink.CallbackSink;
+import org.pageseeder.xlsx.sink.MemorySink;
+import org.pageseeder.xlsx.sink.OutputSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_OutputTest {
+
+  @Test
+  public void testMemorySink() throws IOException {
+    for (File sample : new File[] { TransformTestUtils.SAMPLE, TransformTestUtils.SAMPLE2 }) {
+      for (SplitLevel level : SplitLevel.values()) {
+        String name = "output/" + sample.getName().replace(".xlsx", "") + "-" + level;
+        Map<String, String> expected = transform(name + "-folder", builder(sample, level));
+        MemorySink sink = new MemorySink();
+        process(name + "-memory", builder(sample, level).output(sink));
+        Map<String, String> documents = new TreeMap<>();
+        for (Map.Entry<String, byte[]> document : sink.documents().entrySet()) {
+          documents.put(document.getKey(), new String(document.getValue(), StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(expected, documents);
+      }
+    }
+  }
+
+  @Test
+  public void testCallbackSink() throws IOException {
+    File sample = TransformTestUtils.SAMPLE2;
+    Map<String, String> expected = transform("output/callback-folder", builder(sample, SplitLevel.row));
+    Map<String, String> documents = new TreeMap<>();
+    CallbackSink sink = new CallbackSink((path, content) -> {
+      Assert.assertNull(path, documents.put(path, new String(content, StandardCharsets.UTF_8)));
+    });
+    process("output/callback", builder(sample, SplitLevel.row).output(sink));
+    Assert.assertEquals(expected, documents);
+  }
+
+  @Test
+  public void testSinkNotClosed() throws IOException {
+    MemorySink memory = new MemorySink();
+    boolean[] closed = { false };
+    OutputSink sink = new OutputSink() {
+      @Override
+      public OutputStream newDocument(String path) {
+        return memory.newDocument(path);
+      }
+
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+    process("output/not-closed", builder(TransformTestUtils.SAMPLE, SplitLevel.worksheet).output(sink));
+    Assert.assertFalse(memory.documents().isEmpty());
+    // The sink belongs to the caller
+    Assert.assertFalse(closed[0]);
+  }
+
+  /**
+   * Processes the workbook and checks that nothing is written to the destination folder.
+   */
+  private static void process(String name, TransformConfigBuilder builder) throws IOException {
+    File output = new File(TransformTestUtils.DEFAULT_OUTPUT_ROOT_FOLDER, name);
+    File working = new File(TransformTestUtils.DEFAULT_OUTPUT_ROOT_FOLDER, name + "-working");
+    TransformTestUtils.delete(output);
+    TransformTestUtils.delete(working);
+    builder.destination(output);
+    builder.working(working);
+    TransformConfig config = builder.build();
+    Assert.assertNotNull(config.getOutput());
+    new TransformProcessor(config).process();
+    Assert.assertTrue(TransformTestUtils.collect(output).isEmpty());
+  }
+
+}
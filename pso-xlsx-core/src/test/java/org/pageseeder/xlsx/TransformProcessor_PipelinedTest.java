@@ -0,0 +1,28 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_PipelinedTest {
+
+  @Test
+  public void testPipelined() throws IOException {
+    for (File sample : new File[] { TransformTestUtils.SAMPLE, TransformTestUtils.SAMPLE2 }) {
+      for (SplitLevel level : SplitLevel.values()) {
+        String name = "pipelined/" + sample.getName().replace(".xlsx", "") + "-" + level;
+        Map<String, String> expected = transform(name + "-sequential", builder(sample, level).pipelined(false));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, transform(name, builder(sample, level).pipelined(true)));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+import org.pageseeder.xlsx.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.replace;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_RichtextTest {
+
+  private static final String[] STRINGS = {
+      "<si><t>Plain</t></si>",
+      "<si><r><t>Runs</t></r></si>",
+      // All styles with text to escape
+      "<si><r><rPr><u/><i/><b/><sz val=\"11\"/></rPr><t>All</t></r><r><t xml:space=\"preserve\"> a &amp; b &lt; c</t></r></si>",
+      // Line breaks
+      "<si><r><rPr><i/></rPr><t>line 1</t></r><r><rPr><u/></rPr><br/><t>line 2\nline 3</t></r></si>",
+      // Phonetic runs are left out
+      "<si><r><rPr><b/></rPr><t>Kanji</t></r><rPh sb=\"0\" eb=\"5\"><t>kana</t></rPh><phoneticPr fontId=\"1\"/></si>",
+      "<si><r><rPr><b/><i/></rPr><t>Bold</t></r><r><rPr><i/><u/></rPr><t xml:space=\"preserve\"> italic</t></r></si>"
+  };
+
+  @Test
+  public void testRichtextBySax() throws IOException {
+    String interim = interim("richtext/sax");
+    Assert.assertTrue(interim, interim.contains("<col ref=\"A\">Plain</col>"));
+    Assert.assertTrue(interim, interim.contains("<col ref=\"A\">Runs</col>"));
+    // Bold contains italic which contains underline
+    Assert.assertTrue(interim, interim.contains("<col ref=\"A\"><bold><italic><underline>All</underline></italic></bold> a &amp; b &lt; c</col>"));
+    Assert.assertTrue(interim, interim.contains("<col ref=\"A\"><italic>line 1</italic><underline><br/>line 2\nline 3</underline></col>"));
+    Assert.assertTrue(interim, interim.contains("<col ref=\"A\"><bold>Kanji</bold></col>"));
+    Assert.assertFalse(interim, interim.contains("kana"));
+    Assert.assertTrue(interim, interim.contains("<col ref=\"A\"><bold><italic>Bold</italic></bold><italic><underline> italic</underline></italic></col>"));
+  }
+
+  /**
+   * @return the interim data of a workbook using each of the rich text strings in a row.
+   */
+  private static String interim(String name) throws IOException {
+    StringBuilder sst = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"" + STRINGS.length
+        + "\" uniqueCount=\"" + STRINGS.length + "\">");
+    for (String s : STRINGS) sst.append(s);
+    sst.append("</sst>");
+    StringBuilder sheet = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+    for (int r = 1; r <= STRINGS.length; r++) {
+      sheet.append("<row r=\"").append(r).append("\" spans=\"1:1\">");
+      sheet.append("<c r=\"A").append(r).append("\" t=\"s\"><v>").append(r - 1).append("</v></c>");
+      sheet.append("</row>");
+    }
+    sheet.append("</sheetData></worksheet>");
+    byte[] workbook = replace(TransformTestUtils.SAMPLE, "xl/sharedStrings.xml", sst.toString().getBytes(StandardCharsets.UTF_8));
+    workbook = replace(workbook, "xl/worksheets/sheet1.xml", sheet.toString().getBytes(StandardCharsets.UTF_8));
+    transform(name, builder(workbook, SplitLevel.workbook).headers(false).richtext(true).richtextBySax(true).workingMemory(0));
+    return FileUtils.read(new File(TransformTestUtils.DEFAULT_OUTPUT_ROOT_FOLDER, name + "-working/interim/workbook.xml"), "UTF-8");
+  }
+
+}
@@ -0,0 +1,83 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.count;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_RowRangeTest {
+
+  @Test
+  public void testMaxRows() throws IOException {
+    byte[] input = Files.readAllBytes(TransformTestUtils.SAMPLE.toPath());
+    String workbook = transform("rowrange/maxrows", builder(input, SplitLevel.workbook).maxRows(1)).get("workbook.xml");
+    Assert.assertTrue(workbook, workbook.contains("Heade 1"));
+    Assert.assertTrue(workbook, workbook.contains("Value 1a"));
+    Assert.assertFalse(workbook, workbook.contains("Value 2a"));
+    Assert.assertEquals(1, count(workbook, "<row "));
+    Assert.assertEquals(workbook, transform("rowrange/maxrows-sax", builder(input, SplitLevel.workbook).maxRows(1).scanning(false)).get("workbook.xml"));
+
+    // Each worksheet is truncated
+    byte[] input2 = Files.readAllBytes(TransformTestUtils.SAMPLE2.toPath());
+    Map<String, String> expected = transform("rowrange/maxrows-default", builder(input2, SplitLevel.worksheet));
+    Map<String, String> truncated = transform("rowrange/maxrows-sheets", builder(input2, SplitLevel.worksheet).maxRows(2));
+    Assert.assertEquals(expected.keySet(), truncated.keySet());
+    for (Map.Entry<String, String> sheet : expected.entrySet()) {
+      if (sheet.getKey().equals("workbook.xml")) continue;
+      String rows = truncated.get(sheet.getKey());
+      Assert.assertTrue(sheet.getKey(), count(sheet.getValue(), "<row ") > 2);
+      Assert.assertEquals(sheet.getKey(), 2, count(rows, "<row "));
+      // The rows are the first rows of the worksheet
+      Assert.assertTrue(sheet.getKey(), sheet.getValue().startsWith(rows.substring(0, rows.lastIndexOf("</row>"))));
+    }
+  }
+
+  @Test
+  public void testMaxRows_Pipelined() throws IOException, InterruptedException {
+    byte[] input = Files.readAllBytes(TransformTestUtils.SAMPLE2.toPath());
+    Map<String, String> expected = transform("rowrange/maxrows-sequential", builder(input, SplitLevel.worksheet).maxRows(2).pipelined(false));
+    Assert.assertEquals(expected, transform("rowrange/maxrows-pipelined", builder(input, SplitLevel.worksheet).maxRows(2).pipelined(true)));
+    // The inflater thread stops when parsing ends early
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("xlsx-inflater")) {
+        thread.join(5000);
+        Assert.assertFalse(thread.isAlive());
+      }
+    }
+  }
+
+  @Test
+  public void testStartRow() throws IOException {
+    byte[] input = Files.readAllBytes(TransformTestUtils.SAMPLE.toPath());
+    String workbook = transform("rowrange/startrow", builder(input, SplitLevel.workbook).startRow(3)).get("workbook.xml");
+    // The titles are still taken from the first row
+    Assert.assertTrue(workbook, workbook.contains("Heade 1"));
+    Assert.assertFalse(workbook, workbook.contains("Value 1a"));
+    Assert.assertTrue(workbook, workbook.contains("Value 2a"));
+    Assert.assertEquals(1, count(workbook, "<row "));
+  }
+
+  @Test
+  public void testSheets() throws IOException {
+    byte[] input = Files.readAllBytes(TransformTestUtils.SAMPLE2.toPath());
+    Map<String, String> expected = transform("rowrange/sheets-default", builder(input, SplitLevel.worksheet));
+    Map<String, String> selected = transform("rowrange/sheets", builder(input, SplitLevel.worksheet).sheets("Statement 3 - Table 4"));
+    Assert.assertEquals(expected.get("Statement 3 - Table 4.xml"), selected.get("Statement 3 - Table 4.xml"));
+    Assert.assertFalse(selected.containsKey("Statement 3 - Table 3.xml"));
+    Assert.assertFalse(selected.containsKey("Statement 3 - Table 5.xml"));
+    Assert.assertFalse(selected.containsKey("Statement 3 - Table 7.xml"));
+
+    // No worksheet is written when none is selected
+    Map<String, String> none = transform("rowrange/sheets-none", builder(input, SplitLevel.worksheet).sheets("Missing"));
+    Assert.assertEquals(Collections.singleton("workbook.xml"), none.keySet());
+  }
+
+}
@@ -0,0 +1,56 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_ScanningTest {
+
+  @Test
+  public void testScanning() throws IOException {
+    for (File sample : new File[] { TransformTestUtils.SAMPLE, TransformTestUtils.SAMPLE2 }) {
+      for (SplitLevel level : SplitLevel.values()) {
+        String name = "scanning/" + sample.getName().replace(".xlsx", "") + "-" + level;
+        Map<String, String> expected = transform(name + "-sax", builder(sample, level).scanning(false));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, transform(name, builder(sample, level).scanning(true)));
+      }
+    }
+  }
+
+  @Test
+  public void testScanning_Encoding() throws IOException {
+    byte[] sample = Files.readAllBytes(TransformTestUtils.SAMPLE.toPath());
+    Map<String, String> expected = transform("scanning/default", builder(sample, SplitLevel.workbook));
+
+    // The scanner only reads UTF-8 so this part is parsed by SAX
+    String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<!-- R\u00E9sum\u00E9 -->" + TransformTestUtils.sheetData("");
+    byte[] input = TransformTestUtils.replace(sample, "xl/worksheets/sheet1.xml", xml.getBytes(StandardCharsets.ISO_8859_1));
+    Assert.assertEquals(expected, transform("scanning/encoding", builder(input, SplitLevel.workbook)));
+    Assert.assertEquals(expected, transform("scanning/encoding-sax", builder(input, SplitLevel.workbook).scanning(false)));
+  }
+
+  @Test
+  public void testScanning_Prefix() throws IOException {
+    byte[] sample = Files.readAllBytes(TransformTestUtils.SAMPLE.toPath());
+    Map<String, String> expected = transform("scanning/default", builder(sample, SplitLevel.workbook));
+
+    // The scanner does not resolve prefixes so this part is parsed by SAX
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + TransformTestUtils.sheetData("x:");
+    byte[] input = TransformTestUtils.replace(sample, "xl/worksheets/sheet1.xml", xml.getBytes(StandardCharsets.UTF_8));
+    Map<String, String> prefixed = transform("scanning/prefix", builder(input, SplitLevel.workbook));
+    Assert.assertTrue(prefixed.get("workbook.xml"), prefixed.get("workbook.xml").contains("Value 2a"));
+    Assert.assertEquals(expected, prefixed);
+    Assert.assertEquals(expected, transform("scanning/prefix-sax", builder(input, SplitLevel.workbook).scanning(false)));
+  }
+
+}
@@ -0,0 +1,112 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.count;
+import static org.pageseeder.xlsx.TransformTestUtils.replace;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_SharedStringsTest {
+
+  private static final int STRINGS = 40000;
+
+  @Test
+  public void testSharedStrings_Arena() throws IOException {
+    String workbook = transform("strings/default", builder(largeWorkbook(), SplitLevel.workbook)).get("workbook.xml");
+    // The first row is the header
+    Assert.assertEquals(100, count(workbook, "<row "));
+    for (int i : new int[] { 0, 1, 2, 8191, 8192, 16383, 16384, STRINGS - 1 }) {
+      // Characters outside the BMP are written as character references
+      String text = string(i).replace("&", "&amp;").replace("\uD83D\uDE00", "&#128512;");
+      Assert.assertTrue(text, workbook.contains(">" + text + "<"));
+    }
+  }
+
+  @Test
+  public void testSharedStrings_Mapped() throws IOException {
+    byte[] input = largeWorkbook();
+    Map<String, String> expected = transform("strings/default", builder(input, SplitLevel.workbook));
+    Assert.assertEquals(expected, transform("strings/mapped", builder(input, SplitLevel.workbook).sharedStringsThreshold(1)));
+    Assert.assertEquals(expected, transform("strings/mapped-1000", builder(input, SplitLevel.workbook).sharedStringsThreshold(1000)));
+    Assert.assertEquals(expected, transform("strings/mapped-streaming", builder(SplitLevel.workbook)
+        .input(new ByteArrayInputStream(input)).streaming(true).sharedStringsThreshold(1)));
+    Assert.assertEquals(expected, transform("strings/memory", builder(input, SplitLevel.workbook).sharedStringsThreshold(-1)));
+  }
+
+  @Test
+  public void testSharedStrings_Lazy() throws IOException {
+    byte[] input = largeWorkbook();
+    Map<String, String> expected = transform("strings/default", builder(input, SplitLevel.workbook));
+    Assert.assertEquals(expected, transform("strings/lazy", builder(input, SplitLevel.workbook).lazySharedStrings(true)));
+    Assert.assertEquals(expected, transform("strings/lazy-streaming", builder(SplitLevel.workbook)
+        .input(new ByteArrayInputStream(input)).streaming(true).lazySharedStrings(true)));
+    // Shared strings above the threshold are loaded up front
+    Assert.assertEquals(expected, transform("strings/lazy-mapped", builder(input, SplitLevel.workbook)
+        .lazySharedStrings(true).sharedStringsThreshold(1000)));
+  }
+
+  @Test
+  public void testSharedStrings_Parallel() throws IOException {
+    byte[] input = largeWorkbook();
+    Map<String, String> expected = transform("strings/default", builder(input, SplitLevel.workbook));
+    Assert.assertEquals(expected, transform("strings/parallel", builder(input, SplitLevel.workbook).parallelSharedStrings(true)));
+    Assert.assertEquals(expected, transform("strings/parallel-streaming", builder(SplitLevel.workbook)
+        .input(new ByteArrayInputStream(input)).streaming(true).parallelSharedStrings(true)));
+    byte[] sample = Files.readAllBytes(TransformTestUtils.SAMPLE2.toPath());
+    Assert.assertEquals(transform("strings/default-sample2", builder(sample, SplitLevel.worksheet)),
+        transform("strings/parallel-sample2", builder(sample, SplitLevel.worksheet).parallelSharedStrings(true)));
+  }
+
+  /**
+   * @return the sample workbook with many shared strings and a worksheet using them.
+   */
+  private static byte[] largeWorkbook() throws IOException {
+    StringBuilder sst = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"" + STRINGS
+        + "\" uniqueCount=\"" + STRINGS + "\">");
+    for (int i = 0; i < STRINGS; i++) {
+      if (i % 3 == 2) {
+        // Rich text runs are joined
+        sst.append("<si><r><rPr><b/></rPr><t>Bold</t></r><r><t xml:space=\"preserve\">").append(string(i).substring(4)).append("</t></r></si>");
+      } else {
+        sst.append("<si><t>").append(string(i).replace("&", "&amp;")).append("</t></si>");
+      }
+    }
+    sst.append("</sst>");
+    StringBuilder sheet = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+    int[] indexes = { 0, 1, 2, 8191, 8192, 16383, 16384, STRINGS - 1 };
+    for (int r = 1; r <= 101; r++) {
+      int a = r <= indexes.length ? indexes[r - 1] : (r * 7919) % STRINGS;
+      int b = (STRINGS - 1 - r * 389) % STRINGS;
+      sheet.append("<row r=\"").append(r).append("\" spans=\"1:2\">");
+      sheet.append("<c r=\"A").append(r).append("\" t=\"s\"><v>").append(a).append("</v></c>");
+      sheet.append("<c r=\"B").append(r).append("\" t=\"s\"><v>").append(b).append("</v></c>");
+      sheet.append("</row>");
+    }
+    sheet.append("</sheetData></worksheet>");
+    byte[] workbook = replace(TransformTestUtils.SAMPLE, "xl/sharedStrings.xml", sst.toString().getBytes(StandardCharsets.UTF_8));
+    return replace(workbook, "xl/worksheets/sheet1.xml", sheet.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return the text of the shared string at the specified index in the large workbook.
+   */
+  private static String string(int i) {
+    switch (i % 3) {
+      case 0: return "Value " + i;
+      case 1: return "Caf\u00E9 & \u4E2D\uD83D\uDE00 " + i;
+      default: return "Bold " + i;
+    }
+  }
+
+}
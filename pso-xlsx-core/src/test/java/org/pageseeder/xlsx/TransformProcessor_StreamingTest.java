@@ -0,0 +1,34 @@
+package org.pageseeder.xlsx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.config.SplitLevel;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.pageseeder.xlsx.TransformTestUtils.builder;
+import static org.pageseeder.xlsx.TransformTestUtils.transform;
+
+public class TransformProcessor_StreamingTest {
+
+  @Test
+  public void testStreaming() throws IOException {
+    for (File sample : new File[] { TransformTestUtils.SAMPLE, TransformTestUtils.SAMPLE2 }) {
+      byte[] input = Files.readAllBytes(sample.toPath());
+      for (SplitLevel level : new SplitLevel[] { SplitLevel.workbook, SplitLevel.worksheet }) {
+        String name = "streaming/" + sample.getName().replace(".xlsx", "") + "-" + level;
+        Map<String, String> expected = transform(name + "-default", builder(input, level));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, transform(name, builder(level).input(new ByteArrayInputStream(input)).streaming(true)));
+        // The parts read before they are needed are buffered in files
+        Assert.assertEquals(expected, transform(name + "-spill", builder(level).input(new ByteArrayInputStream(input))
+            .streaming(true).streamingMemoryLimit(0)));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+package org.pageseeder.xlsx;
+
+import org.pageseeder.xlsx.config.SplitLevel;
+import org.pageseeder.xlsx.config.TransformConfigBuilder;
+import org.pageseeder.xlsx.util.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Runs the sample workbooks through the processor and collects the output for comparison.
+ */
+public final class TransformTestUtils {
+  public static final String DEFAULT_OUTPUT_ROOT_FOLDER = "build/output/core";
+  public static final File XSLT_COPY = new File("src/test/resources/org/pageseeder/xlsx/core/copy.xsl");
+  public static final File SAMPLE = new File("src/test/resources/org/pageseeder/xlsx/core/sample.xlsx");
+  public static final File SAMPLE2 = new File("src/test/resources/org/pageseeder/xlsx/core/sample2.xlsx");
+
+  private TransformTestUtils() {
+  }
+
+  /**
+   * @return a builder for the specified input with the copy transformation and headers.
+   */
+  public static TransformConfigBuilder builder(File input, SplitLevel level) {
+    return builder(level).input(input);
+  }
+
+  /**
+   * @return a builder for the specified input with the copy transformation and headers.
+   */
+  public static TransformConfigBuilder builder(byte[] input, SplitLevel level) {
+    return builder(level).input(input);
+  }
+
+  /**
+   * @return a builder with the copy transformation and headers.
+   */
+  public static TransformConfigBuilder builder(SplitLevel level) {
+    TransformConfigBuilder builder = new TransformConfigBuilder();
+    builder.headers(true);
+    builder.xslt(XSLT_COPY);
+    builder.filenameColumn(3);
+    builder.level(level);
+    return builder;
+  }
+
+  /**
+   * Processes the workbook into a new folder.
+   *
+   * @param name The name of the output folder, it must not contain a dot.
+   *
+   * @return the content of each output file by path relative to the destination
+   */
+  public static Map<String, String> transform(String name, TransformConfigBuilder builder) throws IOException {
+    File output = new File(DEFAULT_OUTPUT_ROOT_FOLDER, name);
+    File working = new File(DEFAULT_OUTPUT_ROOT_FOLDER, name + "-working");
+    delete(output);
+    delete(working);
+    builder.destination(output);
+    builder.working(working);
+    new TransformProcessor(builder.build()).process();
+    return collect(output);
+  }
+
+  /**
+   * @return the content of each file in the folder by path relative to the folder
+   */
+  public static Map<String, String> collect(File folder) throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    collect(folder, "", files);
+    return files;
+  }
+
+  public static int count(String text, String substring) {
+    int count = 0;
+    for (int i = text.indexOf(substring); i >= 0; i = text.indexOf(substring, i + 1)) count++;
+    return count;
+  }
+
+  public static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) delete(child);
+    }
+    file.delete();
+  }
+
+  /**
+   * @return the bytes of the workbook with the content of a part replaced.
+   */
+  public static byte[] replace(File workbook, String part, byte[] content) throws IOException {
+    return replace(Files.readAllBytes(workbook.toPath()), part, content);
+  }
+
+  /**
+   * @return the bytes of the workbook with the content of a part replaced.
+   */
+  public static byte[] replace(byte[] workbook, String part, byte[] content) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(workbook));
+         ZipOutputStream out = new ZipOutputStream(bytes)) {
+      for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        if (entry.getName().equals(part)) out.write(content);
+        else copy(in, out);
+        out.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return a shared strings part with the specified strings.
+   */
+  public static byte[] sharedStrings(String... strings) {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"" + strings.length
+        + "\" uniqueCount=\"" + strings.length + "\">");
+    for (String s : strings) xml.append("<si><t>").append(s).append("</t></si>");
+    return xml.append("</sst>").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  public static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[4096];
+    int n;
+    while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+  }
+
+  /**
+   * @return the cells of the sample worksheet with the specified prefix for the SpreadsheetML namespace.
+   */
+  public static String sheetData(String prefix) {
+    String[][] cells = { { "0", "1", "6" }, { "2", "3", "7" }, { "5", "4", "8" } };
+    StringBuilder xml = new StringBuilder();
+    xml.append('<').append(prefix).append("worksheet xmlns").append(prefix.isEmpty() ? "" : ":" + prefix.substring(0, prefix.length() - 1))
+        .append("=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+    xml.append('<').append(prefix).append("sheetData>");
+    for (int r = 0; r < cells.length; r++) {
+      xml.append('<').append(prefix).append("row r=\"").append(r + 1).append("\" spans=\"1:3\">");
+      for (int c = 0; c < cells[r].length; c++) {
+        xml.append('<').append(prefix).append("c r=\"").append((char) ('A' + c)).append(r + 1).append("\" t=\"s\">");
+        xml.append('<').append(prefix).append("v>").append(cells[r][c]).append("</").append(prefix).append("v>");
+        xml.append("</").append(prefix).append("c>");
+      }
+      xml.append("</").append(prefix).append("row>");
+    }
+    xml.append("</").append(prefix).append("sheetData>");
+    return xml.append("</").append(prefix).append("worksheet>").toString();
+  }
+
+  private static void collect(File folder, String path, Map<String, String> files) throws IOException {
+    File[] children = folder.listFiles();
+    if (children == null) return;
+    for (File child : children) {
+      if (child.isDirectory()) collect(child, path + child.getName() + "/", files);
+      else files.put(path + child.getName(), FileUtils.read(child, "UTF-8"));
+    }
+  }
+
+}
@@ -17,4 +17,22 @@ public class TransformConfigBuilderTest {
     config = builder.build();
     Assert.assertFalse(config.hasHeaders());
   }
+
+  @Test
+  public void maxRows() {
+    Assert.assertEquals(-1, new TransformConfigBuilder().build().getMaxRows());
+    Assert.assertEquals(-1, new TransformConfigBuilder().maxRows(-1).build().getMaxRows());
+    Assert.assertEquals(0, new TransformConfigBuilder().maxRows(0).build().getMaxRows());
+    Assert.assertEquals(10, new TransformConfigBuilder().maxRows(10).build().getMaxRows());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxRowsInvalid() {
+    new TransformConfigBuilder().maxRows(-2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sheetsInvalid() {
+    new TransformConfigBuilder().sheets("Sheet1", null);
+  }
 }
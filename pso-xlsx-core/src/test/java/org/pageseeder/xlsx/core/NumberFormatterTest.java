@@ -0,0 +1,68 @@
+package org.pageseeder.xlsx.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NumberFormatterTest {
+
+  @Test
+  public void decimals() {
+    assertFormat("0.00", "1234.567", "1234.57");
+    assertFormat("0.00", "0", "0.00");
+    assertFormat("0.0", "600.70000000000005", "600.7");
+    assertFormat(".00", "0.005", ".01");
+    assertFormat("#.##", "12", "12.");
+    assertFormat("0.0#", "1.5", "1.5");
+    assertFormat("0.0?", "1.5", "1.5 ");
+  }
+
+  @Test
+  public void grouping() {
+    assertFormat("#,##0", "1234567.891", "1,234,568");
+    assertFormat("#,##0.00", "-1234.567", "-1,234.57");
+    assertFormat("0,\"K\"", "1234567", "1235K");
+    assertFormat("000-0000", "5551234", "555-1234");
+  }
+
+  @Test
+  public void percentAndScientific() {
+    assertFormat("0%", "0.125", "13%");
+    assertFormat("0.00%", "0.0015", "0.15%");
+    assertFormat("0.00E+00", "1234.567", "1.23E+03");
+    assertFormat("0.00E+00", "0.005", "5.00E-03");
+    assertFormat("##0.0E+0", "1234567", "1.2E+6");
+  }
+
+  @Test
+  public void sections() {
+    assertFormat("#,##0 ;(#,##0)", "-1234", "(1,234)");
+    assertFormat("#,##0 ;(#,##0)", "1234", "1,234 ");
+    assertFormat("0;;0", "-1", "");
+    assertFormat("[Red]0;[Blue]-0", "-5", "-5");
+    assertFormat("_-* #,##0.00_-;\\-* #,##0.00_-;_-* \"-\"??_-;_-@_-", "0", " -   ");
+    assertFormat("_-* #,##0.00_-;\\-* #,##0.00_-;_-* \"-\"??_-;_-@_-", "-2.5", "-2.50 ");
+  }
+
+  @Test
+  public void literals() {
+    assertFormat("\"$\"#,##0.00", "1234.5", "$1,234.50");
+    assertFormat("[$\u20AC-407] #,##0.00", "1234.5", "\u20AC 1,234.50");
+    assertFormat("0.0 \"kg\"", "12", "12.0 kg");
+  }
+
+  @Test
+  public void unsupported() {
+    String[] codes = { "", "# ?/?", "@", "yyyy-mm-dd", "h:mm", "[>100]0;0" };
+    for (String code : codes) {
+      Assert.assertNull(code, NumberFormatter.compile(code));
+    }
+    Assert.assertNull(NumberFormatter.compile("0.00").format("abc"));
+  }
+
+  private static void assertFormat(String code, String value, String expected) {
+    NumberFormatter formatter = NumberFormatter.compile(code);
+    Assert.assertNotNull(code, formatter);
+    Assert.assertEquals(code + " " + value, expected, formatter.format(value));
+  }
+
+}
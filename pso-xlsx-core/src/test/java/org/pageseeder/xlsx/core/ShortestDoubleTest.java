@@ -0,0 +1,52 @@
+package org.pageseeder.xlsx.core;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShortestDoubleTest {
+
+  @Test
+  public void excelValues() {
+    Assert.assertEquals("1.1", ShortestDouble.shorten("1.1000000000000001"));
+    Assert.assertEquals("600.7", ShortestDouble.shorten("600.70000000000005"));
+    Assert.assertEquals("-4.1", ShortestDouble.shorten("-4.0999999999999996"));
+    Assert.assertEquals("0.30000000000000004", ShortestDouble.shorten("0.30000000000000004"));
+    Assert.assertEquals("1.23E-5", ShortestDouble.shorten("1.2300000000000001E-5"));
+    Assert.assertEquals("1.23E+21", ShortestDouble.shorten("1.2300000000000001E+21"));
+    Assert.assertEquals("0.0000123", ShortestDouble.shorten("0.000012300000000000001"));
+    Assert.assertEquals("123456789012345680", ShortestDouble.shorten("123456789012345678"));
+  }
+
+  @Test
+  public void unchanged() {
+    String[] values = { "0", "1.5", "-12", "43831.5416666667", "1.10", "", "-", "abc", "1.5E", "1.2.3",
+        "1.1000000000000001x", "1E400" };
+    for (String value : values) {
+      Assert.assertSame(value, value, ShortestDouble.shorten(value));
+    }
+  }
+
+  @Test
+  public void randomDoubles() {
+    Random random = new Random(17);
+    for (int i = 0; i < 50000; i++) {
+      double v = Double.longBitsToDouble(random.nextLong() & Long.MAX_VALUE);
+      if (Double.isNaN(v) || Double.isInfinite(v)) continue;
+      String shortest = ShortestDouble.shorten(new BigDecimal(v).round(new MathContext(17)).toString());
+      Assert.assertEquals(shortest, v, Double.parseDouble(shortest), 0);
+      // No decimal with one digit less reads back as the same double
+      BigDecimal exact = new BigDecimal(v);
+      int digits = new BigDecimal(shortest).stripTrailingZeros().precision();
+      if (digits > 1) {
+        Assert.assertNotEquals(shortest, v, Double.parseDouble(exact.round(new MathContext(digits - 1, RoundingMode.FLOOR)).toString()), 0);
+        Assert.assertNotEquals(shortest, v, Double.parseDouble(exact.round(new MathContext(digits - 1, RoundingMode.CEILING)).toString()), 0);
+      }
+    }
+  }
+
+}
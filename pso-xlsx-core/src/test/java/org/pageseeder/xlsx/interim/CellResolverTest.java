@@ -0,0 +1,118 @@
+package org.pageseeder.xlsx.interim;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CellResolverTest {
+
+  private static final MathContext SECOND_MATH_CONTEXT = new MathContext(14, RoundingMode.HALF_UP);
+  private static final LocalDateTime EXCEL_EPOCH_REFERENCE = LocalDateTime.of(1899, Month.DECEMBER, 31, 0, 0, 0);
+  private static final BigDecimal EXCEL_SECOND_VALUE = new BigDecimal(1).divide(new BigDecimal(24*60*60), SECOND_MATH_CONTEXT);
+
+  /**
+   * The days around the leap year bug, common dates and the last day supported by Excel.
+   */
+  private static final int[] DAYS = { 0, 59, 60, 61, 43831, 2958465 };
+
+  @Test
+  public void everySecond() {
+    for (int day : DAYS) {
+      for (int second = 0; second < 24*60*60; second++) {
+        double serial = day + second / 86400.0;
+        assertSameDateTime(Double.toString(serial));
+        assertSameDateTime(new BigDecimal(serial).round(new MathContext(15)).toPlainString());
+        assertSameDateTime(new BigDecimal(serial).round(new MathContext(17)).toPlainString());
+      }
+    }
+  }
+
+  @Test
+  public void randomDecimals() {
+    Random random = new Random(1904);
+    for (int i = 0; i < 1000000; i++) {
+      StringBuilder serial = new StringBuilder();
+      serial.append(random.nextInt(2958466));
+      int scale = random.nextInt(19);
+      if (scale > 0) serial.append('.');
+      for (int j = 0; j < scale; j++) serial.append((char)('0' + random.nextInt(10)));
+      assertSameDateTime(serial.toString());
+    }
+  }
+
+  @Test
+  public void roundedSeconds() {
+    // Just below a whole second, the quotient is rounded up to the next second or truncated
+    for (int second = 1; second < 24*60*60; second++) {
+      BigDecimal exact = new BigDecimal(second).divide(new BigDecimal(86400), new MathContext(30));
+      for (int digits = 9; digits <= 18; digits += 3) {
+        BigDecimal below = exact.setScale(digits, RoundingMode.FLOOR);
+        BigDecimal above = exact.setScale(digits, RoundingMode.CEILING);
+        assertSameDateTime("43831" + below.toPlainString().substring(1));
+        assertSameDateTime("43831" + above.toPlainString().substring(1));
+        assertSameDateTime(below.toPlainString());
+      }
+    }
+  }
+
+  @Test
+  public void otherForms() {
+    String[] serials = { "0", "59", "60", "60.5", "61", "0.5", "00061.25", "1.", "1.0000000000000000000001",
+        "43831.99999999999999999", "1.1574074074074073E-5", "4.3831E4", "1234567890" };
+    for (String serial : serials) {
+      assertSameDateTime(serial);
+    }
+  }
+
+  @Test
+  public void date1904() {
+    Assert.assertEquals(LocalDateTime.of(1904, Month.JANUARY, 1, 0, 0, 0), CellResolver.calculateDateTime("0", true));
+    Assert.assertEquals(LocalDateTime.of(1904, Month.JANUARY, 2, 12, 0, 0), CellResolver.calculateDateTime("1.5", true));
+    Assert.assertEquals(LocalDateTime.of(2021, Month.FEBRUARY, 1, 0, 0, 0), CellResolver.calculateDateTime("42766", true));
+    // The same dates are 1462 days later in the 1900 date system
+    Random random = new Random(1900);
+    for (int i = 0; i < 100000; i++) {
+      int day = random.nextInt(2957003);
+      String fraction = new BigDecimal(random.nextDouble()).setScale(random.nextInt(17) + 1, RoundingMode.DOWN).toPlainString().substring(1);
+      Assert.assertEquals(CellResolver.calculateDateTime((day + 1462) + fraction, false),
+          CellResolver.calculateDateTime(day + fraction, true));
+    }
+  }
+
+  @Test
+  public void isValidNumber() {
+    String[] valid = { "12", "1.5", "0.0", "43831.5416666667" };
+    String[] invalid = { "", "1", ".5", "1.", "1..2", "1.2.3", "-12", "1E5", "12a" };
+    for (String value : valid) {
+      Assert.assertTrue(value, CellResolver.isValidNumber(value));
+    }
+    for (String value : invalid) {
+      Assert.assertFalse(value, CellResolver.isValidNumber(value));
+    }
+  }
+
+  private static void assertSameDateTime(String serial) {
+    Assert.assertEquals(serial, calculateDateTimeWithBigDecimal(serial), CellResolver.calculateDateTime(serial));
+  }
+
+  /**
+   * The conversion as it was implemented with BigDecimal only.
+   */
+  private static LocalDateTime calculateDateTimeWithBigDecimal(String value) {
+    BigDecimal countFromEpoch = new BigDecimal(value);
+    if (countFromEpoch.longValue() > 59) {
+      countFromEpoch = countFromEpoch.subtract(new BigDecimal(1));
+    }
+    long days = countFromEpoch.longValue();
+    BigDecimal decimal = countFromEpoch.remainder(BigDecimal.ONE);
+    long seconds = decimal.divide(EXCEL_SECOND_VALUE, SECOND_MATH_CONTEXT).longValue();
+    return EXCEL_EPOCH_REFERENCE.plusDays(days).plusSeconds(seconds);
+  }
+
+}
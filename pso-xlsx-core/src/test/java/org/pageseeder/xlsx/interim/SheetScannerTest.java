@@ -0,0 +1,239 @@
+package org.pageseeder.xlsx.interim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.XLSXException;
+
+public class SheetScannerTest {
+
+  private static final String WORKSHEET = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+      + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\""
+      + " xmlns:x14ac=\"http://schemas.microsoft.com/office/spreadsheetml/2009/9/ac\">";
+
+  @Test
+  public void cells() throws IOException {
+    List<String> events = scan("<sheetData>"
+        + "<row r=\"1\" spans=\"1:3\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" s=\"2\"><v>1.5</v></c><c r=\"C1\" t=\"str\"><f>A1</f><v>x</v></c></row>"
+        + "<row r=\"3\"><c r=\"B3\"/><c r=\"C3\" t=\"b\"><v>1</v></c></row>"
+        + "</sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 1:3", "A=0 shared", "B=1.5 number 2", "C=x", "end",
+        "row 3 null", "C=1", "end"), events);
+  }
+
+  @Test
+  public void cdata() throws IOException {
+    List<String> events = scan("<sheetData><row r=\"1\">"
+        + "<c r=\"A1\" t=\"str\"><v><![CDATA[1 < 2 & 3]]></v></c>"
+        + "<c r=\"B1\" t=\"str\"><v>a<![CDATA[]]]]><![CDATA[>]]>b</v></c>"
+        + "</row></sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=1 < 2 & 3", "B=a]]>b", "end"), events);
+  }
+
+  @Test
+  public void references() throws IOException {
+    List<String> events = scan("<sheetData><row r=\"1\">"
+        + "<c r=\"A1\" t=\"str\"><v>&amp;&lt;&gt;&quot;&apos;</v></c>"
+        + "<c r=\"B1\" t=\"str\"><v>&#65;&#x42;&#xe9;&#x1F600;</v></c>"
+        + "<c r=\"C1\" t=\"str\"><v>a&#13;&#10;b\r\nc</v></c>"
+        + "</row></sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=&<>\"'", "B=AB\u00E9\uD83D\uDE00", "C=a\r\nb\nc", "end"), events);
+  }
+
+  @Test(expected = XLSXException.class)
+  public void undefinedEntity() throws IOException {
+    scan("<sheetData><row r=\"1\"><c r=\"A1\" t=\"str\"><v>&nbsp;</v></c></row></sheetData>");
+  }
+
+  @Test(expected = XLSXException.class)
+  public void invalidCharacterReference() throws IOException {
+    scan("<sheetData><row r=\"1\"><c r=\"A1\" t=\"str\"><v>&#x110000;</v></c></row></sheetData>");
+  }
+
+  @Test
+  public void foreignElements() throws IOException {
+    List<String> events = scan("<sheetData>"
+        + "<row r=\"1\" x14ac:dyDescent=\"0.25\" xr:r=\"9\"><c r=\"A1\" x:t=\"s\" xmlns:x=\"urn:other\"><v>1</v></c></row>"
+        + "<x:row r=\"2\" xmlns:x=\"urn:other\"><x:c r=\"A2\"><x:v>2</x:v></x:c></x:row>"
+        + "</sheetData>"
+        + "<extLst><ext xmlns=\"urn:other\"><row r=\"3\"><c r=\"A3\"><v>3</v></c></row></ext></extLst>"
+        + "<sheetData><row r=\"4\"><c r=\"A4\"><v>4</v></c></row></sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=1 number", "end", "row 4 null", "A=4 number", "end"), events);
+  }
+
+  @Test
+  public void commentsAndInstructions() throws IOException {
+    List<String> events = scan("<!-- <row r=\"9\"> --><sheetData><?pi <row r=\"8\">?>"
+        + "<row r=\"1\"><c r=\"A1\"><v>1<!-- 2 -->0</v></c></row></sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=10 number", "end"), events);
+  }
+
+  @Test
+  public void noReferences() throws IOException {
+    List<String> events = scan("<sheetData>"
+        + "<row><c><v>1</v></c><c><v>2</v></c><c r=\"E1\"><v>3</v></c><c><v>4</v></c></row>"
+        + "<row><c><v>5</v></c></row>"
+        + "<row r=\"10\"><c><v>6</v></c></row>"
+        + "<row><c><v>7</v></c></row>"
+        + "</sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=1 number", "B=2 number", "E=3 number", "F=4 number", "end",
+        "row 2 null", "A=5 number", "end", "row 10 null", "A=6 number", "end", "row 11 null", "A=7 number", "end"), events);
+  }
+
+  @Test(expected = XLSXException.class)
+  public void tooManyCells() throws IOException {
+    StringBuilder row = new StringBuilder("<sheetData><row r=\"1\">");
+    for (int i = 0; i <= SheetScanner.MAX_COLUMNS; i++) row.append("<c><v>").append(i).append("</v></c>");
+    scan(row.append("</row></sheetData>").toString());
+  }
+
+  @Test
+  public void lastColumn() throws IOException {
+    List<String> events = scan("<sheetData><row r=\"1\"><c r=\"XFC1\"><v>1</v></c><c><v>2</v></c></row></sheetData>");
+    Assert.assertEquals(Arrays.asList("row 1 null", "XFC=1 number", "XFD=2 number", "end"), events);
+  }
+
+  @Test
+  public void earlyStop() throws IOException {
+    // The rest of the part is not read once the handler stops, even if it is malformed
+    String xml = WORKSHEET + "<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></c></row>"
+        + "<row r=\"2\"><c r=\"A2\"><v>2</v></c></row><row r=\"3\"><c";
+    Recorder recorder = new Recorder(2);
+    SheetScanner scanner = new SheetScanner(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    scanner.scan(recorder);
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=1 number", "end", "row 2 null", "A=2 number", "end"), recorder.events);
+  }
+
+  @Test
+  public void columnsNotAccepted() throws IOException {
+    Recorder recorder = new Recorder(-1);
+    recorder.accepted = Arrays.asList("B");
+    String xml = WORKSHEET + "<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></c><c r=\"B1\"><v>2</v></c></row></sheetData></worksheet>";
+    new SheetScanner(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).scan(recorder);
+    Assert.assertEquals(Arrays.asList("row 1 null", "B=2 number", "end"), recorder.events);
+  }
+
+  @Test
+  public void emptyWorksheet() throws IOException {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"/>";
+    SheetScanner scanner = new SheetScanner(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    Assert.assertTrue(scanner.isSupported());
+    Recorder recorder = new Recorder(-1);
+    scanner.scan(recorder);
+    Assert.assertTrue(recorder.events.isEmpty());
+  }
+
+  @Test(expected = XLSXException.class)
+  public void unexpectedEnd() throws IOException {
+    scanPart(WORKSHEET + "<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></c>");
+  }
+
+  @Test
+  public void unsupportedParts() throws IOException {
+    String body = "<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></c></row></sheetData>";
+    String[] parts = {
+        "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" + body + "</worksheet>",
+        "<?xml version='1.0' encoding='UTF-16'?><worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" + body + "</worksheet>",
+        "<x:worksheet xmlns:x=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><x:sheetData/></x:worksheet>",
+        "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:x=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" + body + "</worksheet>",
+        "<!DOCTYPE worksheet><worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" + body + "</worksheet>",
+        "<worksheet>" + body + "</worksheet>",
+        "<sheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" + body + "</sheet>"
+    };
+    for (String part : parts) {
+      byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+      SheetScanner scanner = new SheetScanner(new ByteArrayInputStream(bytes));
+      Assert.assertFalse(part, scanner.isSupported());
+      // The part can still be parsed from the start
+      Assert.assertArrayEquals(bytes, readAll(scanner.remaining()));
+    }
+    byte[] utf16 = ("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" + body + "</worksheet>").getBytes(StandardCharsets.UTF_16);
+    SheetScanner scanner = new SheetScanner(new ByteArrayInputStream(utf16));
+    Assert.assertFalse(scanner.isSupported());
+    Assert.assertArrayEquals(utf16, readAll(scanner.remaining()));
+  }
+
+  @Test
+  public void supportedProlog() throws IOException {
+    byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    String xml = "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\"?>\r\n<!-- comment -->"
+        + WORKSHEET + "<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></c></row></sheetData></worksheet>";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(bom);
+    out.write(xml.getBytes(StandardCharsets.UTF_8));
+    SheetScanner scanner = new SheetScanner(new ByteArrayInputStream(out.toByteArray()));
+    Assert.assertTrue(scanner.isSupported());
+    Recorder recorder = new Recorder(-1);
+    scanner.scan(recorder);
+    Assert.assertEquals(Arrays.asList("row 1 null", "A=1 number", "end"), recorder.events);
+  }
+
+  private static List<String> scan(String content) throws IOException {
+    return scanPart(WORKSHEET + content + "</worksheet>");
+  }
+
+  private static List<String> scanPart(String xml) throws IOException {
+    SheetScanner scanner = new SheetScanner(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    Assert.assertTrue(scanner.isSupported());
+    Recorder recorder = new Recorder(-1);
+    scanner.scan(recorder);
+    return recorder.events;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int n;
+    while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+    return out.toByteArray();
+  }
+
+  /**
+   * Records the rows and cells as strings.
+   */
+  private static final class Recorder implements SheetScanner.Handler {
+
+    private final List<String> events = new ArrayList<>();
+
+    private final int maxRows;
+
+    private List<String> accepted = null;
+
+    private int rows = 0;
+
+    Recorder(int maxRows) {
+      this.maxRows = maxRows;
+    }
+
+    @Override
+    public void startRow(int position, String spans) {
+      this.events.add("row " + position + " " + spans);
+    }
+
+    @Override
+    public boolean accepts(String col) {
+      return this.accepted == null || this.accepted.contains(col);
+    }
+
+    @Override
+    public void cell(String col, String value, boolean isShared, boolean isNumber, int cellFormatID) {
+      this.events.add(col + "=" + value + (isShared ? " shared" : "") + (isNumber ? " number" : "")
+          + (cellFormatID >= 0 ? " " + cellFormatID : ""));
+    }
+
+    @Override
+    public boolean endRow() {
+      this.events.add("end");
+      return ++this.rows != this.maxRows;
+    }
+  }
+
+}
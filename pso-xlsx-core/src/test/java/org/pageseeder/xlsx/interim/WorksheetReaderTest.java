@@ -0,0 +1,135 @@
+package org.pageseeder.xlsx.interim;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pageseeder.xlsx.TransformTestUtils;
+import org.pageseeder.xlsx.config.SplitLevel;
+import org.pageseeder.xlsx.core.Style;
+import org.pageseeder.xlsx.core.WorkBook;
+import org.pageseeder.xlsx.core.WorkSheet;
+import org.pageseeder.xlsx.util.FileUtils;
+import org.pageseeder.xlsx.util.PackageParts;
+import org.pageseeder.xlsx.util.Relationship;
+import org.pageseeder.xlsx.util.Relationships;
+import org.pageseeder.xlsx.util.SharedStrings;
+import org.pageseeder.xlsx.util.XML;
+import org.pageseeder.xlsx.util.ZipPackage;
+import org.pageseeder.xlsx.xml.StyleHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class WorksheetReaderTest {
+
+  @Test
+  public void testSample() throws IOException {
+    assertSameRows(TransformTestUtils.SAMPLE, "reader/sample");
+  }
+
+  @Test
+  public void testSample2() throws IOException {
+    assertSameRows(TransformTestUtils.SAMPLE2, "reader/sample2");
+  }
+
+  @Test
+  public void testStop() throws IOException {
+    StringBuilder xml = new StringBuilder("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+    for (int r = 1; r <= 10000; r++) {
+      xml.append("<row r=\"").append(r).append("\" spans=\"1:2\">");
+      xml.append("<c r=\"A").append(r).append("\"><v>").append(r).append("</v></c>");
+      xml.append("<c r=\"B").append(r).append("\"><v>").append(r * 2).append("</v></c>");
+      xml.append("</row>");
+    }
+    byte[] sheet = xml.append("</sheetData></worksheet>").toString().getBytes(StandardCharsets.UTF_8);
+    long[] read = { 0 };
+    InputStream in = new FilterInputStream(new ByteArrayInputStream(sheet)) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) read[0] += n;
+        return n;
+      }
+    };
+    try (WorksheetReader reader = new WorksheetReader(in, null, null, false)) {
+      for (int r = 1; r <= 3; r++) {
+        Row row = reader.next();
+        Assert.assertEquals(r, row.getPosition());
+        Assert.assertEquals(Integer.toString(r), row.value(0));
+        Assert.assertEquals(Integer.toString(r * 2), row.value(1));
+      }
+      reader.close();
+      Assert.assertNull(reader.next());
+    }
+    // The rest of the worksheet is not parsed
+    Assert.assertTrue(read[0] < sheet.length / 2);
+  }
+
+  @Test
+  public void testMissingReferences() throws IOException {
+    String xml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+        + "<row r=\"1\" spans=\"1:3\"><c><v>1</v></c><c r=\"C1\"><v>3</v></c></row>"
+        + "<row r=\"2\"><c><v>4</v></c><c><v>5</v></c></row>"
+        + "</sheetData></worksheet>";
+    try (WorksheetReader reader = new WorksheetReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), null, null, false)) {
+      Row row = reader.next();
+      Assert.assertEquals("1", row.value(0));
+      Assert.assertNull(row.value(1));
+      Assert.assertEquals("3", row.value(2));
+      row = reader.next();
+      Assert.assertEquals(2, row.getPosition());
+      Assert.assertEquals("4", row.value(0));
+      Assert.assertEquals("5", row.value(1));
+      Assert.assertNull(row.value(2));
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  /**
+   * Checks that the reader returns the same rows as the interim data for each worksheet.
+   */
+  private static void assertSameRows(File sample, String name) throws IOException {
+    TransformTestUtils.transform(name, TransformTestUtils.builder(sample, SplitLevel.workbook).headers(false).workingMemory(0));
+    File interim = new File(TransformTestUtils.DEFAULT_OUTPUT_ROOT_FOLDER, name + "-working/interim/workbook.xml");
+    // The interim rows have the columns of the first row, empty columns are ignored
+    String expected = withoutEmptyColumns(FileUtils.read(interim, "UTF-8"));
+    try (ZipPackage pkg = new ZipPackage(sample)) {
+      String workbook = PackageParts.workbook(Relationships.parse(pkg, ""));
+      Relationships relationships = Relationships.parse(pkg, workbook);
+      SharedStrings shared = null;
+      for (Relationship r : relationships.forType(Relationship.Type.sharedStrings)) {
+        shared = SharedStrings.parse(pkg, Relationships.resolve(workbook, r.target()));
+      }
+      StyleHandler styleHandler = new StyleHandler();
+      for (Relationship r : relationships.forType(Relationship.Type.styles)) {
+        XML.parse(pkg, Relationships.resolve(workbook, r.target()), styleHandler, true);
+      }
+      Style style = styleHandler.getStyle();
+      int sheets = 0;
+      WorkBook book = WorkBook.parse(pkg, workbook, relationships);
+      for (WorkSheet sheet : book.sheets()) {
+        if (sheet.size() == 0) continue;
+        StringBuilder rows = new StringBuilder();
+        rows.append("<worksheet title=\"").append(XML.attribute(sheet.name())).append("\">\n");
+        try (InputStream in = pkg.open(sheet.part()); WorksheetReader reader = new WorksheetReader(in, shared, style, book.isDate1904())) {
+          for (Row row = reader.next(); row != null; row = reader.next()) {
+            if (row.hasValue()) row.toXML(rows);
+          }
+        }
+        rows.append("</worksheet>\n");
+        String actual = withoutEmptyColumns(rows.toString());
+        Assert.assertTrue(actual, expected.contains(actual));
+        sheets++;
+      }
+      Assert.assertTrue(sheets > 0);
+    }
+  }
+
+  private static String withoutEmptyColumns(String xml) {
+    return xml.replaceAll("  <col ref=\"[A-Z]+\"></col>\n", "");
+  }
+
+}
@@ -0,0 +1,123 @@
+package org.pageseeder.xlsx.sink;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class WorkingAreaTest {
+  private static final String DEFAULT_OUTPUT_ROOT_FOLDER = "build/output/core/working-area";
+
+  @Test
+  public void testMemory() throws IOException {
+    File spill = folder("memory");
+    WorkingArea area = new WorkingArea(spill, 1024);
+    write(area, "workbook.xml", "<workbook/>");
+    write(area, "Sheet1.xml", "<worksheet/>");
+    Assert.assertEquals(23, area.memory());
+    Assert.assertFalse(spill.exists());
+    Assert.assertEquals("<workbook/>", read(area, "workbook.xml"));
+    Assert.assertEquals("<worksheet/>", read(area, "Sheet1.xml"));
+    area.release("workbook.xml");
+    area.release("Sheet1.xml");
+    Assert.assertEquals(0, area.memory());
+  }
+
+  @Test
+  public void testCeilingZero() throws IOException {
+    File spill = folder("ceiling-zero");
+    WorkingArea area = new WorkingArea(spill, 0);
+    write(area, "workbook.xml", "<workbook/>");
+    write(area, "Sheet1/0001.xml", "<row/>");
+    Assert.assertEquals(0, area.memory());
+    Assert.assertTrue(new File(spill, "workbook.xml").isFile());
+    Assert.assertTrue(new File(spill, "Sheet1/0001.xml").isFile());
+    Assert.assertEquals("<workbook/>", read(area, "workbook.xml"));
+    Assert.assertEquals("<row/>", read(area, "Sheet1/0001.xml"));
+  }
+
+  @Test
+  public void testSpill() throws IOException {
+    File spill = folder("spill");
+    WorkingArea area = new WorkingArea(spill, 100);
+    StringBuilder content = new StringBuilder();
+    try (OutputStream out = area.newDocument("workbook.xml")) {
+      for (int i = 0; i < 50; i++) {
+        // Single bytes and arrays so that the ceiling is crossed in the middle of the document
+        out.write('<');
+        byte[] element = ("e" + i + "/>").getBytes(StandardCharsets.UTF_8);
+        out.write(element);
+        content.append('<').append("e").append(i).append("/>");
+        if (i == 10) Assert.assertTrue(area.memory() > 0);
+      }
+    }
+    Assert.assertEquals(0, area.memory());
+    Assert.assertTrue(new File(spill, "workbook.xml").isFile());
+    Assert.assertEquals(content.toString(), read(area, "workbook.xml"));
+    // Documents in files are still available once released
+    area.release("workbook.xml");
+    Assert.assertEquals(content.toString(), read(area, "workbook.xml"));
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void testOpenAfterRelease() throws IOException {
+    WorkingArea area = new WorkingArea(folder("release"), 1024);
+    write(area, "workbook.xml", "<workbook/>");
+    area.release("workbook.xml");
+    Assert.assertEquals(0, area.memory());
+    area.open("workbook.xml");
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void testOpenMissing() throws IOException {
+    WorkingArea area = new WorkingArea(folder("missing"), 1024);
+    area.open("workbook.xml");
+  }
+
+  @Test
+  public void testPaths() throws IOException {
+    WorkingArea area = new WorkingArea(folder("paths"), 1024);
+    write(area, "Sheet1/0001.xml", "<row/>");
+    write(area, "Sheet1.xml", "<worksheet/>");
+    write(area, "Sheet1/0002.xml", "<row/>");
+    write(area, "workbook.xml", "<workbook/>");
+    Assert.assertEquals(Arrays.asList("Sheet1.xml", "workbook.xml", "Sheet1/0001.xml", "Sheet1/0002.xml"), area.paths());
+  }
+
+  private static File folder(String name) {
+    File folder = new File(DEFAULT_OUTPUT_ROOT_FOLDER, name);
+    delete(folder);
+    return folder;
+  }
+
+  private static void write(WorkingArea area, String path, String content) throws IOException {
+    try (OutputStream out = area.newDocument(path)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static String read(WorkingArea area, String path) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try (InputStream in = area.open(path)) {
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) != -1) content.write(buffer, 0, n);
+    }
+    return new String(content.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) delete(child);
+    }
+    file.delete();
+  }
+}
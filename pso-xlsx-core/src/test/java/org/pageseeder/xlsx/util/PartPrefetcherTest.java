@@ -0,0 +1,161 @@
+package org.pageseeder.xlsx.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class PartPrefetcherTest {
+
+  @Test
+  public void testSequence() throws IOException {
+    TestPackage pkg = new TestPackage();
+    pkg.put("a", bytes(3 * 1024 * 1024 + 17));
+    pkg.put("b", bytes(10));
+    pkg.put("c", new byte[0]);
+    try (PartPrefetcher prefetcher = new PartPrefetcher(pkg, Arrays.asList("a", "b", "c"), 128 * 1024)) {
+      for (String part : new String[] { "a", "b", "c" }) {
+        try (InputStream in = prefetcher.next(part)) {
+          Assert.assertArrayEquals(part, pkg.parts.get(part), read(in));
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testOutOfSequence() {
+    TestPackage pkg = new TestPackage();
+    pkg.put("a", bytes(10));
+    pkg.put("b", bytes(10));
+    try (PartPrefetcher prefetcher = new PartPrefetcher(pkg, Arrays.asList("a", "b"))) {
+      prefetcher.next("b");
+    }
+  }
+
+  @Test
+  public void testError() throws IOException {
+    TestPackage pkg = new TestPackage();
+    pkg.put("a", bytes(10));
+    try (PartPrefetcher prefetcher = new PartPrefetcher(pkg, Arrays.asList("missing", "a"))) {
+      // The error is reported by the stream of the part which could not be read
+      try (InputStream in = prefetcher.next("missing")) {
+        read(in);
+        Assert.fail("Expected the inflater error");
+      } catch (IOException ex) {
+        Assert.assertTrue(ex.getCause() instanceof FileNotFoundException);
+      }
+      try (InputStream in = prefetcher.next("a")) {
+        Assert.assertArrayEquals(pkg.parts.get("a"), read(in));
+      }
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    TestPackage pkg = new TestPackage();
+    pkg.endless("a");
+    pkg.endless("b");
+    Set<Thread> before = inflaters();
+    PartPrefetcher prefetcher = new PartPrefetcher(pkg, Arrays.asList("a", "b"), 64 * 1024);
+    Set<Thread> started = inflaters();
+    started.removeAll(before);
+    Assert.assertEquals(1, started.size());
+    // Stop after a few bytes as when the last row needed has been read
+    try (InputStream in = prefetcher.next("a")) {
+      Assert.assertEquals('x', in.read());
+    }
+    prefetcher.close();
+    Thread inflater = started.iterator().next();
+    inflater.join(5000);
+    Assert.assertFalse(inflater.isAlive());
+  }
+
+  private static Set<Thread> inflaters() {
+    Set<Thread> threads = new HashSet<>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("xlsx-inflater") && thread.isAlive()) threads.add(thread);
+    }
+    return threads;
+  }
+
+  private static byte[] bytes(int size) {
+    byte[] bytes = new byte[size];
+    for (int i = 0; i < size; i++) bytes[i] = (byte) (i * 31);
+    return bytes;
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[5000];
+    int n;
+    while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+    return out.toByteArray();
+  }
+
+  /**
+   * A package holding its parts in memory.
+   */
+  private static final class TestPackage implements OfficePackage {
+
+    private final Map<String, byte[]> parts = new LinkedHashMap<>();
+
+    /** Parts that never end */
+    private final Set<String> endless = new HashSet<>();
+
+    void put(String part, byte[] data) {
+      this.parts.put(part, data);
+    }
+
+    void endless(String part) {
+      this.endless.add(part);
+    }
+
+    @Override
+    public String name() {
+      return "test";
+    }
+
+    @Override
+    public boolean contains(String part) {
+      return this.parts.containsKey(part) || this.endless.contains(part);
+    }
+
+    @Override
+    public InputStream open(String part) throws IOException {
+      if (this.endless.contains(part)) return new InputStream() {
+        @Override
+        public int read() {
+          return 'x';
+        }
+      };
+      byte[] data = this.parts.get(part);
+      if (data == null) throw new FileNotFoundException(part);
+      return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public long size(String part) {
+      byte[] data = this.parts.get(part);
+      return data != null ? data.length : -1;
+    }
+
+    @Override
+    public Collection<String> parts() {
+      return this.parts.keySet();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}